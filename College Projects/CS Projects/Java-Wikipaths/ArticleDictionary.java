@@ -0,0 +1,210 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+/**
+ * A two-way dictionary between article titles and consecutive vertex IDs
+ * 0 .. size()-1, in the order the titles were added.
+ *   Titles are not kept as Strings.  Their UTF-8 bytes are stored back to back
+ * in one shared byte arena, and offsets[id] .. offsets[id+1] is the slice
+ * belonging to ID id, so title(id) is a single array lookup.  The forward
+ * direction is an open-addressing hash table of IDs (with linear probing) that
+ * compares candidates against the arena bytes, so find() needs no String per
+ * title either.  All of this costs about the title bytes plus 12 bytes per
+ * article.
+ *   Adding titles is not thread-safe, but once loading is finished any number
+ * of threads may look titles up concurrently.
+ */
+public class ArticleDictionary implements ArticleTitles {
+    private static final int EMPTY = -1;
+
+    private byte[] arena;
+    private int arenaSize;
+    private int[] offsets;
+    private int size;
+    // Slot i holds an ID or EMPTY; hashes[i] caches that ID's hash.
+    private int[] table;
+    private int[] hashes;
+
+    /** Constructs an empty dictionary. */
+    public ArticleDictionary() {
+        this(16);
+    }
+
+    /** Constructs an empty dictionary with room for the expected number of
+     * titles before it has to grow.
+     */
+    public ArticleDictionary(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        arena = new byte[capacity * 16];
+        offsets = new int[capacity + 1];
+        int slots = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        table = new int[slots];
+        hashes = new int[slots];
+        Arrays.fill(table, EMPTY);
+    }
+
+    /** Returns the number of titles in the dictionary. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the title with the specified ID.
+     * @throws IndexOutOfBoundsException if id is out of bounds.
+     */
+    public String title(int id) {
+        if(id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return new String(arena, offsets[id], offsets[id + 1] - offsets[id],
+                StandardCharsets.UTF_8);
+    }
+
+    /** Returns the ID of the specified title, or -1 if it is not present. */
+    public int find(String title) {
+        byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+        return find(bytes, 0, bytes.length);
+    }
+
+    /** Returns the ID of the title whose UTF-8 bytes are bytes[from..to), or
+     * -1 if it is not present.
+     */
+    public int find(byte[] bytes, int from, int to) {
+        int h = hash(bytes, from, to);
+        int mask = table.length - 1;
+        for(int i = h & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+            if(hashes[i] == h && equalsTitle(table[i], bytes, from, to)) {
+                return table[i];
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the ID of the title whose UTF-8 bytes are buf[from..to), or -1
+     * if it is not present.  Reads the buffer with absolute gets, so its
+     * position is left unchanged.
+     */
+    public int find(ByteBuffer buf, int from, int to) {
+        int h = 0x811c9dc5;
+        for(int i = from; i < to; i++) {
+            h = (h ^ (buf.get(i) & 0xff)) * 0x01000193;
+        }
+        h = spread(h);
+        int mask = table.length - 1;
+        for(int i = h & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+            if(hashes[i] == h && equalsTitle(table[i], buf, from, to)) {
+                return table[i];
+            }
+        }
+        return -1;
+    }
+
+    /** Adds a title and returns its ID.  A title that is already present keeps
+     * its ID.
+     */
+    public int add(String title) {
+        byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+        return add(bytes, 0, bytes.length);
+    }
+
+    /** Adds the title whose UTF-8 bytes are bytes[from..to) and returns its
+     * ID.  A title that is already present keeps its ID.
+     */
+    public int add(byte[] bytes, int from, int to) {
+        int h = hash(bytes, from, to);
+        int mask = table.length - 1;
+        int i = h & mask;
+        for(; table[i] != EMPTY; i = (i + 1) & mask) {
+            if(hashes[i] == h && equalsTitle(table[i], bytes, from, to)) {
+                return table[i];
+            }
+        }
+        int len = to - from;
+        if(arenaSize + len > arena.length) {
+            long capacity = Math.max(arena.length * 2L, (long) arenaSize + len);
+            if(capacity > Integer.MAX_VALUE - 8) {
+                capacity = Integer.MAX_VALUE - 8;
+                if(arenaSize + len > capacity) {
+                    throw new IllegalStateException("title arena is full");
+                }
+            }
+            arena = Arrays.copyOf(arena, (int) capacity);
+        }
+        System.arraycopy(bytes, from, arena, arenaSize, len);
+        arenaSize += len;
+        if(size + 1 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        int id = size++;
+        offsets[size] = arenaSize;
+        table[i] = id;
+        hashes[i] = h;
+        // Keep the table at most half full so probe sequences stay short.
+        if(size * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /** Shrinks the arrays to the titles actually stored. */
+    public void trimToSize() {
+        arena = Arrays.copyOf(arena, arenaSize);
+        offsets = Arrays.copyOf(offsets, size + 1);
+    }
+
+    /** Returns the approximate number of heap bytes used by the dictionary. */
+    public long memoryBytes() {
+        return arena.length + 4L * offsets.length + 8L * table.length;
+    }
+
+    private void rehash() {
+        int[] oldTable = table;
+        int[] oldHashes = hashes;
+        table = new int[oldTable.length * 2];
+        hashes = new int[oldTable.length * 2];
+        Arrays.fill(table, EMPTY);
+        int mask = table.length - 1;
+        for(int j = 0; j < oldTable.length; j++) {
+            if(oldTable[j] != EMPTY) {
+                int i = oldHashes[j] & mask;
+                while(table[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = oldTable[j];
+                hashes[i] = oldHashes[j];
+            }
+        }
+    }
+
+    // FNV-1a over the bytes, with the high bits mixed down so that the low
+    // bits used for the slot index depend on the whole title.
+    private static int hash(byte[] bytes, int from, int to) {
+        int h = 0x811c9dc5;
+        for(int i = from; i < to; i++) {
+            h = (h ^ (bytes[i] & 0xff)) * 0x01000193;
+        }
+        return spread(h);
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private boolean equalsTitle(int id, byte[] bytes, int from, int to) {
+        int start = offsets[id];
+        int end = offsets[id + 1];
+        return Arrays.equals(arena, start, end, bytes, from, to);
+    }
+
+    private boolean equalsTitle(int id, ByteBuffer buf, int from, int to) {
+        int start = offsets[id];
+        if(offsets[id + 1] - start != to - from) {
+            return false;
+        }
+        for(int i = from; i < to; i++) {
+            if(arena[start++] != buf.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
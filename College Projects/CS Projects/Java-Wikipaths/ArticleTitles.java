@@ -0,0 +1,18 @@
+/**
+ * A read-only mapping between article titles and vertex IDs 0 .. size()-1.
+ * ArticleDictionary keeps the titles on the heap; GraphSnapshot serves them
+ * from its memory-mapped file, so a snapshot needs no copy of them.  Lookups
+ * may be made from any number of threads once loading is finished.
+ */
+public interface ArticleTitles {
+    /** Returns the number of titles. */
+    public int size();
+
+    /** Returns the title with the specified ID.
+     * @throws IndexOutOfBoundsException if id is out of bounds.
+     */
+    public String title(int id);
+
+    /** Returns the ID of the specified title, or -1 if it is not present. */
+    public int find(String title);
+}
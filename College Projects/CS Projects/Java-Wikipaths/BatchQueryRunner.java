@@ -0,0 +1,266 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+/**
+ * Answers many shortest-path queries against one shared, read-only graph.
+ * Each input line is "source TAB target" or "source TAB via TAB target"; '#'
+ * comments and blank lines are skipped.  Queries run concurrently on a fixed
+ * pool of threads, and results are written in input order, one line per
+ * query:
+ * <pre>
+ *   source [TAB via] TAB target TAB length TAB title1 -> title2 -> ...
+ *   source [TAB via] TAB target TAB -1 TAB no path
+ *   source [TAB via] TAB target TAB -1 TAB unknown article: title
+ *   line TAB -1 TAB malformed query
+ * </pre>
+ * Search scratch space is not allocated per query.  A fixed set of
+ * BidirectionalSearch engines, one per core, is shared through a queue: a
+ * query borrows an engine, runs on its arrays, and hands it back.  The pool
+ * has one thread per engine, since the work is CPU-bound and more threads
+ * would only wait for an engine.  If a
+ * LandmarkIndex is attached, the engines answer pairs it proves unreachable
+ * without searching.
+ *   Queries are read and written in windows, so memory stays bounded no
+ * matter how long the input is.  If SearchMetrics are attached, every query
+ * that names known articles is traced and recorded in them.
+ */
+public class BatchQueryRunner {
+    private static final int WINDOW = 8192;
+
+    private final ArticleTitles articles;
+    private final BlockingQueue<BidirectionalSearch> engines;
+    private final int threads;
+    private PathCache cache;
+    private ReachabilityIndex reach;
+    private SearchMetrics metrics;
+
+    // The result line of one query, and whether a path was found.
+    private static class Answer {
+        final String line;
+        final boolean found;
+        Answer(String line, boolean found) {
+            this.line = line;
+            this.found = found;
+        }
+    }
+
+    /** Summary of one batch run. */
+    public static class Summary {
+        public final long queries;
+        public final long found;
+        public final long failed;
+        public final long elapsedNanos;
+
+        Summary(long queries, long found, long failed, long elapsedNanos) {
+            this.queries = queries;
+            this.found = found;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public double queriesPerSecond() {
+            return elapsedNanos == 0 ? 0 : queries * 1e9 / elapsedNanos;
+        }
+
+        public String toString() {
+            return String.format("%d queries (%d with a path, %d without or invalid) in %.1f ms: %.0f queries/s",
+                    queries, found, failed, elapsedNanos / 1e6, queriesPerSecond());
+        }
+    }
+
+    /** Constructs a runner with one search engine per core. */
+    public BatchQueryRunner(Graph graph, ArticleTitles articles) {
+        this(graph, articles, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Constructs a runner with the specified number of search engines.  The
+     * graph must not change while the runner is in use.
+     */
+    public BatchQueryRunner(Graph graph, ArticleTitles articles, int engines) {
+        if(engines < 1) {
+            throw new IllegalArgumentException("at least one engine required");
+        }
+        this.articles = articles;
+        this.engines = new ArrayBlockingQueue<BidirectionalSearch>(engines);
+        this.threads = engines;
+        for(int i = 0; i < engines; i++) {
+            this.engines.add(new BidirectionalSearch(graph));
+        }
+    }
+
+    /** Attaches a landmark index built for the same graph to every engine,
+     * so that provably unreachable legs are answered at once; null detaches
+     * it.  Call before run.
+     */
+    public void setLandmarks(LandmarkIndex landmarks) {
+        for(BidirectionalSearch engine : engines) {
+            engine.setLandmarks(landmarks);
+        }
+    }
+
+    /** Makes queries consult and fill the specified cache; null turns
+     * caching off.
+     */
+    public void setCache(PathCache cache) {
+        this.cache = cache;
+    }
+
+    /** Makes queries that the specified index proves unreachable skip the
+     * search; null turns the check off.
+     */
+    public void setReachability(ReachabilityIndex reach) {
+        this.reach = reach;
+    }
+
+    /** Makes every query record a QueryTrace into the specified metrics;
+     * null turns tracing off.
+     */
+    public void setMetrics(SearchMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** Answers every query read from in, writes one result line per query to
+     * out in input order, and returns a summary of the run.
+     * @throws IOException if in cannot be read.
+     */
+    public Summary run(BufferedReader in, PrintStream out) throws IOException {
+        long start = System.nanoTime();
+        long queries = 0;
+        long found = 0;
+        List<String> window = new ArrayList<String>(WINDOW);
+        List<Future<Answer>> results = new ArrayList<Future<Answer>>(WINDOW);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            boolean done = false;
+            while(!done) {
+                window.clear();
+                String line;
+                while(window.size() < WINDOW && (line = in.readLine()) != null) {
+                    if(!line.startsWith("#") && line.trim().length() > 0) {
+                        window.add(line);
+                    }
+                }
+                done = window.size() < WINDOW;
+                results.clear();
+                for(String query : window) {
+                    results.add(executor.submit(() -> answer(query)));
+                }
+                for(Future<Answer> result : results) {
+                    Answer answer = get(result);
+                    out.println(answer.line);
+                    queries++;
+                    if(answer.found) {
+                        found++;
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        out.flush();
+        return new Summary(queries, found, queries - found, System.nanoTime() - start);
+    }
+
+    private static Answer get(Future<Answer> result) throws IOException {
+        try {
+            return result.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while answering queries", e);
+        } catch(ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // Answers one query line with a borrowed engine.
+    private Answer answer(String query) throws InterruptedException {
+        String[] fields = query.split("\t");
+        if(fields.length < 2 || fields.length > 3) {
+            return new Answer(query + "\t-1\tmalformed query", false);
+        }
+        int[] ids = new int[fields.length];
+        for(int i = 0; i < fields.length; i++) {
+            ids[i] = articles.find(fields[i]);
+            if(ids[i] < 0) {
+                return new Answer(query + "\t-1\tunknown article: " + fields[i], false);
+            }
+        }
+        long began = System.nanoTime();
+        QueryTrace trace = metrics == null ? null : new QueryTrace();
+        if(trace != null) {
+            trace.begin(ids[0], ids[ids.length - 1]);
+        }
+        int via = ids.length == 3 ? ids[1] : PathCache.NO_VIA;
+        int[] path = cache == null ? null : cache.get(ids[0], via, ids[ids.length - 1]);
+        if(path != null && trace != null) {
+            trace.shortCircuit(QueryTrace.ShortCircuit.CACHE);
+        }
+        if(path == null && reach != null && !reachable(ids)) {
+            path = PathCache.NO_PATH;
+            if(trace != null) {
+                trace.shortCircuit(QueryTrace.ShortCircuit.REACHABILITY);
+            }
+        }
+        if(path == null) {
+            BidirectionalSearch engine = engines.take();
+            engine.setTrace(trace);
+            try {
+                path = engine.findPath(ids[0], ids[1]);
+                if(path == null && ids.length == 3) {
+                    path = PathCache.NO_FIRST_LEG;
+                }
+                for(int i = 2; i < ids.length && !PathCache.isNoPath(path); i++) {
+                    int[] leg = engine.findPath(ids[i - 1], ids[i]);
+                    path = leg == null ? PathCache.NO_SECOND_LEG : join(path, leg);
+                }
+            } finally {
+                engines.add(engine);
+            }
+            if(cache != null) {
+                cache.put(ids[0], via, ids[ids.length - 1], path);
+            }
+        }
+        boolean found = path != null && !PathCache.isNoPath(path);
+        if(trace != null) {
+            trace.end(found ? path.length - 1 : -1, System.nanoTime() - began);
+            metrics.record(trace);
+        }
+        if(!found) {
+            return new Answer(query + "\t-1\tno path", false);
+        }
+        StringBuilder sb = new StringBuilder(query);
+        sb.append('\t').append(path.length - 1).append('\t');
+        for(int i = 0; i < path.length; i++) {
+            if(i > 0) {
+                sb.append(" -> ");
+            }
+            sb.append(articles.title(path[i]));
+        }
+        return new Answer(sb.toString(), true);
+    }
+
+    private boolean reachable(int[] ids) {
+        for(int i = 1; i < ids.length; i++) {
+            if(!reach.reachable(ids[i - 1], ids[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Concatenates two paths that share the last vertex of the first.
+    private static int[] join(int[] first, int[] second) {
+        int[] path = new int[first.length + second.length - 1];
+        System.arraycopy(first, 0, path, 0, first.length);
+        System.arraycopy(second, 1, path, first.length, second.length - 1);
+        return path;
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * A shortest-path engine for unweighted graphs that runs breadth-first search
+ * from both endpoints at once, always growing the side with the smaller
+ * frontier, and stops as soon as the two searches meet.
+ *   All per-query state lives in primitive arrays sized to the graph: a
+ * visited bitset, a distance and a parent array per direction, and one queue
+ * per direction.  The arrays are allocated once and reset only where a query
+ * touched them, so a query costs time proportional to the part of the graph it
+ * explores rather than to the size of the graph.
+ *   Rows are read through a RowReader: in place from CSR arrays or a mapped
+ * snapshot, or decoded one row at a time from a CompressedUnweightedGraph.
+ *   If a LandmarkIndex is attached, queries that the landmark distances prove
+ * unreachable are answered without any search.  If a QueryTrace is attached,
+ * each expanded level is recorded in it; otherwise nothing is counted.
+ *   An instance is not thread-safe; give each thread its own engine.
+ */
+public class BidirectionalSearch implements PathSearch {
+    private final int n;
+    // Forward (out-edge) and backward (in-edge) adjacency.
+    private final RowReader out;
+    private final RowReader in;
+
+    private final long[] seenFwd;
+    private final long[] seenBwd;
+    private final int[] distFwd;
+    private final int[] distBwd;
+    private final int[] parentFwd;
+    private final int[] parentBwd;
+    // Each queue also records, in order, every vertex its side has visited,
+    // which is exactly the set of entries to reset after the query.
+    private final int[] queueFwd;
+    private final int[] queueBwd;
+    private int tailFwd;
+    private int tailBwd;
+    private LandmarkIndex landmarks;
+    private QueryTrace trace;
+
+    /** Constructs an engine over the specified graph.  The graph must not
+     * change while the engine is in use.
+     */
+    public BidirectionalSearch(Graph graph) {
+        n = graph.numVerts();
+        if(graph instanceof CompressedUnweightedGraph) {
+            CompressedUnweightedGraph compressed = (CompressedUnweightedGraph) graph;
+            out = compressed.outRows();
+            in = compressed.inRows();
+        } else {
+            CsrRows rows = CsrRows.out(graph);
+            out = rows;
+            in = CsrRows.in(graph, rows);
+        }
+
+        seenFwd = new long[(n + 63) >>> 6];
+        seenBwd = new long[(n + 63) >>> 6];
+        distFwd = new int[n];
+        distBwd = new int[n];
+        parentFwd = new int[n];
+        parentBwd = new int[n];
+        queueFwd = new int[n];
+        queueBwd = new int[n];
+    }
+
+    /** Attaches a landmark index built for the same graph, used to answer
+     * provably unreachable queries at once; null detaches it.
+     */
+    public void setLandmarks(LandmarkIndex landmarks) {
+        this.landmarks = landmarks;
+    }
+
+    public void setTrace(QueryTrace trace) {
+        this.trace = trace;
+    }
+
+    private static boolean isSet(long[] bits, int v) {
+        return (bits[v >>> 6] & (1L << v)) != 0;
+    }
+
+    private static void set(long[] bits, int v) {
+        bits[v >>> 6] |= 1L << v;
+    }
+
+    /** Returns a shortest path from source to target as a sequence of vertex
+     * IDs beginning with source and ending with target, or null if target is
+     * not reachable from source.
+     * @throws IndexOutOfBoundsException if either vertex ID is out of bounds.
+     */
+    public int[] findPath(int source, int target) {
+        if(source < 0 || source >= n || target < 0 || target >= n) {
+            throw new IndexOutOfBoundsException();
+        }
+        if(source == target) {
+            if(trace != null) {
+                trace.shortCircuit(QueryTrace.ShortCircuit.TRIVIAL);
+            }
+            return new int[] {source};
+        }
+        if(landmarks != null && landmarks.lowerBound(source, target)
+                == LandmarkIndex.UNREACHABLE) {
+            if(trace != null) {
+                trace.shortCircuit(QueryTrace.ShortCircuit.LANDMARK);
+            }
+            return null;
+        }
+        try {
+            return search(source, target);
+        } finally {
+            reset();
+        }
+    }
+
+    private int[] search(int source, int target) {
+        set(seenFwd, source);
+        distFwd[source] = 0;
+        parentFwd[source] = -1;
+        queueFwd[tailFwd++] = source;
+        set(seenBwd, target);
+        distBwd[target] = 0;
+        parentBwd[target] = -1;
+        queueBwd[tailBwd++] = target;
+
+        // [headX, tailX) is the current frontier of each side.
+        int headFwd = 0;
+        int headBwd = 0;
+        while(headFwd < tailFwd && headBwd < tailBwd) {
+            int meet;
+            if(tailFwd - headFwd <= tailBwd - headBwd) {
+                int levelEnd = tailFwd;
+                meet = expand(headFwd, levelEnd, true);
+                headFwd = levelEnd;
+            } else {
+                int levelEnd = tailBwd;
+                meet = expand(headBwd, levelEnd, false);
+                headBwd = levelEnd;
+            }
+            if(meet >= 0) {
+                return buildPath(meet);
+            }
+        }
+        return null;
+    }
+
+    // Expands one whole level of one side.  Returns the meeting vertex with
+    // the shortest total distance found in this level, or -1 if the sides have
+    // not met.  The whole level is finished before returning because a vertex
+    // seen later in the level may be closer to the other endpoint.
+    private int expand(int head, int levelEnd, boolean forward) {
+        RowReader rows = forward ? out : in;
+        long[] seen = forward ? seenFwd : seenBwd;
+        long[] otherSeen = forward ? seenBwd : seenFwd;
+        int[] dist = forward ? distFwd : distBwd;
+        int[] otherDist = forward ? distBwd : distFwd;
+        int[] parent = forward ? parentFwd : parentBwd;
+        int[] queue = forward ? queueFwd : queueBwd;
+        int tail = forward ? tailFwd : tailBwd;
+
+        int best = -1;
+        int bestDist = Integer.MAX_VALUE;
+        for(int q = head; q < levelEnd; q++) {
+            int v = queue[q];
+            int d = dist[v] + 1;
+            int start = rows.start(v);
+            int end = rows.end(v);
+            for(int i = start; i < end; i++) {
+                int u = rows.target(i);
+                if(isSet(seen, u)) {
+                    continue;
+                }
+                set(seen, u);
+                dist[u] = d;
+                parent[u] = v;
+                queue[tail++] = u;
+                if(isSet(otherSeen, u) && d + otherDist[u] < bestDist) {
+                    best = u;
+                    bestDist = d + otherDist[u];
+                }
+            }
+        }
+        if(forward) {
+            tailFwd = tail;
+        } else {
+            tailBwd = tail;
+        }
+        if(trace != null) {
+            long scanned = 0;
+            for(int q = head; q < levelEnd; q++) {
+                scanned += rows.degree(queue[q]);
+            }
+            trace.level(levelEnd - head, scanned, forward);
+        }
+        return best;
+    }
+
+    // Stitches the forward parent chain up to meet onto the backward parent
+    // chain from meet; runs in time proportional to the path length.
+    private int[] buildPath(int meet) {
+        int[] path = new int[distFwd[meet] + distBwd[meet] + 1];
+        int i = distFwd[meet];
+        for(int v = meet; v != -1; v = parentFwd[v]) {
+            path[i--] = v;
+        }
+        i = distFwd[meet];
+        for(int v = meet; v != -1; v = parentBwd[v]) {
+            path[i++] = v;
+        }
+        return path;
+    }
+
+    private void reset() {
+        for(int q = 0; q < tailFwd; q++) {
+            seenFwd[queueFwd[q] >>> 6] = 0;
+        }
+        for(int q = 0; q < tailBwd; q++) {
+            seenBwd[queueBwd[q] >>> 6] = 0;
+        }
+        tailFwd = 0;
+        tailBwd = 0;
+    }
+}
@@ -0,0 +1,394 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+/**
+ * Importance scores for the vertices of a graph: PageRank, personalized
+ * PageRank, and betweenness estimated from a sample of sources.
+ *   PageRank is computed by power iteration in pull form: each vertex sums the
+ * contributions rank(u) / outdeg(u) of its in-neighbors, so every vertex is
+ * written by exactly one thread and no step needs atomics.  The rank mass of
+ * dangling vertices (no out-links) is spread over the teleport distribution,
+ * which is uniform for plain PageRank and concentrated on the seed vertices
+ * for personalized PageRank.  Iteration stops once the L1 change of the rank
+ * vector drops below the tolerance, and the time of every iteration is kept.
+ *   Betweenness is Brandes's dependency accumulation run from randomly chosen
+ * sources and scaled up by n / samples.  Sources are searched in rounds of
+ * one per pool thread, each thread with its own scratch arrays; after a
+ * round, every vertex adds the dependencies of the round's sources in source
+ * order.  Each score is thus summed in the order of the sample, whatever the
+ * number of threads, and the scratch space grows with the threads rather than
+ * with the samples.
+ *   Vertices are split into chunks that run on a fork-join pool; sums are
+ * taken per chunk and added in chunk order, so results do not depend on the
+ * number of threads.
+ */
+public class CentralityEngine {
+    private static final int CHUNK = 1 << 14;
+
+    private final CsrRows out;
+    private final CsrRows in;
+    private final int n;
+    private final int chunks;
+    private final ForkJoinPool pool;
+
+    /** The outcome of one PageRank computation. */
+    public static class Result {
+        /** rank[v] is the score of v; the scores sum to 1. */
+        public final double[] rank;
+        /** residuals[i] is the L1 change made by iteration i. */
+        public final double[] residuals;
+        /** iterationNanos[i] is the wall time of iteration i. */
+        public final long[] iterationNanos;
+        public final boolean converged;
+
+        Result(double[] rank, double[] residuals, long[] iterationNanos,
+                boolean converged) {
+            this.rank = rank;
+            this.residuals = residuals;
+            this.iterationNanos = iterationNanos;
+            this.converged = converged;
+        }
+
+        /** Returns the number of iterations run. */
+        public int iterations() {
+            return residuals.length;
+        }
+
+        /** Returns the k highest-ranked vertices, best first. */
+        public int[] top(int k) {
+            return CentralityEngine.top(rank, k);
+        }
+    }
+
+    /** Constructs an engine over the specified graph with one thread per core. */
+    public CentralityEngine(Graph graph) {
+        this(graph, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Constructs an engine over the specified graph with the specified
+     * number of threads.  The graph must not change while the engine is in
+     * use.
+     */
+    public CentralityEngine(Graph graph, int parallelism) {
+        out = CsrRows.out(graph);
+        in = CsrRows.in(graph, out);
+        n = out.numVerts();
+        chunks = (n + CHUNK - 1) / CHUNK;
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /** Releases the worker threads. */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /** Computes PageRank with the specified damping factor (usually 0.85),
+     * iterating until the L1 change is below tolerance or maxIterations have
+     * run.
+     */
+    public Result pageRank(double damping, double tolerance, int maxIterations) {
+        return run(null, damping, tolerance, maxIterations);
+    }
+
+    /** Computes PageRank personalized to the specified seed vertices: every
+     * teleport, and every step out of a dangling vertex, lands on a seed.
+     * @throws IndexOutOfBoundsException if a seed is out of bounds.
+     */
+    public Result personalizedPageRank(int[] seeds, double damping,
+            double tolerance, int maxIterations) {
+        if(seeds.length == 0) {
+            throw new IllegalArgumentException("no seed vertices");
+        }
+        double[] teleport = new double[n];
+        for(int s : seeds) {
+            if(s < 0 || s >= n) {
+                throw new IndexOutOfBoundsException();
+            }
+            teleport[s] += 1.0 / seeds.length;
+        }
+        return run(teleport, damping, tolerance, maxIterations);
+    }
+
+    // Power iteration.  A null teleport vector means uniform, which is kept
+    // implicit to save an array of n doubles.
+    private Result run(double[] teleport, double damping, double tolerance,
+            int maxIterations) {
+        if(damping < 0 || damping >= 1) {
+            throw new IllegalArgumentException("damping must be in [0, 1)");
+        }
+        double[] rank = new double[n];
+        double[] next = new double[n];
+        double[] contrib = new double[n];
+        double[] partial = new double[chunks];
+        if(teleport == null) {
+            Arrays.fill(rank, 1.0 / n);
+        } else {
+            System.arraycopy(teleport, 0, rank, 0, n);
+        }
+        double[] residuals = new double[Math.max(0, maxIterations)];
+        long[] times = new long[residuals.length];
+        int iteration = 0;
+        boolean converged = false;
+        while(iteration < maxIterations && !converged) {
+            long start = System.nanoTime();
+            double[] r = rank;
+            double[] nx = next;
+            // Contributions, and the mass sitting on dangling vertices.
+            parallel(c -> {
+                double dangling = 0;
+                for(int v = c * CHUNK; v < Math.min(n, (c + 1) * CHUNK); v++) {
+                    int d = out.end(v) - out.start(v);
+                    if(d == 0) {
+                        dangling += r[v];
+                        contrib[v] = 0;
+                    } else {
+                        contrib[v] = r[v] / d;
+                    }
+                }
+                partial[c] = dangling;
+            });
+            double dangling = sum(partial);
+            // Pull: each vertex gathers from its in-neighbors.
+            parallel(c -> {
+                double change = 0;
+                for(int v = c * CHUNK; v < Math.min(n, (c + 1) * CHUNK); v++) {
+                    double sum = 0;
+                    for(int i = in.start(v); i < in.end(v); i++) {
+                        sum += contrib[in.target(i)];
+                    }
+                    double t = teleport == null ? 1.0 / n : teleport[v];
+                    double x = (1 - damping) * t + damping * (sum + dangling * t);
+                    change += Math.abs(x - r[v]);
+                    nx[v] = x;
+                }
+                partial[c] = change;
+            });
+            residuals[iteration] = sum(partial);
+            times[iteration] = System.nanoTime() - start;
+            converged = residuals[iteration] < tolerance;
+            double[] swap = rank;
+            rank = next;
+            next = swap;
+            iteration++;
+        }
+        return new Result(rank, Arrays.copyOf(residuals, iteration),
+                Arrays.copyOf(times, iteration), converged);
+    }
+
+    private static double sum(double[] values) {
+        double s = 0;
+        for(double x : values) {
+            s += x;
+        }
+        return s;
+    }
+
+    /** Estimates the betweenness of every vertex from breadth-first searches
+     * out of the specified number of random sources.  Scores are scaled to
+     * estimate the sum over all sources.
+     */
+    public double[] sampledBetweenness(int samples, long seed) {
+        if(samples < 1) {
+            throw new IllegalArgumentException("need at least one sample");
+        }
+        int[] sources = new Random(seed).ints(samples, 0, n).toArray();
+        Brandes[] workers = new Brandes[Math.min(samples, pool.getParallelism())];
+        for(int j = 0; j < workers.length; j++) {
+            workers[j] = new Brandes();
+        }
+        double[] total = new double[n];
+        for(int first = 0; first < samples; first += workers.length) {
+            int from = first;
+            int round = Math.min(workers.length, samples - first);
+            parallel(round, j -> workers[j].accumulate(sources[from + j]));
+            // Added source by source, so the order of the sums is the order
+            // of the sample and not of the threads.
+            parallel(chunks, c -> {
+                int end = Math.min(n, (c + 1) * CHUNK);
+                for(int j = 0; j < round; j++) {
+                    double[] delta = workers[j].delta;
+                    for(int v = c * CHUNK; v < end; v++) {
+                        total[v] += delta[v];
+                    }
+                }
+            });
+            parallel(round, j -> workers[j].reset());
+        }
+        double scale = (double) n / samples;
+        parallel(chunks, c -> {
+            for(int v = c * CHUNK; v < Math.min(n, (c + 1) * CHUNK); v++) {
+                total[v] *= scale;
+            }
+        });
+        return total;
+    }
+
+    // One thread's scratch space for Brandes's algorithm.  After accumulate,
+    // delta holds the dependency of every vertex on the source, 0 for the
+    // source itself and for vertices it does not reach, until reset.  sigma
+    // counts shortest paths as doubles, which cannot overflow.
+    private class Brandes {
+        final int[] dist = new int[n];
+        final double[] sigma = new double[n];
+        final double[] delta = new double[n];
+        final int[] order = new int[n];
+        int tail;
+
+        Brandes() {
+            Arrays.fill(dist, -1);
+        }
+
+        void accumulate(int s) {
+            tail = 0;
+            dist[s] = 0;
+            sigma[s] = 1;
+            order[tail++] = s;
+            for(int head = 0; head < tail; head++) {
+                int v = order[head];
+                for(int i = out.start(v); i < out.end(v); i++) {
+                    int u = out.target(i);
+                    if(dist[u] < 0) {
+                        dist[u] = dist[v] + 1;
+                        sigma[u] = 0;
+                        order[tail++] = u;
+                    }
+                    if(dist[u] == dist[v] + 1) {
+                        sigma[u] += sigma[v];
+                    }
+                }
+            }
+            // Dependencies flow back from the farthest vertices: w collects
+            // from every out-neighbor one level farther from s.
+            for(int i = tail - 1; i >= 0; i--) {
+                int w = order[i];
+                double dw = 0;
+                for(int j = out.start(w); j < out.end(w); j++) {
+                    int u = out.target(j);
+                    if(dist[u] == dist[w] + 1) {
+                        dw += sigma[w] / sigma[u] * (1 + delta[u]);
+                    }
+                }
+                delta[w] = dw;
+            }
+            delta[s] = 0;
+        }
+
+        void reset() {
+            for(int i = 0; i < tail; i++) {
+                int v = order[i];
+                dist[v] = -1;
+                delta[v] = 0;
+            }
+            tail = 0;
+        }
+    }
+
+    // Returns the indices of the k largest values, largest first.
+    static int[] top(double[] values, int k) {
+        k = Math.min(k, values.length);
+        // A min-heap of the best k seen so far, rooted at the weakest.
+        int[] heap = new int[k];
+        int size = 0;
+        for(int v = 0; v < values.length; v++) {
+            if(size < k) {
+                heap[size] = v;
+                for(int i = size++; i > 0 && values[heap[(i - 1) / 2]] > values[heap[i]]; i = (i - 1) / 2) {
+                    int t = heap[i];
+                    heap[i] = heap[(i - 1) / 2];
+                    heap[(i - 1) / 2] = t;
+                }
+            } else if(k > 0 && values[v] > values[heap[0]]) {
+                heap[0] = v;
+                for(int i = 0; ; ) {
+                    int l = 2 * i + 1;
+                    int m = i;
+                    if(l < k && values[heap[l]] < values[heap[m]]) {
+                        m = l;
+                    }
+                    if(l + 1 < k && values[heap[l + 1]] < values[heap[m]]) {
+                        m = l + 1;
+                    }
+                    if(m == i) {
+                        break;
+                    }
+                    int t = heap[i];
+                    heap[i] = heap[m];
+                    heap[m] = t;
+                    i = m;
+                }
+            }
+        }
+        Integer[] sorted = new Integer[size];
+        for(int i = 0; i < size; i++) {
+            sorted[i] = heap[i];
+        }
+        Arrays.sort(sorted, (a, b) -> Double.compare(values[b], values[a]));
+        int[] result = new int[size];
+        for(int i = 0; i < size; i++) {
+            result[i] = sorted[i];
+        }
+        return result;
+    }
+
+    private interface ChunkTask {
+        void run(int chunk);
+    }
+
+    private void parallel(ChunkTask task) {
+        parallel(chunks, task);
+    }
+
+    // Runs task(0) .. task(count - 1) on the pool and waits for all of them.
+    private void parallel(int count, ChunkTask task) {
+        try {
+            pool.submit(() -> IntStream.range(0, count).parallel()
+                    .forEach(task::run)).get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted during iteration", e);
+        } catch(ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /** Prints the top articles of a snapshot by PageRank, with the time of
+     * every iteration, and optionally by sampled betweenness.
+     * Usage: java CentralityEngine wikipaths.snapshot [top] [betweennessSamples]
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1 || args.length > 3) {
+            System.err.println("Usage: java CentralityEngine graph.snapshot [top] [betweennessSamples]");
+            System.exit(1);
+        }
+        GraphSnapshot snapshot = GraphSnapshot.open(args[0]);
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        CentralityEngine engine = new CentralityEngine(snapshot.graph());
+        Result result = engine.pageRank(0.85, 1e-9, 200);
+        long total = 0;
+        for(int i = 0; i < result.iterations(); i++) {
+            total += result.iterationNanos[i];
+            System.out.printf("  iteration %3d: residual %.3e, %.1f ms%n", i + 1,
+                    result.residuals[i], result.iterationNanos[i] / 1e6);
+        }
+        System.out.printf("PageRank %s after %d iterations in %.1f ms%n",
+                result.converged ? "converged" : "stopped", result.iterations(),
+                total / 1e6);
+        for(int v : result.top(k)) {
+            System.out.printf("  %.6f  %s%n", result.rank[v], snapshot.title(v));
+        }
+        if(args.length > 2) {
+            int samples = Integer.parseInt(args[2]);
+            long start = System.nanoTime();
+            double[] betweenness = engine.sampledBetweenness(samples, 1);
+            System.out.printf("Betweenness from %d sources in %.1f ms%n", samples,
+                    (System.nanoTime() - start) / 1e6);
+            for(int v : top(betweenness, k)) {
+                System.out.printf("  %.0f  %s%n", betweenness[v], snapshot.title(v));
+            }
+        }
+        engine.shutdown();
+    }
+}
@@ -0,0 +1,416 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+/**
+ * An immutable implementation of the Unweighted Graph ADT in compressed sparse
+ * row (CSR) form.  The whole graph lives in two primitive arrays: targets holds
+ * every neighbor list back to back, sorted and without duplicates, and
+ * offsets[v] .. offsets[v+1] is the slice of targets that belongs to vertex v.
+ *   A directed graph can also carry the transposed arrays (the in-neighbors of
+ * every vertex, in the same layout), which makes getInDegree O(1) and lets
+ * searches run backward from a target; ask for them with
+ * Builder.withInEdges().
+ *   Since the structure is packed, vertices and edges cannot be added after
+ * construction; use CompactUnweightedGraph.Builder to collect the edges and
+ * then build the graph once.  The mutating methods of the Graph interface
+ * throw UnsupportedOperationException.
+ *   Any method that takes one or more vertex IDs as arguments may throw an
+ * IndexOutOfBoundsException if any input ID is out of bounds.
+ */
+public class CompactUnweightedGraph implements UnweightedGraph {
+    private final int[] offsets;
+    private final int[] targets;
+    // Transposed rows of a directed graph, or null if they were not built.
+    private final int[] inOffsets;
+    private final int[] inTargets;
+    private final boolean undirected;
+    private final int numEdges;
+
+    // The arrays are taken as-is; Builder guarantees each row is sorted and
+    // free of duplicates, which hasEdge depends on.
+    private CompactUnweightedGraph(int[] offsets, int[] targets,
+            int[] inOffsets, int[] inTargets, boolean directed, int numEdges) {
+        this.offsets = offsets;
+        this.targets = targets;
+        this.inOffsets = inOffsets;
+        this.inTargets = inTargets;
+        this.undirected = !directed;
+        this.numEdges = numEdges;
+    }
+
+    /** Collects edges for a CompactUnweightedGraph.  Edges may be added in any
+     * order and may repeat; build() sorts and deduplicates each row once.
+     */
+    public static class Builder {
+        private final boolean directed;
+        private boolean inEdges;
+        private int numVerts;
+        private int[] src;
+        private int[] dst;
+        private int size;
+
+        /** Constructs a builder for a directed graph with N vertices. */
+        public Builder(int N) {
+            this(true, N);
+        }
+
+        /** Constructs a builder for a graph with N vertices and the specified
+         * directedness.
+         */
+        public Builder(boolean directed, int N) {
+            if(N < 0) {
+                throw new IllegalArgumentException("negative vertex count");
+            }
+            this.directed = directed;
+            this.numVerts = N;
+            this.src = new int[16];
+            this.dst = new int[16];
+        }
+
+        /** Makes build() also produce the reverse adjacency of a directed
+         * graph.
+         */
+        public Builder withInEdges() {
+            inEdges = true;
+            return this;
+        }
+
+        /** Adds a new vertex.
+         * @return the ID of the added vertex.
+         */
+        public int addVertex() {
+            return numVerts++;
+        }
+
+        /** Returns the number of vertices added so far. */
+        public int numVerts() {
+            return numVerts;
+        }
+
+        /** Records an edge from begin to end.
+         * @throws IndexOutOfBoundsException if either vertex ID is out of bounds.
+         */
+        public Builder addEdge(int begin, int end) {
+            if(begin < 0 || begin >= numVerts || end < 0 || end >= numVerts) {
+                throw new IndexOutOfBoundsException();
+            }
+            if(size == src.length) {
+                int capacity = src.length * 2;
+                src = Arrays.copyOf(src, capacity);
+                dst = Arrays.copyOf(dst, capacity);
+            }
+            src[size] = begin;
+            dst[size] = end;
+            size++;
+            return this;
+        }
+
+        /** Packs the recorded edges into an immutable graph. */
+        public CompactUnweightedGraph build() {
+            int[] offsets = new int[numVerts + 1];
+            // First pass: count the out-degree of every vertex.  An undirected
+            // edge is stored in both rows, except for self-loops.
+            for(int i = 0; i < size; i++) {
+                offsets[src[i] + 1]++;
+                if(!directed && src[i] != dst[i]) {
+                    offsets[dst[i] + 1]++;
+                }
+            }
+            for(int v = 0; v < numVerts; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            // Second pass: scatter each edge into its row.
+            int[] targets = new int[offsets[numVerts]];
+            int[] fill = Arrays.copyOf(offsets, numVerts);
+            for(int i = 0; i < size; i++) {
+                targets[fill[src[i]]++] = dst[i];
+                if(!directed && src[i] != dst[i]) {
+                    targets[fill[dst[i]]++] = src[i];
+                }
+            }
+            // Sort each row and squeeze out duplicate edges in place.
+            int write = 0;
+            int rowStart = 0;
+            for(int v = 0; v < numVerts; v++) {
+                int rowEnd = offsets[v + 1];
+                Arrays.sort(targets, rowStart, rowEnd);
+                offsets[v] = write;
+                for(int i = rowStart; i < rowEnd; i++) {
+                    if(i == rowStart || targets[i] != targets[i - 1]) {
+                        targets[write++] = targets[i];
+                    }
+                }
+                rowStart = rowEnd;
+            }
+            offsets[numVerts] = write;
+            if(write < targets.length) {
+                targets = Arrays.copyOf(targets, write);
+            }
+            int m = write;
+            if(!directed) {
+                // Self-loops were stored once; every other edge twice.
+                int loops = 0;
+                for(int v = 0; v < numVerts; v++) {
+                    if(Arrays.binarySearch(targets, offsets[v], offsets[v + 1], v) >= 0) {
+                        loops++;
+                    }
+                }
+                m = (write - loops) / 2 + loops;
+            }
+            int[] inOffsets = null;
+            int[] inTargets = null;
+            if(directed && inEdges) {
+                inOffsets = new int[numVerts + 1];
+                inTargets = new int[write];
+                transpose(offsets, targets, inOffsets, inTargets);
+            }
+            return new CompactUnweightedGraph(offsets, targets, inOffsets,
+                    inTargets, directed, m);
+        }
+    }
+
+    // Wraps CSR arrays built elsewhere in this package (e.g. by a bulk
+    // loader).  Every row must already be sorted and free of duplicates.
+    static CompactUnweightedGraph fromRows(int[] offsets, int[] targets,
+            boolean withInEdges) {
+        int[] inOffsets = null;
+        int[] inTargets = null;
+        if(withInEdges) {
+            inOffsets = new int[offsets.length];
+            inTargets = new int[targets.length];
+            transpose(offsets, targets, inOffsets, inTargets);
+        }
+        return new CompactUnweightedGraph(offsets, targets, inOffsets,
+                inTargets, true, targets.length);
+    }
+
+    // Fills inOffsets/inTargets with the transpose of the CSR arrays
+    // offsets/targets.  Rows are scanned in increasing order, so every
+    // transposed row comes out sorted.
+    static void transpose(int[] offsets, int[] targets, int[] inOffsets,
+            int[] inTargets) {
+        int n = offsets.length - 1;
+        for(int i = 0; i < offsets[n]; i++) {
+            inOffsets[targets[i] + 1]++;
+        }
+        for(int v = 0; v < n; v++) {
+            inOffsets[v + 1] += inOffsets[v];
+        }
+        int[] fill = Arrays.copyOf(inOffsets, n);
+        for(int v = 0; v < n; v++) {
+            for(int i = offsets[v]; i < offsets[v + 1]; i++) {
+                inTargets[fill[targets[i]]++] = v;
+            }
+        }
+    }
+
+    // Raw access for the search engines in this package, which walk the rows
+    // directly instead of going through boxed iterators.  Not to be modified.
+    int[] offsets() {
+        return offsets;
+    }
+
+    int[] targets() {
+        return targets;
+    }
+
+    // The transposed arrays, or null if the graph does not keep them.  For an
+    // undirected graph these are the same arrays as the out-edges.
+    int[] inOffsets() {
+        return undirected ? offsets : inOffsets;
+    }
+
+    int[] inTargets() {
+        return undirected ? targets : inTargets;
+    }
+
+    /** Returns true if in-neighbors can be looked up without scanning every
+     * row, i.e. if the graph is undirected or was built withInEdges().
+     */
+    public boolean hasInEdgeIndex() {
+        return undirected || inOffsets != null;
+    }
+
+    private void checkVertex(int v) {
+        if(v < 0 || v >= offsets.length - 1) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    /** Unsupported: the graph is immutable once built. */
+    public int addVertex() {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Unsupported: the graph is immutable once built. */
+    public boolean addEdge(int begin, int end) {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Checks whether an edge exists between two vertices.
+     * In an undirected graph, this returns the same as hasEdge(end, begin).
+     * @return true if there is an edge from begin to end.
+     */
+    public boolean hasEdge(int begin, int end) {
+        checkVertex(begin);
+        checkVertex(end);
+        return Arrays.binarySearch(targets, offsets[begin], offsets[begin + 1], end) >= 0;
+    }
+
+    /** Returns the out-degree of the specified vertex. */
+    public int getDegree(int v) {
+        checkVertex(v);
+        return offsets[v + 1] - offsets[v];
+    }
+
+    /** Returns the in-degree of the specified vertex. */
+    public int getInDegree(int v) {
+        checkVertex(v);
+        if(undirected) {
+            return getDegree(v);
+        }
+        if(inOffsets != null) {
+            return inOffsets[v + 1] - inOffsets[v];
+        }
+        // Every row is sorted, so each one can be probed by binary search.
+        int d = 0;
+        for(int u = 0; u < offsets.length - 1; u++) {
+            if(Arrays.binarySearch(targets, offsets[u], offsets[u + 1], v) >= 0) {
+                d++;
+            }
+        }
+        return d;
+    }
+
+    // Read-only view of one row of the targets array.
+    private static class NeighborCollection implements Iterable<Integer> {
+        private final int[] targets;
+        private final int start;
+        private final int end;
+        public NeighborCollection(int[] targets, int start, int end) {
+            this.targets = targets;
+            this.start = start;
+            this.end = end;
+        }
+        public Iterator<Integer> iterator() {
+            return new Iterator<Integer>() {
+                private int i = start;
+                public boolean hasNext() {
+                    return i < end;
+                }
+                public Integer next() {
+                    if(i >= end) {
+                        throw new NoSuchElementException();
+                    }
+                    return targets[i++];
+                }
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    /** Returns an iterator over the neighbors of the specified vertex.
+     * In particular, the vertex u is included in the returned iterator's
+     * sequence if and only if there is an edge from v to u in the graph.
+     */
+    public Iterable<Integer> getNeighbors(int v) {
+        checkVertex(v);
+        return new NeighborCollection(targets, offsets[v], offsets[v + 1]);
+    }
+
+    /** Calls action once for each neighbor of the specified vertex, in
+     * increasing order, straight from the targets array.
+     */
+    public void forEachNeighbor(int v, IntConsumer action) {
+        checkVertex(v);
+        for(int i = offsets[v]; i < offsets[v + 1]; i++) {
+            action.accept(targets[i]);
+        }
+    }
+
+    /** Returns a primitive iterator over the neighbors of the specified
+     * vertex, in increasing order.
+     */
+    public PrimitiveIterator.OfInt neighborIterator(int v) {
+        checkVertex(v);
+        int start = offsets[v];
+        int end = offsets[v + 1];
+        return new PrimitiveIterator.OfInt() {
+            private int i = start;
+            public boolean hasNext() {
+                return i < end;
+            }
+            public int nextInt() {
+                if(i >= end) {
+                    throw new NoSuchElementException();
+                }
+                return targets[i++];
+            }
+        };
+    }
+
+    /** Copies the neighbors of the specified vertex into dst, in increasing
+     * order.
+     * @return the out-degree of v.
+     * @throws IndexOutOfBoundsException if dst is shorter than the out-degree.
+     */
+    public int copyNeighbors(int v, int[] dst) {
+        checkVertex(v);
+        int d = offsets[v + 1] - offsets[v];
+        System.arraycopy(targets, offsets[v], dst, 0, d);
+        return d;
+    }
+
+    /** Returns an iterator over the in-neighbors of the specified vertex, in
+     * increasing order.  Without the transposed arrays this probes every row.
+     */
+    public Iterable<Integer> getInNeighbors(int v) {
+        checkVertex(v);
+        if(hasInEdgeIndex()) {
+            int[] in = inOffsets();
+            return new NeighborCollection(inTargets(), in[v], in[v + 1]);
+        }
+        int[] found = new int[16];
+        int d = 0;
+        for(int u = 0; u < offsets.length - 1; u++) {
+            if(Arrays.binarySearch(targets, offsets[u], offsets[u + 1], v) >= 0) {
+                if(d == found.length) {
+                    found = Arrays.copyOf(found, d * 2);
+                }
+                found[d++] = u;
+            }
+        }
+        return new NeighborCollection(found, 0, d);
+    }
+
+    /** Returns the number of vertices in the graph. */
+    public int numVerts() {
+        return offsets.length - 1;
+    }
+
+    /** Returns the number of edges in the graph.
+     * The result does *not* double-count edges in undirected graphs.
+     */
+    public int numEdges() {
+        return numEdges;
+    }
+
+    /** Returns true if the graph is directed. */
+    public boolean isDirected() {
+        return !undirected;
+    }
+
+    /** Returns true if there are no vertices in the graph. */
+    public boolean isEmpty() {
+        return offsets.length == 1;
+    }
+
+    /** Unsupported: the graph is immutable once built. */
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,401 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+/**
+ * An immutable implementation of the Weighted Graph ADT in compressed sparse
+ * row form, laid out like CompactUnweightedGraph with one more array: the
+ * weight of the edge to targets[i] is weights[i], stored as a float.  Integer
+ * weights up to 2^24 are stored exactly.
+ *   Edges are collected with CompactWeightedGraph.Builder.  If the same edge
+ * is added more than once, the graph keeps the smallest weight given, which
+ * is the one any shortest path would use.  The mutating methods of the Graph
+ * interface throw UnsupportedOperationException.
+ *   Any method that takes one or more vertex IDs as arguments may throw an
+ * IndexOutOfBoundsException if any input ID is out of bounds.
+ */
+public class CompactWeightedGraph implements WeightedGraph {
+    private final int[] offsets;
+    private final int[] targets;
+    private final float[] weights;
+    // Transposed rows of a directed graph, or null if they were not built.
+    private final int[] inOffsets;
+    private final int[] inSources;
+    private final boolean undirected;
+    private final int numEdges;
+
+    private CompactWeightedGraph(int[] offsets, int[] targets, float[] weights,
+            int[] inOffsets, int[] inSources, boolean directed, int numEdges) {
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.inOffsets = inOffsets;
+        this.inSources = inSources;
+        this.undirected = !directed;
+        this.numEdges = numEdges;
+    }
+
+    /** Collects weighted edges for a CompactWeightedGraph.  Edges may be
+     * added in any order and may repeat; build() sorts each row once.
+     */
+    public static class Builder {
+        private final boolean directed;
+        private boolean inEdges;
+        private int numVerts;
+        private int[] src;
+        private int[] dst;
+        private float[] weight;
+        private int size;
+
+        /** Constructs a builder for a directed graph with N vertices. */
+        public Builder(int N) {
+            this(true, N);
+        }
+
+        /** Constructs a builder for a graph with N vertices and the specified
+         * directedness.
+         */
+        public Builder(boolean directed, int N) {
+            if(N < 0) {
+                throw new IllegalArgumentException("negative vertex count");
+            }
+            this.directed = directed;
+            this.numVerts = N;
+            this.src = new int[16];
+            this.dst = new int[16];
+            this.weight = new float[16];
+        }
+
+        /** Makes build() also produce the reverse adjacency of a directed
+         * graph, for O(1) in-degrees and in-neighbor lists.
+         */
+        public Builder withInEdges() {
+            inEdges = true;
+            return this;
+        }
+
+        /** Adds a new vertex.
+         * @return the ID of the added vertex.
+         */
+        public int addVertex() {
+            return numVerts++;
+        }
+
+        /** Returns the number of vertices added so far. */
+        public int numVerts() {
+            return numVerts;
+        }
+
+        /** Records an edge from begin to end with the specified weight.
+         * @throws IndexOutOfBoundsException if either vertex ID is out of bounds.
+         * @throws IllegalArgumentException if weight is negative or NaN.
+         */
+        public Builder addEdge(int begin, int end, double weight) {
+            if(begin < 0 || begin >= numVerts || end < 0 || end >= numVerts) {
+                throw new IndexOutOfBoundsException();
+            }
+            if(!(weight >= 0)) {
+                throw new IllegalArgumentException("negative or NaN weight: " + weight);
+            }
+            if(size == src.length) {
+                int capacity = src.length * 2;
+                src = Arrays.copyOf(src, capacity);
+                dst = Arrays.copyOf(dst, capacity);
+                this.weight = Arrays.copyOf(this.weight, capacity);
+            }
+            src[size] = begin;
+            dst[size] = end;
+            // Adding 0 turns -0.0 into 0.0, which pack() relies on.
+            this.weight[size] = (float) weight + 0.0f;
+            size++;
+            return this;
+        }
+
+        /** Packs the recorded edges into an immutable graph. */
+        public CompactWeightedGraph build() {
+            int[] offsets = new int[numVerts + 1];
+            // Count the out-degree of every vertex.  An undirected edge is
+            // stored in both rows, except for self-loops.
+            for(int i = 0; i < size; i++) {
+                offsets[src[i] + 1]++;
+                if(!directed && src[i] != dst[i]) {
+                    offsets[dst[i] + 1]++;
+                }
+            }
+            for(int v = 0; v < numVerts; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            // Scatter each edge into its row as a packed (target, weight) key,
+            // so that one sort orders the row by target and then by weight.
+            long[] row = new long[offsets[numVerts]];
+            int[] fill = Arrays.copyOf(offsets, numVerts);
+            for(int i = 0; i < size; i++) {
+                row[fill[src[i]]++] = pack(dst[i], weight[i]);
+                if(!directed && src[i] != dst[i]) {
+                    row[fill[dst[i]]++] = pack(src[i], weight[i]);
+                }
+            }
+            int[] targets = new int[row.length];
+            float[] weights = new float[row.length];
+            int write = 0;
+            int rowStart = 0;
+            int loops = 0;
+            for(int v = 0; v < numVerts; v++) {
+                int rowEnd = offsets[v + 1];
+                Arrays.sort(row, rowStart, rowEnd);
+                offsets[v] = write;
+                for(int i = rowStart; i < rowEnd; i++) {
+                    int u = (int) (row[i] >>> 32);
+                    // The first copy of a repeated edge has the smallest weight.
+                    if(i == rowStart || u != (int) (row[i - 1] >>> 32)) {
+                        targets[write] = u;
+                        weights[write] = Float.intBitsToFloat((int) row[i]);
+                        write++;
+                        if(u == v) {
+                            loops++;
+                        }
+                    }
+                }
+                rowStart = rowEnd;
+            }
+            offsets[numVerts] = write;
+            if(write < targets.length) {
+                targets = Arrays.copyOf(targets, write);
+                weights = Arrays.copyOf(weights, write);
+            }
+            int m = directed ? write : (write - loops) / 2 + loops;
+            int[] inOffsets = null;
+            int[] inSources = null;
+            if(directed && inEdges) {
+                inOffsets = new int[numVerts + 1];
+                inSources = new int[write];
+                CompactUnweightedGraph.transpose(offsets, targets, inOffsets, inSources);
+            }
+            return new CompactWeightedGraph(offsets, targets, weights, inOffsets,
+                    inSources, directed, m);
+        }
+
+        // Non-negative floats order like their bit patterns, so the packed
+        // keys sort by target first and weight second.
+        private static long pack(int target, float weight) {
+            return (long) target << 32 | (Float.floatToIntBits(weight) & 0xFFFFFFFFL);
+        }
+    }
+
+    // Raw access for the search engines in this package.  Not to be modified.
+    int[] offsets() {
+        return offsets;
+    }
+
+    int[] targets() {
+        return targets;
+    }
+
+    float[] weights() {
+        return weights;
+    }
+
+    private void checkVertex(int v) {
+        if(v < 0 || v >= offsets.length - 1) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    /** Unsupported: the graph is immutable once built. */
+    public int addVertex() {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Unsupported: the graph is immutable once built. */
+    public boolean addEdge(int begin, int end, double weight) {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Checks whether an edge exists between two vertices.
+     * In an undirected graph, this returns the same as hasEdge(end, begin).
+     * @return true if there is an edge from begin to end.
+     */
+    public boolean hasEdge(int begin, int end) {
+        checkVertex(begin);
+        checkVertex(end);
+        return Arrays.binarySearch(targets, offsets[begin], offsets[begin + 1], end) >= 0;
+    }
+
+    /** Returns the weight of the edge from begin to end.
+     * @throws NoSuchElementException if there is no such edge.
+     */
+    public double getWeight(int begin, int end) {
+        checkVertex(begin);
+        checkVertex(end);
+        int i = Arrays.binarySearch(targets, offsets[begin], offsets[begin + 1], end);
+        if(i < 0) {
+            throw new NoSuchElementException("no edge from " + begin + " to " + end);
+        }
+        return weights[i];
+    }
+
+    /** Returns the out-degree of the specified vertex. */
+    public int getDegree(int v) {
+        checkVertex(v);
+        return offsets[v + 1] - offsets[v];
+    }
+
+    /** Returns the in-degree of the specified vertex. */
+    public int getInDegree(int v) {
+        checkVertex(v);
+        if(undirected) {
+            return getDegree(v);
+        }
+        if(inOffsets != null) {
+            return inOffsets[v + 1] - inOffsets[v];
+        }
+        int d = 0;
+        for(int u = 0; u < offsets.length - 1; u++) {
+            if(Arrays.binarySearch(targets, offsets[u], offsets[u + 1], v) >= 0) {
+                d++;
+            }
+        }
+        return d;
+    }
+
+    // Read-only view of a slice of a vertex array.
+    private static class Row implements Iterable<Integer> {
+        private final int[] ids;
+        private final int start;
+        private final int end;
+
+        Row(int[] ids, int start, int end) {
+            this.ids = ids;
+            this.start = start;
+            this.end = end;
+        }
+
+        public Iterator<Integer> iterator() {
+            return new Iterator<Integer>() {
+                private int i = start;
+                public boolean hasNext() {
+                    return i < end;
+                }
+                public Integer next() {
+                    if(i >= end) {
+                        throw new NoSuchElementException();
+                    }
+                    return ids[i++];
+                }
+            };
+        }
+    }
+
+    /** Returns an iterator over the neighbors of the specified vertex, in
+     * increasing order.
+     */
+    public Iterable<Integer> getNeighbors(int v) {
+        checkVertex(v);
+        return new Row(targets, offsets[v], offsets[v + 1]);
+    }
+
+    /** Calls action once for each neighbor of the specified vertex, in
+     * increasing order.
+     */
+    public void forEachNeighbor(int v, IntConsumer action) {
+        checkVertex(v);
+        for(int i = offsets[v]; i < offsets[v + 1]; i++) {
+            action.accept(targets[i]);
+        }
+    }
+
+    /** Calls action once for each out-edge of the specified vertex, in
+     * increasing order of neighbor, straight from the arrays.
+     */
+    public void forEachEdge(int v, EdgeConsumer action) {
+        checkVertex(v);
+        for(int i = offsets[v]; i < offsets[v + 1]; i++) {
+            action.accept(targets[i], weights[i]);
+        }
+    }
+
+    /** Returns a primitive iterator over the neighbors of the specified
+     * vertex, in increasing order.
+     */
+    public PrimitiveIterator.OfInt neighborIterator(int v) {
+        checkVertex(v);
+        int start = offsets[v];
+        int end = offsets[v + 1];
+        return new PrimitiveIterator.OfInt() {
+            private int i = start;
+            public boolean hasNext() {
+                return i < end;
+            }
+            public int nextInt() {
+                if(i >= end) {
+                    throw new NoSuchElementException();
+                }
+                return targets[i++];
+            }
+        };
+    }
+
+    /** Copies the neighbors of the specified vertex into dst, in increasing
+     * order.
+     * @return the out-degree of v.
+     * @throws IndexOutOfBoundsException if dst is shorter than the out-degree.
+     */
+    public int copyNeighbors(int v, int[] dst) {
+        checkVertex(v);
+        int d = offsets[v + 1] - offsets[v];
+        System.arraycopy(targets, offsets[v], dst, 0, d);
+        return d;
+    }
+
+    /** Returns an iterator over the in-neighbors of the specified vertex, in
+     * increasing order.  Without the transposed arrays this probes every row.
+     */
+    public Iterable<Integer> getInNeighbors(int v) {
+        checkVertex(v);
+        if(undirected) {
+            return getNeighbors(v);
+        }
+        if(inOffsets != null) {
+            return new Row(inSources, inOffsets[v], inOffsets[v + 1]);
+        }
+        int[] found = new int[16];
+        int d = 0;
+        for(int u = 0; u < offsets.length - 1; u++) {
+            if(Arrays.binarySearch(targets, offsets[u], offsets[u + 1], v) >= 0) {
+                if(d == found.length) {
+                    found = Arrays.copyOf(found, d * 2);
+                }
+                found[d++] = u;
+            }
+        }
+        return new Row(found, 0, d);
+    }
+
+    /** Returns the number of vertices in the graph. */
+    public int numVerts() {
+        return offsets.length - 1;
+    }
+
+    /** Returns the number of edges in the graph.
+     * The result does *not* double-count edges in undirected graphs.
+     */
+    public int numEdges() {
+        return numEdges;
+    }
+
+    /** Returns true if the graph is directed. */
+    public boolean isDirected() {
+        return !undirected;
+    }
+
+    /** Returns true if there are no vertices in the graph. */
+    public boolean isEmpty() {
+        return offsets.length == 1;
+    }
+
+    /** Unsupported: the graph is immutable once built. */
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,481 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+/**
+ * An immutable implementation of the Unweighted Graph ADT that keeps every
+ * row compressed, in the style of WebGraph.  A row is stored as varints (7
+ * bits per byte, high bit set on all but the last byte): the degree, then the
+ * first neighbor as a zigzag-encoded offset from the vertex itself, then the
+ * gaps between consecutive sorted neighbors, minus one.  Links between
+ * related articles have small ID gaps, so most of them fit in one or two
+ * bytes instead of four.
+ *   offsets[v] is the byte position of row v, so any row can be reached
+ * directly; reading it is a sequential decode.  copyNeighbors and
+ * forEachNeighbor decode a whole row in one tight loop.  BidirectionalSearch
+ * reads this graph through a RowReader that decodes each row the same way as
+ * the search reaches it, so the graph is never expanded to CSR arrays.  Rows
+ * that only need a membership test (hasEdge) stop decoding as soon as they
+ * pass the target.
+ *   How much this saves depends on the vertex numbering.  A gap below 128
+ * takes one byte, one below 16384 two, and so on, so the encoding only pays
+ * off when the IDs put linked pages close together, as the crawl or URL
+ * order behind WebGraph's figures does.  IDs assigned in title order scatter
+ * the links of a row across the whole ID space, so many gaps take two bytes
+ * and the saving over CSR falls well short of WebGraph's.  Renumbering the
+ * articles, for example in breadth-first order, would shorten the gaps.  main
+ * prints the bits per link and the ratio to CSR for a snapshot.
+ *   A directed graph keeps its in-rows too, compressed the same way.  The
+ * mutating methods of the Graph interface throw UnsupportedOperationException.
+ *   Any method that takes one or more vertex IDs as arguments may throw an
+ * IndexOutOfBoundsException if any input ID is out of bounds.
+ */
+public class CompressedUnweightedGraph implements UnweightedGraph {
+    private final int n;
+    private final int numEdges;
+    private final boolean undirected;
+    private final int maxDegree;
+    private final byte[] data;
+    private final int[] offsets;
+    // In-rows of a directed graph, or null for an undirected one.
+    private final byte[] inData;
+    private final int[] inOffsets;
+
+    /** Constructs a compressed copy of the specified graph. */
+    public CompressedUnweightedGraph(Graph graph) {
+        CsrRows out = CsrRows.out(graph);
+        n = out.numVerts();
+        numEdges = graph.numEdges();
+        undirected = !graph.isDirected();
+        offsets = new int[n + 1];
+        data = encode(out, offsets);
+        if(undirected) {
+            inOffsets = null;
+            inData = null;
+        } else {
+            inOffsets = new int[n + 1];
+            inData = encode(CsrRows.in(graph, out), inOffsets);
+        }
+        int max = 0;
+        for(int v = 0; v < n; v++) {
+            max = Math.max(max, degree(data, offsets[v]));
+            if(inData != null) {
+                max = Math.max(max, degree(inData, inOffsets[v]));
+            }
+        }
+        maxDegree = max;
+    }
+
+    // Encodes every row in two passes: the first sizes the rows and fills
+    // offsets, the second writes them.
+    private static byte[] encode(CsrRows rows, int[] offsets) {
+        int n = rows.numVerts();
+        int[] row = new int[16];
+        long size = 0;
+        for(int v = 0; v < n; v++) {
+            offsets[v] = (int) size;
+            row = sortedRow(rows, v, row);
+            int d = rows.end(v) - rows.start(v);
+            size += varintLength(d);
+            for(int i = 0; i < d; i++) {
+                size += varintLength(code(row, i, v));
+            }
+            if(size > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("graph too large to compress into one array");
+            }
+        }
+        offsets[n] = (int) size;
+        byte[] data = new byte[(int) size];
+        for(int v = 0; v < n; v++) {
+            row = sortedRow(rows, v, row);
+            int d = rows.end(v) - rows.start(v);
+            int pos = writeVarint(data, offsets[v], d);
+            for(int i = 0; i < d; i++) {
+                pos = writeVarint(data, pos, code(row, i, v));
+            }
+        }
+        return data;
+    }
+
+    // Copies row v into buf, growing it if needed, and sorts it; rows from
+    // CSR sources are sorted already, so the sort is usually a single pass.
+    private static int[] sortedRow(CsrRows rows, int v, int[] buf) {
+        int d = rows.end(v) - rows.start(v);
+        if(d > buf.length) {
+            buf = new int[Math.max(d, buf.length * 2)];
+        }
+        for(int i = 0; i < d; i++) {
+            buf[i] = rows.target(rows.start(v) + i);
+        }
+        Arrays.sort(buf, 0, d);
+        return buf;
+    }
+
+    // The unsigned value stored for the i-th neighbor of v.
+    private static int code(int[] row, int i, int v) {
+        if(i == 0) {
+            int delta = row[0] - v;
+            return (delta << 1) ^ (delta >> 31);
+        }
+        return row[i] - row[i - 1] - 1;
+    }
+
+    private static int varintLength(int x) {
+        int length = 1;
+        while((x >>>= 7) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    private static int writeVarint(byte[] data, int pos, int x) {
+        while((x & ~0x7f) != 0) {
+            data[pos++] = (byte) ((x & 0x7f) | 0x80);
+            x >>>= 7;
+        }
+        data[pos++] = (byte) x;
+        return pos;
+    }
+
+    // Decodes the row that starts at pos into dst and returns its degree.
+    // This is the hot loop of every traversal, so the varints are read inline.
+    private static int decode(byte[] data, int pos, int v, int[] dst) {
+        int x = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos++];
+            x |= (b & 0x7f) << shift;
+            shift += 7;
+        } while(b < 0);
+        int d = x;
+        if(dst.length < d) {
+            throw new IndexOutOfBoundsException();
+        }
+        int prev = 0;
+        for(int i = 0; i < d; i++) {
+            x = 0;
+            shift = 0;
+            do {
+                b = data[pos++];
+                x |= (b & 0x7f) << shift;
+                shift += 7;
+            } while(b < 0);
+            prev = i == 0 ? v + ((x >>> 1) ^ -(x & 1)) : prev + x + 1;
+            dst[i] = prev;
+        }
+        return d;
+    }
+
+    private static int degree(byte[] data, int pos) {
+        int x = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos++];
+            x |= (b & 0x7f) << shift;
+            shift += 7;
+        } while(b < 0);
+        return x;
+    }
+
+    private void checkVertex(int v) {
+        if(v < 0 || v >= n) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    /** Returns the largest out- or in-degree, i.e. a buffer size that
+     * copyNeighbors can use for any vertex.
+     */
+    public int maxDegree() {
+        return maxDegree;
+    }
+
+    /** Returns the heap used by the adjacency, in bytes. */
+    public long memoryBytes() {
+        long bytes = data.length + 4L * offsets.length;
+        if(inData != null) {
+            bytes += inData.length + 4L * inOffsets.length;
+        }
+        return bytes;
+    }
+
+    // Readers of the out- and in-rows for the search engines in this package;
+    // each decodes into a buffer of its own, so give each engine its own.
+    RowReader outRows() {
+        return new Rows(data, offsets, maxDegree);
+    }
+
+    RowReader inRows() {
+        return undirected ? outRows() : new Rows(inData, inOffsets, maxDegree);
+    }
+
+    // Decodes the current row into row, as copyNeighbors does.
+    private static final class Rows implements RowReader {
+        private final byte[] data;
+        private final int[] offsets;
+        private final int[] row;
+        private int degree;
+
+        Rows(byte[] data, int[] offsets, int maxDegree) {
+            this.data = data;
+            this.offsets = offsets;
+            this.row = new int[maxDegree];
+        }
+
+        public int numVerts() {
+            return offsets.length - 1;
+        }
+
+        public int start(int v) {
+            degree = decode(data, offsets[v], v, row);
+            return 0;
+        }
+
+        public int end(int v) {
+            return degree;
+        }
+
+        public int target(int i) {
+            return row[i];
+        }
+
+        public int degree(int v) {
+            return CompressedUnweightedGraph.degree(data, offsets[v]);
+        }
+    }
+
+    /** Unsupported: the graph is immutable once built. */
+    public int addVertex() {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Unsupported: the graph is immutable once built. */
+    public boolean addEdge(int begin, int end) {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Checks whether an edge exists between two vertices.
+     * In an undirected graph, this returns the same as hasEdge(end, begin).
+     * @return true if there is an edge from begin to end.
+     */
+    public boolean hasEdge(int begin, int end) {
+        checkVertex(begin);
+        checkVertex(end);
+        PrimitiveIterator.OfInt it = neighborIterator(begin);
+        while(it.hasNext()) {
+            int u = it.nextInt();
+            if(u >= end) {
+                return u == end;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the out-degree of the specified vertex. */
+    public int getDegree(int v) {
+        checkVertex(v);
+        return degree(data, offsets[v]);
+    }
+
+    /** Returns the in-degree of the specified vertex. */
+    public int getInDegree(int v) {
+        checkVertex(v);
+        return undirected ? degree(data, offsets[v]) : degree(inData, inOffsets[v]);
+    }
+
+    /** Copies the neighbors of the specified vertex into dst, in increasing
+     * order.
+     * @return the out-degree of v.
+     * @throws IndexOutOfBoundsException if dst is shorter than the out-degree.
+     */
+    public int copyNeighbors(int v, int[] dst) {
+        checkVertex(v);
+        return decode(data, offsets[v], v, dst);
+    }
+
+    /** Calls action once for each neighbor of the specified vertex, in
+     * increasing order, decoding the row in one loop as copyNeighbors does.
+     */
+    public void forEachNeighbor(int v, IntConsumer action) {
+        checkVertex(v);
+        int pos = offsets[v];
+        int x = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos++];
+            x |= (b & 0x7f) << shift;
+            shift += 7;
+        } while(b < 0);
+        int d = x;
+        int prev = 0;
+        for(int i = 0; i < d; i++) {
+            x = 0;
+            shift = 0;
+            do {
+                b = data[pos++];
+                x |= (b & 0x7f) << shift;
+                shift += 7;
+            } while(b < 0);
+            prev = i == 0 ? v + ((x >>> 1) ^ -(x & 1)) : prev + x + 1;
+            action.accept(prev);
+        }
+    }
+
+    /** Returns a primitive iterator over the neighbors of the specified
+     * vertex, in increasing order, decoding one varint per step.
+     */
+    public PrimitiveIterator.OfInt neighborIterator(int v) {
+        checkVertex(v);
+        return new RowIterator(data, offsets[v], v);
+    }
+
+    // Decodes one row lazily.
+    private static class RowIterator implements PrimitiveIterator.OfInt {
+        private final byte[] data;
+        private final int v;
+        private int pos;
+        private int remaining;
+        private int index;
+        private int prev;
+
+        RowIterator(byte[] data, int pos, int v) {
+            this.data = data;
+            this.v = v;
+            this.remaining = degree(data, pos);
+            while(data[pos] < 0) {
+                pos++;
+            }
+            this.pos = pos + 1;
+        }
+
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        public int nextInt() {
+            if(remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            int x = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                x |= (b & 0x7f) << shift;
+                shift += 7;
+            } while(b < 0);
+            prev = index++ == 0 ? v + ((x >>> 1) ^ -(x & 1)) : prev + x + 1;
+            remaining--;
+            return prev;
+        }
+    }
+
+    // Read-only adapter from a row iterator to Iterator<Integer>.
+    private static class NeighborCollection implements Iterable<Integer> {
+        private final byte[] data;
+        private final int pos;
+        private final int v;
+        NeighborCollection(byte[] data, int pos, int v) {
+            this.data = data;
+            this.pos = pos;
+            this.v = v;
+        }
+        public Iterator<Integer> iterator() {
+            RowIterator it = new RowIterator(data, pos, v);
+            return new Iterator<Integer>() {
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+                public Integer next() {
+                    return it.nextInt();
+                }
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    /** Returns an iterator over the neighbors of the specified vertex.
+     * In particular, the vertex u is included in the returned iterator's
+     * sequence if and only if there is an edge from v to u in the graph.
+     */
+    public Iterable<Integer> getNeighbors(int v) {
+        checkVertex(v);
+        return new NeighborCollection(data, offsets[v], v);
+    }
+
+    /** Returns an iterator over the in-neighbors of the specified vertex, in
+     * increasing order.
+     */
+    public Iterable<Integer> getInNeighbors(int v) {
+        checkVertex(v);
+        return undirected ? new NeighborCollection(data, offsets[v], v)
+                : new NeighborCollection(inData, inOffsets[v], v);
+    }
+
+    /** Returns the number of vertices in the graph. */
+    public int numVerts() {
+        return n;
+    }
+
+    /** Returns the number of edges in the graph.
+     * The result does *not* double-count edges in undirected graphs.
+     */
+    public int numEdges() {
+        return numEdges;
+    }
+
+    /** Returns true if the graph is directed. */
+    public boolean isDirected() {
+        return !undirected;
+    }
+
+    /** Returns true if there are no vertices in the graph. */
+    public boolean isEmpty() {
+        return n == 0;
+    }
+
+    /** Unsupported: the graph is immutable once built. */
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Compresses a snapshot's graph and compares its size and a full decode
+     * of every row with the CSR form.
+     * Usage: java CompressedUnweightedGraph wikipaths.snapshot
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length != 1) {
+            System.err.println("Usage: java CompressedUnweightedGraph graph.snapshot");
+            System.exit(1);
+        }
+        GraphSnapshot snapshot = GraphSnapshot.open(args[0]);
+        Graph graph = snapshot.graph();
+        long start = System.nanoTime();
+        CompressedUnweightedGraph compressed = new CompressedUnweightedGraph(graph);
+        System.out.printf("compressed %d articles, %d links in %.1f ms%n",
+                compressed.numVerts(), compressed.numEdges(),
+                (System.nanoTime() - start) / 1e6);
+        long csr = 8L * (graph.numVerts() + 1L + graph.numEdges());
+        System.out.printf("adjacency: %d bytes compressed, %d bytes as CSR (%.2fx), %.2f bits per link%n",
+                compressed.memoryBytes(), csr, (double) csr / compressed.memoryBytes(),
+                8.0 * compressed.data.length / Math.max(1, compressed.numEdges()));
+        int[] row = new int[compressed.maxDegree()];
+        long sum = 0;
+        start = System.nanoTime();
+        for(int v = 0; v < compressed.numVerts(); v++) {
+            int d = compressed.copyNeighbors(v, row);
+            for(int i = 0; i < d; i++) {
+                sum += row[i];
+            }
+        }
+        System.out.printf("decoded every row in %.1f ms (checksum %d)%n",
+                (System.nanoTime() - start) / 1e6, sum);
+    }
+}
@@ -0,0 +1,133 @@
+import java.nio.IntBuffer;
+/**
+ * A read-only view of one direction of a graph's adjacency in compressed
+ * sparse row form, shared by the search engines in this package.  The rows of
+ * vertex v are the entries target(start(v)) .. target(end(v) - 1), readable
+ * in any order and from any number of threads.
+ *   The view reads straight from the arrays of a CompactUnweightedGraph or the
+ * mapped buffers of a MappedUnweightedGraph; for any other Graph it is copied
+ * once through copyNeighbors.  Heap rows are indexed directly, so the engines
+ * pay for a buffer read per edge only on a mapped snapshot; the buffer fields
+ * are null otherwise, and the branch on them is the same for every call on a
+ * view.
+ */
+final class CsrRows implements RowReader {
+    // Heap rows, or null for mapped rows.
+    private final int[] offsetArray;
+    private final int[] targetArray;
+    // Mapped rows, or null for heap rows.
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+    private final int n;
+
+    CsrRows(IntBuffer offsets, IntBuffer targets) {
+        this.offsetArray = null;
+        this.targetArray = null;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.n = offsets.limit() - 1;
+    }
+
+    CsrRows(int[] offsets, int[] targets) {
+        this.offsetArray = offsets;
+        this.targetArray = targets;
+        this.offsets = null;
+        this.targets = null;
+        this.n = offsets.length - 1;
+    }
+
+    public int numVerts() {
+        return n;
+    }
+
+    int numEdges() {
+        return start(n);
+    }
+
+    public int start(int v) {
+        return offsetArray != null ? offsetArray[v] : offsets.get(v);
+    }
+
+    public int end(int v) {
+        return offsetArray != null ? offsetArray[v + 1] : offsets.get(v + 1);
+    }
+
+    public int target(int i) {
+        return targetArray != null ? targetArray[i] : targets.get(i);
+    }
+
+    public int degree(int v) {
+        return end(v) - start(v);
+    }
+
+    /** Returns the out-edges of the specified graph. */
+    static CsrRows out(Graph graph) {
+        if(graph instanceof CompactUnweightedGraph) {
+            CompactUnweightedGraph csr = (CompactUnweightedGraph) graph;
+            return new CsrRows(csr.offsets(), csr.targets());
+        }
+        if(graph instanceof MappedUnweightedGraph) {
+            return ((MappedUnweightedGraph) graph).outRows();
+        }
+        int n = graph.numVerts();
+        int[] offsets = new int[n + 1];
+        for(int v = 0; v < n; v++) {
+            offsets[v + 1] = offsets[v] + graph.getDegree(v);
+        }
+        int[] targets = new int[offsets[n]];
+        int[] row = new int[16];
+        for(int v = 0; v < n; v++) {
+            int d = offsets[v + 1] - offsets[v];
+            if(d > row.length) {
+                row = new int[Math.max(d, row.length * 2)];
+            }
+            graph.copyNeighbors(v, row);
+            System.arraycopy(row, 0, targets, offsets[v], d);
+        }
+        return new CsrRows(offsets, targets);
+    }
+
+    /** Returns the in-edges of the specified graph, transposing out if the
+     * graph keeps no reverse index of its own.
+     */
+    static CsrRows in(Graph graph, CsrRows out) {
+        if(graph instanceof CompactUnweightedGraph) {
+            CompactUnweightedGraph csr = (CompactUnweightedGraph) graph;
+            if(csr.hasInEdgeIndex()) {
+                return new CsrRows(csr.inOffsets(), csr.inTargets());
+            }
+        }
+        if(graph instanceof MappedUnweightedGraph) {
+            MappedUnweightedGraph mapped = (MappedUnweightedGraph) graph;
+            if(mapped.hasInEdgeIndex()) {
+                return mapped.inRows();
+            }
+        }
+        if(graph instanceof HybridUnweightedGraph && graph.isDirected()) {
+            return ((HybridUnweightedGraph) graph).inRows();
+        }
+        return out.transpose();
+    }
+
+    /** Returns a heap copy of the transpose of these rows.  Rows are scanned
+     * in increasing order, so every transposed row comes out sorted.
+     */
+    CsrRows transpose() {
+        int[] inOffsets = new int[n + 1];
+        int[] inTargets = new int[numEdges()];
+        for(int i = 0; i < inTargets.length; i++) {
+            inOffsets[target(i) + 1]++;
+        }
+        for(int v = 0; v < n; v++) {
+            inOffsets[v + 1] += inOffsets[v];
+        }
+        int[] fill = new int[n];
+        System.arraycopy(inOffsets, 0, fill, 0, n);
+        for(int v = 0; v < n; v++) {
+            for(int i = start(v); i < end(v); i++) {
+                inTargets[fill[target(i)]++] = v;
+            }
+        }
+        return new CsrRows(inOffsets, inTargets);
+    }
+}
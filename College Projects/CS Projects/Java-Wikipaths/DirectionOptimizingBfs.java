@@ -0,0 +1,292 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+/**
+ * Single-source breadth-first search over the whole graph that switches
+ * between two ways of growing a level (Beamer et al.'s direction-optimizing
+ * BFS):
+ * <ul>
+ *   <li>top-down: every frontier vertex claims its unvisited out-neighbors;</li>
+ *   <li>bottom-up: every unvisited vertex scans its in-neighbors and stops at
+ *       the first one in the frontier.</li>
+ * </ul>
+ * Top-down is cheap while the frontier is small.  In the middle levels of a
+ * small-world graph like Wikipedia the frontier covers most vertices, and
+ * bottom-up wins because an unvisited vertex usually finds a frontier parent
+ * after a few probes.  The search goes bottom-up when the edges leaving the
+ * frontier outnumber the edges leaving unvisited vertices by ALPHA, and back
+ * to top-down when the frontier shrinks below 1/BETA of the vertices.
+ *   Frontiers and the visited set are bitsets.  Each level is split into
+ * chunks of whole bitset words that run on a fork-join pool, so bottom-up
+ * steps write without contention; top-down steps claim vertices with a
+ * compare-and-set on the visited word.
+ */
+public class DirectionOptimizingBfs {
+    private static final int ALPHA = 14;
+    private static final int BETA = 24;
+    // Vertices per parallel chunk; a multiple of 64 so chunks own whole words.
+    private static final int CHUNK = 64 * 64;
+
+    private final CsrRows out;
+    private final CsrRows in;
+    private final int n;
+    private final int words;
+    private final ForkJoinPool pool;
+
+    /** The outcome of one search. */
+    public static class Result {
+        /** dist[v] is the distance from the source to v, or -1. */
+        public final int[] dist;
+        /** levels[d] is the number of vertices at distance d. */
+        public final long[] levels;
+        /** bottomUp[d] is true if level d+1 was found bottom-up. */
+        public final boolean[] bottomUp;
+        public final long elapsedNanos;
+
+        Result(int[] dist, long[] levels, boolean[] bottomUp, long elapsedNanos) {
+            this.dist = dist;
+            this.levels = levels;
+            this.bottomUp = bottomUp;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /** Returns the number of vertices reachable from the source. */
+        public long reached() {
+            long r = 0;
+            for(long c : levels) {
+                r += c;
+            }
+            return r;
+        }
+    }
+
+    /** Constructs a search over the specified graph with one thread per core. */
+    public DirectionOptimizingBfs(Graph graph) {
+        this(graph, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Constructs a search over the specified graph with the specified number
+     * of threads.  The graph must not change while the search is in use.
+     */
+    public DirectionOptimizingBfs(Graph graph, int parallelism) {
+        out = CsrRows.out(graph);
+        in = CsrRows.in(graph, out);
+        n = out.numVerts();
+        words = (n + 63) >>> 6;
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /** Releases the worker threads. */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /** Computes the distance from source to every vertex.
+     * @throws IndexOutOfBoundsException if source is out of bounds.
+     */
+    public Result run(int source) {
+        if(source < 0 || source >= n) {
+            throw new IndexOutOfBoundsException();
+        }
+        long start = System.nanoTime();
+        int[] dist = new int[n];
+        Arrays.fill(dist, -1);
+        AtomicLongArray visited = new AtomicLongArray(words);
+        AtomicLongArray frontier = new AtomicLongArray(words);
+        AtomicLongArray next = new AtomicLongArray(words);
+        long[] levels = new long[16];
+        boolean[] bottomUp = new boolean[16];
+
+        dist[source] = 0;
+        visited.set(source >>> 6, 1L << source);
+        frontier.set(source >>> 6, 1L << source);
+        levels[0] = 1;
+        long frontierSize = 1;
+        long frontierEdges = out.end(source) - out.start(source);
+        long unexploredEdges = out.numEdges() - frontierEdges;
+        boolean up = false;
+        int chunks = (n + CHUNK - 1) / CHUNK;
+
+        for(int level = 0; frontierSize > 0; level++) {
+            if(!up && frontierEdges * ALPHA > unexploredEdges) {
+                up = true;
+            } else if(up && frontierSize * BETA < n) {
+                up = false;
+            }
+            if(level + 1 >= levels.length) {
+                levels = Arrays.copyOf(levels, levels.length * 2);
+                bottomUp = Arrays.copyOf(bottomUp, bottomUp.length * 2);
+            }
+            bottomUp[level] = up;
+            int d = level + 1;
+            LongAdder found = new LongAdder();
+            LongAdder foundEdges = new LongAdder();
+            boolean bottom = up;
+            AtomicLongArray f = frontier;
+            AtomicLongArray nx = next;
+            parallel(chunks, c -> found.add(bottom
+                    ? bottomUpChunk(c, f, nx, visited, dist, d)
+                    : topDownChunk(c, f, nx, visited, dist, d)));
+            // Top-down steps set bits in every chunk, so the out-edges of the
+            // new frontier can only be counted once the step is over.
+            parallel(chunks, c -> {
+                long edges = 0;
+                int hi = Math.min(n, (c + 1) * CHUNK);
+                for(int w = c * (CHUNK >>> 6); w < (hi + 63) >>> 6; w++) {
+                    long bits = nx.get(w);
+                    while(bits != 0) {
+                        int v = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                        edges += out.end(v) - out.start(v);
+                    }
+                }
+                foundEdges.add(edges);
+            });
+            frontierSize = found.sum();
+            frontierEdges = foundEdges.sum();
+            unexploredEdges -= frontierEdges;
+            levels[d] = frontierSize;
+            // The new frontier becomes current; the old one is cleared for
+            // reuse as the next one.
+            AtomicLongArray t = frontier;
+            frontier = next;
+            next = t;
+            for(int w = 0; w < words; w++) {
+                next.set(w, 0);
+            }
+        }
+        int depth = levels.length;
+        while(depth > 1 && levels[depth - 1] == 0) {
+            depth--;
+        }
+        return new Result(dist, Arrays.copyOf(levels, depth),
+                Arrays.copyOf(bottomUp, Math.max(0, depth - 1)),
+                System.nanoTime() - start);
+    }
+
+    // Top-down step over the frontier vertices in chunk c.
+    private long topDownChunk(int c, AtomicLongArray frontier, AtomicLongArray next,
+            AtomicLongArray visited, int[] dist, int d) {
+        long count = 0;
+        int hi = Math.min(n, (c + 1) * CHUNK);
+        for(int w = c * (CHUNK >>> 6); w < (hi + 63) >>> 6; w++) {
+            long bits = frontier.get(w);
+            while(bits != 0) {
+                int v = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                for(int i = out.start(v); i < out.end(v); i++) {
+                    int u = out.target(i);
+                    if(claim(visited, u)) {
+                        dist[u] = d;
+                        setBit(next, u);
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    // Bottom-up step over the unvisited vertices in chunk c.  Only this chunk
+    // writes these words of visited and next, so plain sets are enough.
+    private long bottomUpChunk(int c, AtomicLongArray frontier, AtomicLongArray next,
+            AtomicLongArray visited, int[] dist, int d) {
+        long count = 0;
+        int hi = Math.min(n, (c + 1) * CHUNK);
+        for(int w = c * (CHUNK >>> 6); w < (hi + 63) >>> 6; w++) {
+            long seen = visited.get(w);
+            long claimed = 0;
+            long unvisited = ~seen;
+            if(w == words - 1 && (n & 63) != 0) {
+                unvisited &= (1L << (n & 63)) - 1;
+            }
+            while(unvisited != 0) {
+                int bit = Long.numberOfTrailingZeros(unvisited);
+                unvisited &= unvisited - 1;
+                int v = (w << 6) + bit;
+                for(int i = in.start(v); i < in.end(v); i++) {
+                    int u = in.target(i);
+                    if((frontier.get(u >>> 6) & (1L << u)) != 0) {
+                        dist[v] = d;
+                        claimed |= 1L << bit;
+                        count++;
+                        break;
+                    }
+                }
+            }
+            if(claimed != 0) {
+                visited.set(w, seen | claimed);
+                next.set(w, claimed);
+            }
+        }
+        return count;
+    }
+
+    private static boolean claim(AtomicLongArray bits, int v) {
+        int w = v >>> 6;
+        long mask = 1L << v;
+        long old = bits.get(w);
+        while((old & mask) == 0) {
+            if(bits.compareAndSet(w, old, old | mask)) {
+                return true;
+            }
+            old = bits.get(w);
+        }
+        return false;
+    }
+
+    private static void setBit(AtomicLongArray bits, int v) {
+        int w = v >>> 6;
+        long mask = 1L << v;
+        long old = bits.get(w);
+        while(!bits.compareAndSet(w, old, old | mask)) {
+            old = bits.get(w);
+        }
+    }
+
+    private interface ChunkTask {
+        void run(int chunk);
+    }
+
+    private void parallel(int chunks, ChunkTask task) {
+        try {
+            pool.submit(() -> IntStream.range(0, chunks).parallel()
+                    .forEach(task::run)).get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted during search", e);
+        } catch(ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /** Prints the distance histogram from one article.
+     * Usage: java DirectionOptimizingBfs wikipaths.snapshot title
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length != 2) {
+            System.err.println("Usage: java DirectionOptimizingBfs graph.snapshot title");
+            System.exit(1);
+        }
+        GraphSnapshot snapshot = GraphSnapshot.open(args[0]);
+        int source = snapshot.find(args[1]);
+        if(source < 0) {
+            System.err.println("Unknown article: " + args[1]);
+            System.exit(1);
+        }
+        DirectionOptimizingBfs bfs = new DirectionOptimizingBfs(snapshot.graph());
+        Result result = bfs.run(source);
+        bfs.shutdown();
+        System.out.printf("%d of %d articles reachable from %s in %.1f ms%n",
+                result.reached(), snapshot.numArticles(), args[1],
+                result.elapsedNanos / 1e6);
+        for(int d = 0; d < result.levels.length; d++) {
+            System.out.printf("  %3d clicks: %d%s%n", d, result.levels[d],
+                    d > 0 && result.bottomUp[d - 1] ? " (bottom-up)" : "");
+        }
+    }
+}
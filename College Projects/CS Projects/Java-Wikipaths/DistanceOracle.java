@@ -0,0 +1,403 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+/**
+ * Answers "how many clicks from s to t?" exactly, in microseconds, from a
+ * 2-hop labeling of the directed graph built by pruned landmark labeling
+ * (Akiba, Iwata and Yoshida).
+ *   Every vertex v has an out-label, a list of (hub, d(v, hub)) pairs, and an
+ * in-label of (hub, d(hub, v)) pairs, such that for every reachable pair some
+ * hub on a shortest path appears in both out(s) and in(t).  The distance is
+ * then the smallest d(s, hub) + d(hub, t) over the hubs the two lists share,
+ * found by merging them, since both are sorted by hub.
+ *   Vertices are made hubs in order of decreasing degree.  Hub k runs a
+ * forward breadth-first search that adds (k, d) to the in-label of every
+ * vertex it reaches, and a backward one that adds (k, d) to out-labels; a
+ * search stops at any vertex whose distance is already answered by the labels
+ * of the hubs before k.  High-degree articles sit on most shortest paths, so
+ * the searches of later hubs are pruned almost at once and the labels stay
+ * short.  The two searches of one hub touch disjoint label sets, so they run
+ * on two cores at once; the hubs themselves must go in order.
+ *   Labels are stored packed, one long per entry with the hub in the high and
+ * the distance in the low half, in one CSR array per direction.  The oracle
+ * is immutable and thread-safe, and can be saved next to the graph.
+ */
+public class DistanceOracle {
+    /** The distance returned when there is no path. */
+    public static final int UNREACHABLE = -1;
+
+    private static final int MAGIC = 0x504C4C58; // "PLLX"
+    private static final int VERSION = 1;
+
+    private final int n;
+    // Vertex ID of the hub of each rank.
+    private final int[] order;
+    private final int[] outOffsets;
+    private final long[] outLabels;
+    private final int[] inOffsets;
+    private final long[] inLabels;
+
+    private DistanceOracle(int n, int[] order, int[] outOffsets, long[] outLabels,
+            int[] inOffsets, long[] inLabels) {
+        this.n = n;
+        this.order = order;
+        this.outOffsets = outOffsets;
+        this.outLabels = outLabels;
+        this.inOffsets = inOffsets;
+        this.inLabels = inLabels;
+    }
+
+    // The labels of one direction while they are being built: a growable
+    // list of packed entries per vertex.
+    private static final class Labels {
+        final long[][] entries;
+        final int[] size;
+
+        Labels(int n) {
+            entries = new long[n][];
+            size = new int[n];
+        }
+
+        void add(int v, int hub, int d) {
+            long[] e = entries[v];
+            if(e == null) {
+                e = entries[v] = new long[4];
+            } else if(size[v] == e.length) {
+                e = entries[v] = Arrays.copyOf(e, size[v] * 2);
+            }
+            e[size[v]++] = (long) hub << 32 | d;
+        }
+    }
+
+    // One direction of the pruned searches: its own rows, queue and scratch
+    // arrays, so that the forward and backward side can run at once.
+    private static final class Pruner {
+        final CsrRows rows;
+        // The labels this side reads at the root and fills at other vertices.
+        final Labels rootLabels;
+        final Labels labels;
+        final int[] rootDist;
+        final int[] dist;
+        final int[] queue;
+
+        Pruner(CsrRows rows, Labels rootLabels, Labels labels, int n) {
+            this.rows = rows;
+            this.rootLabels = rootLabels;
+            this.labels = labels;
+            rootDist = new int[n];
+            dist = new int[n];
+            queue = new int[n];
+            Arrays.fill(rootDist, Integer.MAX_VALUE);
+            Arrays.fill(dist, -1);
+        }
+
+        // Searches from the hub of rank k, at vertex root.
+        void search(int k, int root) {
+            long[] own = rootLabels.entries[root];
+            for(int i = 0; i < rootLabels.size[root]; i++) {
+                rootDist[(int) (own[i] >>> 32)] = (int) own[i];
+            }
+            int tail = 0;
+            dist[root] = 0;
+            queue[tail++] = root;
+            for(int head = 0; head < tail; head++) {
+                int v = queue[head];
+                int d = dist[v];
+                if(v != root) {
+                    if(covered(v, d)) {
+                        continue;
+                    }
+                    labels.add(v, k, d);
+                }
+                int end = rows.end(v);
+                for(int i = rows.start(v); i < end; i++) {
+                    int u = rows.target(i);
+                    if(dist[u] < 0) {
+                        dist[u] = d + 1;
+                        queue[tail++] = u;
+                    }
+                }
+            }
+            for(int q = 0; q < tail; q++) {
+                dist[queue[q]] = -1;
+            }
+            for(int i = 0; i < rootLabels.size[root]; i++) {
+                rootDist[(int) (own[i] >>> 32)] = Integer.MAX_VALUE;
+            }
+        }
+
+        // True if the earlier hubs already give a path of at most d between
+        // the root and v.
+        private boolean covered(int v, int d) {
+            long[] e = labels.entries[v];
+            for(int i = 0; i < labels.size[v]; i++) {
+                int r = rootDist[(int) (e[i] >>> 32)];
+                if(r != Integer.MAX_VALUE && r + (int) e[i] <= d) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** Builds the oracle for the specified graph, running the forward and
+     * backward searches of each hub on two threads when there are two cores.
+     * The graph must not change while the oracle is built.
+     */
+    public static DistanceOracle build(Graph graph) {
+        int n = graph.numVerts();
+        CsrRows out = CsrRows.out(graph);
+        CsrRows in = CsrRows.in(graph, out);
+        // Highest total degree first, ties by vertex ID.
+        long[] keys = new long[n];
+        for(int v = 0; v < n; v++) {
+            long degree = (out.end(v) - out.start(v)) + (in.end(v) - in.start(v));
+            keys[v] = (Integer.MAX_VALUE - degree) << 32 | v;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[n];
+        for(int k = 0; k < n; k++) {
+            order[k] = (int) keys[k];
+        }
+
+        Labels outL = new Labels(n);
+        Labels inL = new Labels(n);
+        // The forward search reads the root's out-label and fills in-labels,
+        // the backward search the other way round.
+        Pruner forward = new Pruner(out, outL, inL, n);
+        Pruner backward = new Pruner(in, inL, outL, n);
+        ExecutorService second = Runtime.getRuntime().availableProcessors() > 1
+                ? Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "distance-oracle-build");
+                    t.setDaemon(true);
+                    return t;
+                }) : null;
+        try {
+            for(int k = 0; k < n; k++) {
+                int root = order[k];
+                outL.add(root, k, 0);
+                inL.add(root, k, 0);
+                if(second == null) {
+                    forward.search(k, root);
+                    backward.search(k, root);
+                    continue;
+                }
+                final int hub = k;
+                Future<?> other = second.submit(() -> backward.search(hub, root));
+                forward.search(k, root);
+                try {
+                    other.get();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while building", e);
+                } catch(ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            if(second != null) {
+                second.shutdown();
+            }
+        }
+        int[] outOffsets = new int[n + 1];
+        int[] inOffsets = new int[n + 1];
+        long[] outLabels = pack(outL, outOffsets);
+        long[] inLabels = pack(inL, inOffsets);
+        return new DistanceOracle(n, order, outOffsets, outLabels, inOffsets, inLabels);
+    }
+
+    private static long[] pack(Labels labels, int[] offsets) {
+        int n = offsets.length - 1;
+        long total = 0;
+        for(int v = 0; v < n; v++) {
+            total += labels.size[v];
+            if(total > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("too many label entries");
+            }
+            offsets[v + 1] = (int) total;
+        }
+        long[] packed = new long[(int) total];
+        for(int v = 0; v < n; v++) {
+            if(labels.size[v] > 0) {
+                System.arraycopy(labels.entries[v], 0, packed, offsets[v], labels.size[v]);
+            }
+            labels.entries[v] = null;
+        }
+        return packed;
+    }
+
+    /** Returns the number of vertices of the graph the oracle was built for. */
+    public int numVerts() {
+        return n;
+    }
+
+    /** Returns the number of label entries over both directions. */
+    public long numEntries() {
+        return (long) outLabels.length + inLabels.length;
+    }
+
+    /** Returns the vertex that was made hub number rank, 0 being the first. */
+    public int hub(int rank) {
+        return order[rank];
+    }
+
+    /** Returns the approximate heap size of the labels in bytes. */
+    public long memoryBytes() {
+        return 8 * numEntries() + 4L * (outOffsets.length + inOffsets.length + order.length);
+    }
+
+    /** Returns the number of edges on a shortest path from s to t, or
+     * UNREACHABLE if there is none.
+     * @throws IndexOutOfBoundsException if either vertex ID is out of bounds.
+     */
+    public int distance(int s, int t) {
+        if(s < 0 || s >= n || t < 0 || t >= n) {
+            throw new IndexOutOfBoundsException();
+        }
+        if(s == t) {
+            return 0;
+        }
+        int i = outOffsets[s];
+        int iEnd = outOffsets[s + 1];
+        int j = inOffsets[t];
+        int jEnd = inOffsets[t + 1];
+        int best = Integer.MAX_VALUE;
+        while(i < iEnd && j < jEnd) {
+            long a = outLabels[i];
+            long b = inLabels[j];
+            long ha = a >>> 32;
+            long hb = b >>> 32;
+            if(ha < hb) {
+                i++;
+            } else if(ha > hb) {
+                j++;
+            } else {
+                int d = (int) a + (int) b;
+                if(d < best) {
+                    best = d;
+                }
+                i++;
+                j++;
+            }
+        }
+        return best == Integer.MAX_VALUE ? UNREACHABLE : best;
+    }
+
+    /** Writes the oracle to a file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void save(String file) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(outLabels.length);
+            out.writeInt(inLabels.length);
+            for(int[] section : new int[][] {order, outOffsets, inOffsets}) {
+                for(int x : section) {
+                    out.writeInt(x);
+                }
+            }
+            for(long[] section : new long[][] {outLabels, inLabels}) {
+                for(long x : section) {
+                    out.writeLong(x);
+                }
+            }
+        }
+    }
+
+    /** Reads an oracle written by save().
+     * @throws IOException if the file cannot be read or is not a distance
+     * oracle of a supported version.
+     */
+    public static DistanceOracle load(String file) throws IOException {
+        try(FileChannel channel = FileChannel.open(Paths.get(file),
+                StandardOpenOption.READ)) {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            if(buf.remaining() < 20 || buf.getInt() != MAGIC) {
+                throw new IOException(file + ": not a distance oracle");
+            }
+            if(buf.getInt() != VERSION) {
+                throw new IOException(file + ": unsupported distance oracle version");
+            }
+            int n = buf.getInt();
+            int outEntries = buf.getInt();
+            int inEntries = buf.getInt();
+            long bytes = 4L * (3L * n + 2) + 8L * ((long) outEntries + inEntries);
+            if(n < 0 || outEntries < 0 || inEntries < 0 || buf.remaining() != bytes) {
+                throw new IOException(file + ": truncated distance oracle");
+            }
+            int[] order = new int[n];
+            int[] outOffsets = new int[n + 1];
+            int[] inOffsets = new int[n + 1];
+            buf.asIntBuffer().get(order).get(outOffsets).get(inOffsets);
+            buf.position(buf.position() + 4 * (3 * n + 2));
+            long[] outLabels = new long[outEntries];
+            long[] inLabels = new long[inEntries];
+            buf.asLongBuffer().get(outLabels).get(inLabels);
+            return new DistanceOracle(n, order, outOffsets, outLabels, inOffsets,
+                    inLabels);
+        }
+    }
+
+    /** Builds the distance oracle for a snapshot, saves it next to it as
+     * snapshot.dist, and checks and times it against BidirectionalSearch.
+     * Usage: java DistanceOracle wikipaths.snapshot [queries]
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java DistanceOracle graph.snapshot [queries]");
+            System.exit(1);
+        }
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        GraphSnapshot snapshot = GraphSnapshot.open(args[0]);
+        Graph graph = snapshot.graph();
+        long start = System.nanoTime();
+        DistanceOracle oracle = build(graph);
+        oracle.save(args[0] + ".dist");
+        System.out.printf("Wrote %s.dist: %d label entries (%.1f per vertex and direction, "
+                + "%.1f MB) in %.1f ms%n", args[0], oracle.numEntries(),
+                oracle.numEntries() / 2.0 / Math.max(1, oracle.numVerts()),
+                oracle.memoryBytes() / 1048576.0, (System.nanoTime() - start) / 1e6);
+
+        int n = graph.numVerts();
+        Random random = new Random(1);
+        int[] pairs = new int[2 * queries];
+        for(int i = 0; i < pairs.length; i++) {
+            pairs[i] = random.nextInt(n);
+        }
+        long sum = 0;
+        start = System.nanoTime();
+        for(int q = 0; q < queries; q++) {
+            sum += oracle.distance(pairs[2 * q], pairs[2 * q + 1]);
+        }
+        long oracleNanos = System.nanoTime() - start;
+        BidirectionalSearch search = new BidirectionalSearch(graph);
+        int wrong = 0;
+        start = System.nanoTime();
+        for(int q = 0; q < queries; q++) {
+            int[] path = search.findPath(pairs[2 * q], pairs[2 * q + 1]);
+            int expected = path == null ? UNREACHABLE : path.length - 1;
+            if(expected != oracle.distance(pairs[2 * q], pairs[2 * q + 1])) {
+                wrong++;
+            }
+        }
+        long searchNanos = System.nanoTime() - start;
+        System.out.printf("%d queries: %.2f us each from the oracle (checksum %d), "
+                + "%.2f us each by search; %d distances differ%n", queries,
+                oracleNanos / 1e3 / queries, sum, searchNanos / 1e3 / queries, wrong);
+    }
+}
@@ -1,4 +1,9 @@
 import java.util.Iterator;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
 /**
  * A common interface for the Graph ADT, encompassing graphs both unweighted and
  * weighted, undirected and directed.  Note that an object of Graph type can't
@@ -42,6 +47,68 @@ public interface Graph {
      */
     public Iterable<Integer> getNeighbors(int v);
     
+    /** Calls action once for each neighbor u of the specified vertex, i.e.
+     * for each edge from v to u, in the order getNeighbors would give them.
+     * Unlike getNeighbors, implementations need not box the vertex IDs; this
+     * default implementation does.  Every implementation with source in this
+     * package overrides it, but the compiled AdjacencyListGraphImplementation
+     * and AdjacencyMatrixGraphImplementation do not, so they box.
+     */
+    public default void forEachNeighbor(int v, IntConsumer action) {
+        for(int u : getNeighbors(v)) {
+            action.accept(u);
+        }
+    }
+    
+    /** Returns a primitive iterator over the neighbors of the specified
+     * vertex, in the order getNeighbors would give them.  nextInt() returns
+     * each neighbor without boxing in every implementation that overrides
+     * this method.
+     */
+    public default PrimitiveIterator.OfInt neighborIterator(int v) {
+        Iterator<Integer> it = getNeighbors(v).iterator();
+        return new PrimitiveIterator.OfInt() {
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+            public int nextInt() {
+                return it.next();
+            }
+        };
+    }
+    
+    /** Copies the neighbors of the specified vertex into dst, starting at
+     * index 0, in the order getNeighbors would give them.
+     * @return the number of neighbors copied, i.e. the out-degree of v.
+     * @throws IndexOutOfBoundsException if dst is shorter than the out-degree.
+     */
+    public default int copyNeighbors(int v, int[] dst) {
+        int d = 0;
+        for(int u : getNeighbors(v)) {
+            dst[d++] = u;
+        }
+        return d;
+    }
+    
+    /** Returns an iterable object that allows iteration over the in-neighbors
+     * of the specified vertex.  In particular, the vertex u is included in the
+     * sequence if and only if there is an edge from u to v in the graph.
+     *   This default implementation scans every vertex with hasEdge;
+     * implementations that keep a reverse adjacency index override it.
+     */
+    public default Iterable<Integer> getInNeighbors(int v) {
+        if(v < 0 || v >= numVerts()) {
+            throw new IndexOutOfBoundsException();
+        }
+        List<Integer> in = new ArrayList<Integer>();
+        for(int u = 0; u < numVerts(); u++) {
+            if(hasEdge(u, v)) {
+                in.add(u);
+            }
+        }
+        return Collections.unmodifiableList(in);
+    }
+    
     /** Returns the number of vertices in the graph. */
     public int numVerts();
     
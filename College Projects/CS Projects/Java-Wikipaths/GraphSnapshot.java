@@ -0,0 +1,424 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+/**
+ * A compiled, versioned binary form of an articles file plus a links file.
+ * compile() parses the two TSV files once and writes the title dictionary and
+ * the adjacency (out-edges and in-edges) to a single snapshot file; open()
+ * memory-maps that file with FileChannel.map and serves titles and graph
+ * queries straight from the mapped buffers, so opening a snapshot does no
+ * parsing at all and processes that open the same file share the page cache.
+ *
+ * The file is little-endian and laid out as follows:
+ * <pre>
+ *   int  magic             "WPGS"
+ *   int  version           currently 1
+ *   int  flags             bit 0: directed, bit 1: has in-edges
+ *   int  numVerts
+ *   int  numEdges          as reported by Graph.numEdges()
+ *   int  reserved
+ *   long[2 * SECTIONS]     (position, length in bytes) of each section
+ *   sections, each aligned to 8 bytes:
+ *     TITLE_OFFSETS  int[numVerts + 1]  start of each title in TITLE_BYTES
+ *     TITLE_BYTES    byte[]             UTF-8 titles, back to back
+ *     TITLE_ORDER    int[numVerts]      vertex IDs sorted by title bytes
+ *     OUT_OFFSETS    int[numVerts + 1]
+ *     OUT_TARGETS    int[]
+ *     IN_OFFSETS     int[numVerts + 1]  empty unless flag bit 1 is set
+ *     IN_TARGETS     int[]              empty unless flag bit 1 is set
+ * </pre>
+ * Each section is mapped separately and must therefore be under 2 GB.
+ *
+ * Usage: java GraphSnapshot [--decode] articles.tsv links.tsv wikipaths.snapshot
+ * (--decode decodes percent-encoded titles, gzipped or not).
+ */
+public class GraphSnapshot implements ArticleTitles {
+    public static final int MAGIC = 0x53475057; // "WPGS" read little-endian
+    public static final int VERSION = 1;
+
+    private static final int FLAG_DIRECTED = 1;
+    private static final int FLAG_IN_EDGES = 2;
+
+    private static final int TITLE_OFFSETS = 0;
+    private static final int TITLE_BYTES = 1;
+    private static final int TITLE_ORDER = 2;
+    private static final int OUT_OFFSETS = 3;
+    private static final int OUT_TARGETS = 4;
+    private static final int IN_OFFSETS = 5;
+    private static final int IN_TARGETS = 6;
+    private static final int SECTIONS = 7;
+    private static final int HEADER_SIZE = 24 + 16 * SECTIONS;
+
+    private final IntBuffer titleOffsets;
+    private final ByteBuffer titleBytes;
+    private final IntBuffer titleOrder;
+    private final MappedUnweightedGraph graph;
+
+    private GraphSnapshot(IntBuffer titleOffsets, ByteBuffer titleBytes,
+            IntBuffer titleOrder, MappedUnweightedGraph graph) {
+        this.titleOffsets = titleOffsets;
+        this.titleBytes = titleBytes;
+        this.titleOrder = titleOrder;
+        this.graph = graph;
+    }
+
+    /** Returns the mapped graph. */
+    public MappedUnweightedGraph graph() {
+        return graph;
+    }
+
+    /** Returns the number of articles, which is the number of vertices. */
+    public int numArticles() {
+        return graph.numVerts();
+    }
+
+    /** Returns the number of articles; the same as numArticles(). */
+    public int size() {
+        return numArticles();
+    }
+
+    /** Returns the title of the article with the specified vertex ID.
+     * @throws IndexOutOfBoundsException if id is out of bounds.
+     */
+    public String title(int id) {
+        if(id < 0 || id >= numArticles()) {
+            throw new IndexOutOfBoundsException();
+        }
+        int start = titleOffsets.get(id);
+        byte[] bytes = new byte[titleOffsets.get(id + 1) - start];
+        titleBytes.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the vertex ID of the article with the specified title, or -1
+     * if there is no such article.  Binary search over the sorted title order.
+     */
+    public int find(String title) {
+        byte[] goal = title.getBytes(StandardCharsets.UTF_8);
+        int l = 0;
+        int r = numArticles() - 1;
+        while(l <= r) {
+            int m = l + (r-l)/2;
+            int id = titleOrder.get(m);
+            int c = compareTitle(id, goal);
+            if(c < 0) {
+                l = m + 1;
+            } else if(c > 0) {
+                r = m - 1;
+            } else {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    // Compares the stored title of id with goal as unsigned bytes, which is
+    // the order compile() sorted the titles in.
+    private int compareTitle(int id, byte[] goal) {
+        int start = titleOffsets.get(id);
+        int len = titleOffsets.get(id + 1) - start;
+        int n = Math.min(len, goal.length);
+        for(int i = 0; i < n; i++) {
+            int c = (titleBytes.get(start + i) & 0xff) - (goal[i] & 0xff);
+            if(c != 0) {
+                return c;
+            }
+        }
+        return len - goal.length;
+    }
+
+    /** Memory-maps a snapshot written by compile().
+     * @throws IOException if the file cannot be read or is not a snapshot of
+     * a supported version.
+     */
+    public static GraphSnapshot open(String snapshotFile) throws IOException {
+        try(FileChannel channel = FileChannel.open(Paths.get(snapshotFile),
+                StandardOpenOption.READ)) {
+            if(channel.size() < HEADER_SIZE) {
+                throw new IOException(snapshotFile + ": not a graph snapshot");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if(header.getInt() != MAGIC) {
+                throw new IOException(snapshotFile + ": not a graph snapshot");
+            }
+            int version = header.getInt();
+            if(version != VERSION) {
+                throw new IOException(snapshotFile + ": unsupported snapshot version "
+                        + version);
+            }
+            int flags = header.getInt();
+            int numVerts = header.getInt();
+            int numEdges = header.getInt();
+            header.getInt();
+            ByteBuffer[] sections = new ByteBuffer[SECTIONS];
+            for(int s = 0; s < SECTIONS; s++) {
+                long position = header.getLong();
+                long length = header.getLong();
+                if(length > Integer.MAX_VALUE || position + length > channel.size()) {
+                    throw new IOException(snapshotFile + ": corrupt section table");
+                }
+                // The mapping stays valid after the channel is closed.
+                sections[s] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        position, length).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            IntBuffer outOffsets = sections[OUT_OFFSETS].asIntBuffer();
+            if(outOffsets.limit() != numVerts + 1) {
+                throw new IOException(snapshotFile + ": corrupt section table");
+            }
+            IntBuffer inOffsets = null;
+            IntBuffer inTargets = null;
+            if((flags & FLAG_IN_EDGES) != 0) {
+                inOffsets = sections[IN_OFFSETS].asIntBuffer();
+                inTargets = sections[IN_TARGETS].asIntBuffer();
+            }
+            MappedUnweightedGraph graph = new MappedUnweightedGraph(outOffsets,
+                    sections[OUT_TARGETS].asIntBuffer(), inOffsets, inTargets,
+                    (flags & FLAG_DIRECTED) != 0, numEdges);
+            return new GraphSnapshot(sections[TITLE_OFFSETS].asIntBuffer(),
+                    sections[TITLE_BYTES], sections[TITLE_ORDER].asIntBuffer(),
+                    graph);
+        }
+    }
+
+    /** Parses an articles file and a links file in the PathFinder TSV format
+     * and writes them to snapshotFile as a directed graph with in-edges.
+     * Titles are kept as they appear in the files.
+     * @throws IOException if a file cannot be read or written, or if a link
+     * names an article that is not in the articles file.
+     */
+    public static void compile(String nodeFile, String edgeFile,
+            String snapshotFile) throws IOException {
+        compile(nodeFile, edgeFile, snapshotFile, false);
+    }
+
+    /** Parses an articles file and a links file in the PathFinder TSV format
+     * and writes them to snapshotFile as a directed graph with in-edges,
+     * decoding percent-encoded titles if decodeTitles is true.  Gzipped files
+     * (ending in ".gz"), and any files to be decoded, are streamed by
+     * StreamingDumpLoader; the titles depend only on decodeTitles.
+     * @throws IOException if a file cannot be read or written, or if a link
+     * names an article that is not in the articles file.
+     */
+    public static void compile(String nodeFile, String edgeFile,
+            String snapshotFile, boolean decodeTitles) throws IOException {
+        ArticleDictionary titles = new ArticleDictionary();
+        if(decodeTitles || nodeFile.endsWith(".gz") || edgeFile.endsWith(".gz")) {
+            StreamingDumpLoader loader = new StreamingDumpLoader(titles);
+            loader.setProgress(System.err);
+            loader.setDecodeTitles(decodeTitles);
+            loader.loadArticles(nodeFile);
+            write(titles, loader.loadLinks(edgeFile), snapshotFile);
+            return;
+        }
+        try(BufferedReader reader = Files.newBufferedReader(Paths.get(nodeFile),
+                StandardCharsets.UTF_8)) {
+            String next;
+            while((next = reader.readLine()) != null) {
+                if(!next.startsWith("#") && next.trim().length() > 0) {
+                    titles.add(next);
+                }
+            }
+        }
+        CompactUnweightedGraph.Builder builder =
+                new CompactUnweightedGraph.Builder(titles.size()).withInEdges();
+        try(BufferedReader reader = Files.newBufferedReader(Paths.get(edgeFile),
+                StandardCharsets.UTF_8)) {
+            String next;
+            while((next = reader.readLine()) != null) {
+                if(!next.startsWith("#") && next.trim().length() > 0) {
+                    int tab = next.indexOf('\t');
+                    int begin = titles.find(next.substring(0, tab));
+                    int end = titles.find(next.substring(tab + 1));
+                    if(begin < 0 || end < 0) {
+                        throw new IOException(edgeFile + ": unknown article in link: "
+                                + next);
+                    }
+                    builder.addEdge(begin, end);
+                }
+            }
+        }
+        write(titles, builder.build(), snapshotFile);
+    }
+
+    /** Writes the specified titles and graph to snapshotFile.  Vertex ID i of
+     * the graph is the article titles.title(i).
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(ArticleDictionary titles, CompactUnweightedGraph graph,
+            String snapshotFile) throws IOException {
+        int n = graph.numVerts();
+        if(titles.size() != n) {
+            throw new IllegalArgumentException("one title per vertex required");
+        }
+        byte[][] encoded = new byte[n][];
+        int[] titleOffsets = new int[n + 1];
+        for(int i = 0; i < n; i++) {
+            encoded[i] = titles.title(i).getBytes(StandardCharsets.UTF_8);
+            titleOffsets[i + 1] = titleOffsets[i] + encoded[i].length;
+        }
+        // Sorted on the first four bytes of each title packed above its ID;
+        // each run of titles that share those bytes is then finished by
+        // comparing whole titles.
+        long[] keys = new long[n];
+        for(int i = 0; i < n; i++) {
+            keys[i] = (long) (prefix(encoded[i]) ^ Integer.MIN_VALUE) << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] titleOrder = new int[n];
+        for(int i = 0; i < n; i++) {
+            titleOrder[i] = (int) keys[i];
+        }
+        int[] scratch = new int[n];
+        for(int i = 0; i < n; ) {
+            int j = i + 1;
+            while(j < n && keys[j] >>> 32 == keys[i] >>> 32) {
+                j++;
+            }
+            sortTitles(titleOrder, i, j, encoded, scratch);
+            i = j;
+        }
+        boolean in = graph.isDirected() && graph.hasInEdgeIndex();
+
+        long[] lengths = new long[SECTIONS];
+        lengths[TITLE_OFFSETS] = 4L * (n + 1);
+        lengths[TITLE_BYTES] = titleOffsets[n];
+        lengths[TITLE_ORDER] = 4L * n;
+        lengths[OUT_OFFSETS] = 4L * (n + 1);
+        lengths[OUT_TARGETS] = 4L * graph.targets().length;
+        lengths[IN_OFFSETS] = in ? 4L * (n + 1) : 0;
+        lengths[IN_TARGETS] = in ? 4L * graph.inTargets().length : 0;
+        long[] positions = new long[SECTIONS];
+        long position = HEADER_SIZE;
+        for(int s = 0; s < SECTIONS; s++) {
+            position = (position + 7) & ~7L;
+            positions[s] = position;
+            position += lengths[s];
+        }
+
+        Path path = Paths.get(snapshotFile);
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC).putInt(VERSION);
+            buf.putInt((graph.isDirected() ? FLAG_DIRECTED : 0) | (in ? FLAG_IN_EDGES : 0));
+            buf.putInt(n).putInt(graph.numEdges()).putInt(0);
+            for(int s = 0; s < SECTIONS; s++) {
+                buf.putLong(positions[s]).putLong(lengths[s]);
+            }
+            for(int s = 0; s < SECTIONS; s++) {
+                flush(channel, buf);
+                channel.position(positions[s]);
+                switch(s) {
+                case TITLE_OFFSETS: putInts(channel, buf, titleOffsets); break;
+                case TITLE_BYTES:
+                    for(byte[] title : encoded) {
+                        putBytes(channel, buf, title);
+                    }
+                    break;
+                case TITLE_ORDER:   putInts(channel, buf, titleOrder); break;
+                case OUT_OFFSETS:   putInts(channel, buf, graph.offsets()); break;
+                case OUT_TARGETS:   putInts(channel, buf, graph.targets()); break;
+                case IN_OFFSETS:    if(in) putInts(channel, buf, graph.inOffsets()); break;
+                case IN_TARGETS:    if(in) putInts(channel, buf, graph.inTargets()); break;
+                }
+            }
+            flush(channel, buf);
+        }
+    }
+
+    // The first four bytes of a title, big-endian, padded with zeros.  A
+    // title orders no later than every title with a greater prefix.
+    private static int prefix(byte[] title) {
+        int key = 0;
+        for(int i = 0; i < 4; i++) {
+            key = key << 8 | (i < title.length ? title[i] & 0xff : 0);
+        }
+        return key;
+    }
+
+    // Merge sort of order[from, to) by the unsigned bytes of the titles.
+    private static void sortTitles(int[] order, int from, int to, byte[][] encoded,
+            int[] scratch) {
+        if(to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sortTitles(order, from, mid, encoded, scratch);
+        sortTitles(order, mid, to, encoded, scratch);
+        if(Arrays.compareUnsigned(encoded[order[mid - 1]], encoded[order[mid]]) <= 0) {
+            return;
+        }
+        System.arraycopy(order, from, scratch, from, mid - from);
+        int i = from;
+        int j = mid;
+        int k = from;
+        while(i < mid && j < to) {
+            if(Arrays.compareUnsigned(encoded[scratch[i]], encoded[order[j]]) <= 0) {
+                order[k++] = scratch[i++];
+            } else {
+                order[k++] = order[j++];
+            }
+        }
+        while(i < mid) {
+            order[k++] = scratch[i++];
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while(buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    private static void putInts(FileChannel channel, ByteBuffer buf, int[] values)
+            throws IOException {
+        for(int v : values) {
+            if(buf.remaining() < 4) {
+                flush(channel, buf);
+            }
+            buf.putInt(v);
+        }
+    }
+
+    private static void putBytes(FileChannel channel, ByteBuffer buf, byte[] bytes)
+            throws IOException {
+        int i = 0;
+        while(i < bytes.length) {
+            if(!buf.hasRemaining()) {
+                flush(channel, buf);
+            }
+            int len = Math.min(buf.remaining(), bytes.length - i);
+            buf.put(bytes, i, len);
+            i += len;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean decode = args.length > 0 && args[0].equals("--decode");
+        int first = decode ? 1 : 0;
+        if(args.length != first + 3) {
+            System.err.println("Usage: java GraphSnapshot [--decode] articles.tsv links.tsv out.snapshot");
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        String out = args[first + 2];
+        compile(args[first], args[first + 1], out, decode);
+        GraphSnapshot snapshot = open(out);
+        System.out.printf("Wrote %s: %d articles, %d links in %.1f ms%n", out,
+                snapshot.numArticles(), snapshot.graph().numEdges(),
+                (System.nanoTime() - start) / 1e6);
+    }
+}
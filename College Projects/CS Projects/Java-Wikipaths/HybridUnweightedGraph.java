@@ -0,0 +1,591 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+/**
+ * An immutable implementation of the Unweighted Graph ADT that stores each
+ * out-row in the form that suits it.  Ordinary rows are sorted int[] slices
+ * in compressed sparse row form, as in CompactUnweightedGraph.  Rows of hub
+ * vertices (out-degree at least hubDegree, e.g. countries and years) are
+ * bitmaps instead, one bit per vertex ID over the span from the row's lowest
+ * to its highest neighbor.  The container is chosen per row, as Roaring
+ * chooses it per chunk, but on the density of the whole row: a hub whose
+ * bitmap would take more than maxBitsPerLink bits per neighbor stays a sorted
+ * slice.  hasEdge on a bitmap row is one bit test.
+ *   Bitmaps are aligned to 64 IDs, so the words of any two bitmap rows line up.
+ * Neighbors come out in increasing order in every row, and bitmap rows are
+ * read a word at a time.  commonNeighbors intersects two rows in whichever
+ * way suits their forms: two bitmaps with AND and bitCount over the words
+ * where their spans overlap, a bitmap and a slice by probing, two slices by
+ * merging.
+ *   Whether hubs get bitmaps depends on how IDs are numbered.  With the 4604
+ * articles of the test graph, every row of out-degree at least 128 spans the
+ * whole ID range in under 32 bits per link and becomes a bitmap.  On a
+ * 6M-article graph numbered by title, a hub with a few thousand links spread
+ * over every ID would need thousands of bits per link; it stays a slice unless
+ * maxBitsPerLink is raised, or the IDs are renumbered so that linked articles
+ * sit close together.
+ *   A directed graph also keeps its in-edges as plain CSR arrays, so in-degree
+ * and in-neighbor queries are cheap.  The mutating methods of the Graph
+ * interface throw UnsupportedOperationException.
+ *   Any method that takes one or more vertex IDs as arguments may throw an
+ * IndexOutOfBoundsException if any input ID is out of bounds.
+ */
+public class HybridUnweightedGraph implements UnweightedGraph {
+    /** The out-degree from which a row may be stored as a bitmap by default. */
+    public static final int DEFAULT_HUB_DEGREE = 128;
+    /** The largest bitmap, in bits per neighbor, stored by default: four
+     * times the 32 bits of an int[] entry.
+     */
+    public static final int DEFAULT_MAX_BITS_PER_LINK = 128;
+
+    private final int n;
+    private final int numEdges;
+    private final boolean undirected;
+    // Plain rows; a hub's slice is empty.
+    private final int[] offsets;
+    private final int[] targets;
+    // hubIndex[v] is v's position in hubs, or -1 if v's row is a slice.
+    private final int[] hubIndex;
+    private final HubRow[] hubs;
+    // In-edges of a directed graph; for an undirected graph these are null
+    // and the out-rows serve instead.
+    private final int[] inOffsets;
+    private final int[] inTargets;
+
+    // The row of one hub: bit i of words is set if base + i is a neighbor.
+    // base is a multiple of 64, so bit i of a word is also bit (base + i) of
+    // a word, and the bitmaps of different hubs line up word for word.
+    private static final class HubRow {
+        final int degree;
+        final int base;
+        final long[] words;
+
+        HubRow(int[] row, int degree) {
+            this.degree = degree;
+            base = row[0] & ~63;
+            words = new long[words(row, degree)];
+            for(int i = 0; i < degree; i++) {
+                int bit = row[i] - base;
+                words[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        // The number of words of the bitmap of a sorted, non-empty row.
+        static int words(int[] row, int degree) {
+            return (row[degree - 1] >>> 6) - (row[0] >>> 6) + 1;
+        }
+
+        boolean contains(int v) {
+            int w = (v - base) >> 6;
+            return w >= 0 && w < words.length && (words[w] & (1L << v)) != 0;
+        }
+
+        void forEach(IntConsumer action) {
+            for(int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while(word != 0) {
+                    action.accept(base + (w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        long memoryBytes() {
+            return 24 + 16 + 8L * words.length;
+        }
+    }
+
+    /** Constructs a copy of the specified graph with rows of out-degree at
+     * least DEFAULT_HUB_DEGREE stored as bitmaps where they are dense enough.
+     */
+    public HybridUnweightedGraph(Graph graph) {
+        this(graph, DEFAULT_HUB_DEGREE, DEFAULT_MAX_BITS_PER_LINK);
+    }
+
+    /** Constructs a copy of the specified graph with rows of out-degree at
+     * least hubDegree stored as bitmaps where they are dense enough.
+     */
+    public HybridUnweightedGraph(Graph graph, int hubDegree) {
+        this(graph, hubDegree, DEFAULT_MAX_BITS_PER_LINK);
+    }
+
+    /** Constructs a copy of the specified graph in which each row of
+     * out-degree at least hubDegree is stored as a bitmap if that takes at
+     * most maxBitsPerLink bits per neighbor, and as a sorted slice otherwise.
+     */
+    public HybridUnweightedGraph(Graph graph, int hubDegree, int maxBitsPerLink) {
+        if(hubDegree < 1) {
+            throw new IllegalArgumentException("hub degree must be positive");
+        }
+        if(maxBitsPerLink < 1) {
+            throw new IllegalArgumentException("bits per link must be positive");
+        }
+        CsrRows out = CsrRows.out(graph);
+        n = out.numVerts();
+        numEdges = graph.numEdges();
+        undirected = !graph.isDirected();
+        hubIndex = new int[n];
+        int hubCount = 0;
+        int plainEdges = 0;
+        int[] row = new int[16];
+        for(int v = 0; v < n; v++) {
+            int d = out.end(v) - out.start(v);
+            hubIndex[v] = -1;
+            if(d >= hubDegree) {
+                row = sortedRow(out, v, row);
+                if(64L * HubRow.words(row, d) <= (long) maxBitsPerLink * d) {
+                    hubIndex[v] = hubCount++;
+                }
+            }
+            if(hubIndex[v] < 0) {
+                plainEdges += d;
+            }
+        }
+        offsets = new int[n + 1];
+        targets = new int[plainEdges];
+        hubs = new HubRow[hubCount];
+        for(int v = 0; v < n; v++) {
+            int start = out.start(v);
+            int d = out.end(v) - start;
+            if(hubIndex[v] < 0) {
+                for(int i = 0; i < d; i++) {
+                    targets[offsets[v] + i] = out.target(start + i);
+                }
+                Arrays.sort(targets, offsets[v], offsets[v] + d);
+                offsets[v + 1] = offsets[v] + d;
+            } else {
+                row = sortedRow(out, v, row);
+                hubs[hubIndex[v]] = new HubRow(row, d);
+                offsets[v + 1] = offsets[v];
+            }
+        }
+        if(undirected) {
+            inOffsets = null;
+            inTargets = null;
+        } else {
+            CsrRows in = CsrRows.in(graph, out);
+            inOffsets = new int[n + 1];
+            inTargets = new int[in.numEdges()];
+            for(int v = 0; v < n; v++) {
+                inOffsets[v + 1] = in.end(v) - in.start(v) + inOffsets[v];
+                for(int i = in.start(v); i < in.end(v); i++) {
+                    inTargets[inOffsets[v] + i - in.start(v)] = in.target(i);
+                }
+            }
+        }
+    }
+
+    // Copies row v into buf, growing it if needed, and sorts it; rows from
+    // CSR sources are sorted already, so the sort is usually a single pass.
+    private static int[] sortedRow(CsrRows rows, int v, int[] buf) {
+        int start = rows.start(v);
+        int d = rows.end(v) - start;
+        if(d > buf.length) {
+            buf = new int[Math.max(d, buf.length * 2)];
+        }
+        for(int i = 0; i < d; i++) {
+            buf[i] = rows.target(start + i);
+        }
+        Arrays.sort(buf, 0, d);
+        return buf;
+    }
+
+    // The in-edges of a directed graph, for the search engines in this
+    // package.  Not to be modified.
+    CsrRows inRows() {
+        return new CsrRows(inOffsets, inTargets);
+    }
+
+    private void checkVertex(int v) {
+        if(v < 0 || v >= n) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    /** Returns true if the row of the specified vertex is stored as a
+     * bitmap.
+     */
+    public boolean isHub(int v) {
+        checkVertex(v);
+        return hubIndex[v] >= 0;
+    }
+
+    /** Returns the number of rows stored as bitmaps. */
+    public int numHubs() {
+        return hubs.length;
+    }
+
+    /** Returns an estimate of the heap used by the adjacency, in bytes. */
+    public long memoryBytes() {
+        long bytes = 4L * (offsets.length + targets.length + hubIndex.length);
+        if(inOffsets != null) {
+            bytes += 4L * (inOffsets.length + inTargets.length);
+        }
+        for(HubRow hub : hubs) {
+            bytes += hub.memoryBytes();
+        }
+        return bytes;
+    }
+
+    /** Unsupported: the graph is immutable once built. */
+    public int addVertex() {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Unsupported: the graph is immutable once built. */
+    public boolean addEdge(int begin, int end) {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Checks whether an edge exists between two vertices.
+     * In an undirected graph, this returns the same as hasEdge(end, begin).
+     * @return true if there is an edge from begin to end.
+     */
+    public boolean hasEdge(int begin, int end) {
+        checkVertex(begin);
+        checkVertex(end);
+        int h = hubIndex[begin];
+        if(h >= 0) {
+            return hubs[h].contains(end);
+        }
+        return Arrays.binarySearch(targets, offsets[begin], offsets[begin + 1], end) >= 0;
+    }
+
+    /** Returns the number of vertices that both u and v have an edge to. */
+    public int commonNeighbors(int u, int v) {
+        checkVertex(u);
+        checkVertex(v);
+        int hu = hubIndex[u];
+        int hv = hubIndex[v];
+        if(hu >= 0 && hv >= 0) {
+            return intersect(hubs[hu], hubs[hv]);
+        }
+        if(hu >= 0 || hv >= 0) {
+            HubRow hub = hubs[hu >= 0 ? hu : hv];
+            int w = hu >= 0 ? v : u;
+            int count = 0;
+            for(int i = offsets[w]; i < offsets[w + 1]; i++) {
+                if(hub.contains(targets[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }
+        return intersect(targets, offsets[u], offsets[u + 1],
+                targets, offsets[v], offsets[v + 1]);
+    }
+
+    // An AND per word over the words where the two spans overlap.
+    private static int intersect(HubRow a, HubRow b) {
+        int from = Math.max(a.base, b.base);
+        int to = Math.min(a.base + 64 * a.words.length, b.base + 64 * b.words.length);
+        int count = 0;
+        for(int x = from; x < to; x += 64) {
+            count += Long.bitCount(a.words[(x - a.base) >>> 6] & b.words[(x - b.base) >>> 6]);
+        }
+        return count;
+    }
+
+    private static int intersect(int[] a, int i, int aEnd, int[] b, int j, int bEnd) {
+        int count = 0;
+        while(i < aEnd && j < bEnd) {
+            if(a[i] < b[j]) {
+                i++;
+            } else if(a[i] > b[j]) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /** Returns the out-degree of the specified vertex. */
+    public int getDegree(int v) {
+        checkVertex(v);
+        int h = hubIndex[v];
+        return h >= 0 ? hubs[h].degree : offsets[v + 1] - offsets[v];
+    }
+
+    /** Returns the in-degree of the specified vertex. */
+    public int getInDegree(int v) {
+        checkVertex(v);
+        if(undirected) {
+            return getDegree(v);
+        }
+        return inOffsets[v + 1] - inOffsets[v];
+    }
+
+    /** Calls action once for each neighbor of the specified vertex, in
+     * increasing order.
+     */
+    public void forEachNeighbor(int v, IntConsumer action) {
+        checkVertex(v);
+        int h = hubIndex[v];
+        if(h >= 0) {
+            hubs[h].forEach(action);
+            return;
+        }
+        for(int i = offsets[v]; i < offsets[v + 1]; i++) {
+            action.accept(targets[i]);
+        }
+    }
+
+    /** Returns a primitive iterator over the neighbors of the specified
+     * vertex, in increasing order.
+     */
+    public PrimitiveIterator.OfInt neighborIterator(int v) {
+        checkVertex(v);
+        int h = hubIndex[v];
+        if(h >= 0) {
+            return new HubIterator(hubs[h]);
+        }
+        return rowIterator(targets, offsets[v], offsets[v + 1]);
+    }
+
+    private static PrimitiveIterator.OfInt rowIterator(int[] row, int start, int end) {
+        return new PrimitiveIterator.OfInt() {
+            private int i = start;
+            public boolean hasNext() {
+                return i < end;
+            }
+            public int nextInt() {
+                if(i >= end) {
+                    throw new NoSuchElementException();
+                }
+                return row[i++];
+            }
+        };
+    }
+
+    // Walks a hub row word by word; word holds the bits of the current word
+    // not yet returned.
+    private static class HubIterator implements PrimitiveIterator.OfInt {
+        private final HubRow row;
+        private int pos;
+        private long word;
+
+        HubIterator(HubRow row) {
+            this.row = row;
+        }
+
+        public boolean hasNext() {
+            while(word == 0 && pos < row.words.length) {
+                word = row.words[pos++];
+            }
+            return word != 0;
+        }
+
+        public int nextInt() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int v = row.base + ((pos - 1) << 6) + Long.numberOfTrailingZeros(word);
+            word &= word - 1;
+            return v;
+        }
+    }
+
+    /** Copies the neighbors of the specified vertex into dst, in increasing
+     * order.
+     * @return the out-degree of v.
+     * @throws IndexOutOfBoundsException if dst is shorter than the out-degree.
+     */
+    public int copyNeighbors(int v, int[] dst) {
+        checkVertex(v);
+        int h = hubIndex[v];
+        if(h < 0) {
+            int d = offsets[v + 1] - offsets[v];
+            System.arraycopy(targets, offsets[v], dst, 0, d);
+            return d;
+        }
+        HubRow hub = hubs[h];
+        if(dst.length < hub.degree) {
+            throw new IndexOutOfBoundsException();
+        }
+        int d = 0;
+        long[] words = hub.words;
+        for(int w = 0; w < words.length; w++) {
+            long word = words[w];
+            while(word != 0) {
+                dst[d++] = hub.base + (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return d;
+    }
+
+    // Read-only adapter from a primitive iterator to Iterator<Integer>.
+    private static class NeighborCollection implements Iterable<Integer> {
+        private final HybridUnweightedGraph graph;
+        private final int v;
+        private final boolean in;
+        NeighborCollection(HybridUnweightedGraph graph, int v, boolean in) {
+            this.graph = graph;
+            this.v = v;
+            this.in = in;
+        }
+        public Iterator<Integer> iterator() {
+            PrimitiveIterator.OfInt it = in ? graph.inNeighborIterator(v)
+                    : graph.neighborIterator(v);
+            return new Iterator<Integer>() {
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+                public Integer next() {
+                    return it.nextInt();
+                }
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    private PrimitiveIterator.OfInt inNeighborIterator(int v) {
+        if(undirected) {
+            return neighborIterator(v);
+        }
+        return rowIterator(inTargets, inOffsets[v], inOffsets[v + 1]);
+    }
+
+    /** Returns an iterator over the neighbors of the specified vertex.
+     * In particular, the vertex u is included in the returned iterator's
+     * sequence if and only if there is an edge from v to u in the graph.
+     */
+    public Iterable<Integer> getNeighbors(int v) {
+        checkVertex(v);
+        return new NeighborCollection(this, v, false);
+    }
+
+    /** Returns an iterator over the in-neighbors of the specified vertex, in
+     * increasing order.
+     */
+    public Iterable<Integer> getInNeighbors(int v) {
+        checkVertex(v);
+        return new NeighborCollection(this, v, true);
+    }
+
+    /** Returns the number of vertices in the graph. */
+    public int numVerts() {
+        return n;
+    }
+
+    /** Returns the number of edges in the graph.
+     * The result does *not* double-count edges in undirected graphs.
+     */
+    public int numEdges() {
+        return numEdges;
+    }
+
+    /** Returns true if the graph is directed. */
+    public boolean isDirected() {
+        return !undirected;
+    }
+
+    /** Returns true if there are no vertices in the graph. */
+    public boolean isEmpty() {
+        return n == 0;
+    }
+
+    /** Unsupported: the graph is immutable once built. */
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Compares the hybrid layout of a snapshot's graph with its CSR form, in
+     * size and in the time of hasEdge and commonNeighbors on the bitmap rows.
+     * Usage: java HybridUnweightedGraph wikipaths.snapshot [hubDegree [maxBitsPerLink]]
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1 || args.length > 3) {
+            System.err.println("Usage: java HybridUnweightedGraph graph.snapshot [hubDegree [maxBitsPerLink]]");
+            System.exit(1);
+        }
+        GraphSnapshot snapshot = GraphSnapshot.open(args[0]);
+        Graph graph = snapshot.graph();
+        int hubDegree = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_HUB_DEGREE;
+        int maxBits = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_BITS_PER_LINK;
+        long start = System.nanoTime();
+        HybridUnweightedGraph hybrid = new HybridUnweightedGraph(graph, hubDegree, maxBits);
+        long hubLinks = 0;
+        long hubWords = 0;
+        for(HubRow hub : hybrid.hubs) {
+            hubLinks += hub.degree;
+            hubWords += hub.words.length;
+        }
+        System.out.printf("%d bitmap rows of %d articles (out-degree >= %d, <= %d bits per link), built in %.1f ms%n",
+                hybrid.numHubs(), hybrid.numVerts(), hubDegree, maxBits,
+                (System.nanoTime() - start) / 1e6);
+        System.out.printf("bitmap rows hold %d links in %.1f bits per link%n",
+                hubLinks, 64.0 * hubWords / Math.max(1, hubLinks));
+        // Out- and in-rows of a directed graph; one row set, with every
+        // edge stored twice, of an undirected one.
+        long csr = graph.isDirected()
+                ? 8L * (graph.numVerts() + 1L + graph.numEdges())
+                : 4L * (graph.numVerts() + 1L + 2L * graph.numEdges());
+        System.out.printf("adjacency: %d bytes hybrid, %d bytes as CSR%n",
+                hybrid.memoryBytes(), csr);
+        if(hybrid.numHubs() == 0) {
+            return;
+        }
+
+        // The same rows as heap CSR: binary search for hasEdge, merge for
+        // commonNeighbors.
+        CsrRows rows = CsrRows.out(graph);
+        int[] hubIds = new int[hybrid.numHubs()];
+        int[][] plain = new int[hybrid.numHubs()][];
+        for(int v = 0; v < hybrid.n; v++) {
+            int h = hybrid.hubIndex[v];
+            if(h >= 0) {
+                hubIds[h] = v;
+                plain[h] = Arrays.copyOf(sortedRow(rows, v, new int[16]), hybrid.hubs[h].degree);
+            }
+        }
+        int n = hybrid.n;
+        for(int round = 0; round < 5; round++) {
+            long hits = 0;
+            long t0 = System.nanoTime();
+            for(int h : hubIds) {
+                for(int v = 0; v < n; v++) {
+                    if(hybrid.hasEdge(h, v)) {
+                        hits++;
+                    }
+                }
+            }
+            long t1 = System.nanoTime();
+            for(int[] row : plain) {
+                for(int v = 0; v < n; v++) {
+                    if(Arrays.binarySearch(row, v) >= 0) {
+                        hits--;
+                    }
+                }
+            }
+            long t2 = System.nanoTime();
+            long common = 0;
+            for(int a : hubIds) {
+                for(int b : hubIds) {
+                    common += hybrid.commonNeighbors(a, b);
+                }
+            }
+            long t3 = System.nanoTime();
+            for(int[] ra : plain) {
+                for(int[] rb : plain) {
+                    common -= intersect(ra, 0, ra.length, rb, 0, rb.length);
+                }
+            }
+            long t4 = System.nanoTime();
+            long probes = (long) hubIds.length * n;
+            long pairs = (long) hubIds.length * hubIds.length;
+            System.out.printf("round %d: hasEdge %.1f ns bitmap, %.1f ns binary search; commonNeighbors %.0f ns bitmap, %.0f ns merge%s%n",
+                    round, (double) (t1 - t0) / probes, (double) (t2 - t1) / probes,
+                    (double) (t3 - t2) / pairs, (double) (t4 - t3) / pairs,
+                    hits == 0 && common == 0 ? "" : " (MISMATCH)");
+        }
+    }
+}
@@ -0,0 +1,150 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+/**
+ * A min-priority queue of int IDs from 0 to N-1 with double keys, as a 4-ary
+ * heap with a position index, so that an ID's key can be lowered in place.
+ *   Everything is held in primitive arrays: the heap of IDs, the key of each
+ * heap slot next to it, and the slot of each ID (-1 if absent).  A 4-ary heap
+ * is shallower than a binary one and its children share a cache line, which
+ * suits Dijkstra's many decrease-keys and few extractions.  clear() costs
+ * time proportional to the entries still queued, so one heap can serve any
+ * number of searches.  Not thread-safe.
+ */
+public class IndexedDaryHeap {
+    private static final int D = 4;
+
+    private final int[] pos;
+    private int[] heap;
+    private double[] keys;
+    private int size;
+
+    /** Constructs an empty heap for the IDs 0 to N-1. */
+    public IndexedDaryHeap(int N) {
+        pos = new int[N];
+        Arrays.fill(pos, -1);
+        heap = new int[Math.max(16, Math.min(N, 1024))];
+        keys = new double[heap.length];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Returns true if the specified ID is queued. */
+    public boolean contains(int id) {
+        return pos[id] >= 0;
+    }
+
+    /** Returns the key of a queued ID.
+     * @throws NoSuchElementException if the ID is not queued.
+     */
+    public double key(int id) {
+        if(pos[id] < 0) {
+            throw new NoSuchElementException();
+        }
+        return keys[pos[id]];
+    }
+
+    /** Queues id with the specified key, or lowers its key if it is queued
+     * with a larger one.
+     * @return true if the heap changed.
+     */
+    public boolean offer(int id, double key) {
+        int i = pos[id];
+        if(i >= 0) {
+            if(key >= keys[i]) {
+                return false;
+            }
+            siftUp(i, id, key);
+            return true;
+        }
+        if(size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        siftUp(size++, id, key);
+        return true;
+    }
+
+    /** Returns the smallest key.
+     * @throws NoSuchElementException if the heap is empty.
+     */
+    public double minKey() {
+        if(size == 0) {
+            throw new NoSuchElementException();
+        }
+        return keys[0];
+    }
+
+    /** Removes and returns the ID with the smallest key.
+     * @throws NoSuchElementException if the heap is empty.
+     */
+    public int poll() {
+        if(size == 0) {
+            throw new NoSuchElementException();
+        }
+        int min = heap[0];
+        pos[min] = -1;
+        size--;
+        if(size > 0) {
+            siftDown(0, heap[size], keys[size]);
+        }
+        return min;
+    }
+
+    /** Removes every queued ID. */
+    public void clear() {
+        for(int i = 0; i < size; i++) {
+            pos[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    // Moves the hole at slot i up until key fits, then puts id there.
+    private void siftUp(int i, int id, double key) {
+        while(i > 0) {
+            int parent = (i - 1) / D;
+            if(keys[parent] <= key) {
+                break;
+            }
+            heap[i] = heap[parent];
+            keys[i] = keys[parent];
+            pos[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = id;
+        keys[i] = key;
+        pos[id] = i;
+    }
+
+    // Moves the hole at slot i down until key fits, then puts id there.
+    private void siftDown(int i, int id, double key) {
+        while(true) {
+            int first = D * i + 1;
+            if(first >= size) {
+                break;
+            }
+            int last = Math.min(first + D, size);
+            int best = first;
+            for(int c = first + 1; c < last; c++) {
+                if(keys[c] < keys[best]) {
+                    best = c;
+                }
+            }
+            if(keys[best] >= key) {
+                break;
+            }
+            heap[i] = heap[best];
+            keys[i] = keys[best];
+            pos[heap[i]] = i;
+            i = best;
+        }
+        heap[i] = id;
+        keys[i] = key;
+        pos[id] = i;
+    }
+}
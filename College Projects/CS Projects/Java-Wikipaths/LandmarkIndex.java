@@ -0,0 +1,361 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+/**
+ * Precomputed breadth-first distances to and from a handful of landmark
+ * vertices, which give cheap lower bounds on the distance between any two
+ * vertices (the "ALT" technique: A*, landmarks, triangle inequality).  For a
+ * landmark L, the triangle inequality gives
+ * <pre>
+ *   d(v, t) &gt;= d(L, t) - d(L, v)     and     d(v, t) &gt;= d(v, L) - d(t, L)
+ * </pre>
+ * and the same distances also prove some pairs unreachable: if L reaches v but
+ * not t, or t reaches L but v does not, there is no path from v to t.
+ *   Landmarks are high-degree hubs, picked greedily so that no two are
+ * adjacent.  The distances are stored vertex-major (all K landmarks of a vertex
+ * side by side) in byte arrays, or short arrays if some distance does not fit
+ * in a byte, and can be saved next to the graph and loaded again.
+ */
+public class LandmarkIndex {
+    /** The bound returned for pairs that are provably unreachable. */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final int MAGIC = 0x4c444d4b; // "LDMK"
+    private static final int VERSION = 1;
+    private static final int NARROW_NONE = 0xff;
+    private static final int WIDE_NONE = 0xffff;
+
+    private final int n;
+    private final int[] landmarks;
+    // Exactly one pair of tables is non-null.  from[v*K + l] is d(L_l, v) and
+    // to[v*K + l] is d(v, L_l); the NONE value marks "unreachable".
+    private final byte[] fromNarrow;
+    private final byte[] toNarrow;
+    private final short[] fromWide;
+    private final short[] toWide;
+
+    private LandmarkIndex(int n, int[] landmarks, byte[] fromNarrow,
+            byte[] toNarrow, short[] fromWide, short[] toWide) {
+        this.n = n;
+        this.landmarks = landmarks;
+        this.fromNarrow = fromNarrow;
+        this.toNarrow = toNarrow;
+        this.fromWide = fromWide;
+        this.toWide = toWide;
+    }
+
+    /** Picks k landmarks in the specified graph and computes their forward
+     * and backward distance tables, one breadth-first search per table, in
+     * parallel.  Each search writes its column of the packed tables as soon
+     * as it finishes, so no full distance array per landmark is kept.
+     */
+    public static LandmarkIndex build(Graph graph, int k) {
+        CsrRows out = CsrRows.out(graph);
+        CsrRows in = CsrRows.in(graph, out);
+        int n = out.numVerts();
+        int[] landmarks = pickLandmarks(out, in, Math.min(k, n));
+        int K = landmarks.length;
+        if((long) n * K > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many landmarks for this graph");
+        }
+        // Bytes first; a search deeper than a byte holds stops the others,
+        // and the tables are built again from scratch in shorts.
+        byte[] fNarrow = new byte[n * K];
+        byte[] tNarrow = new byte[n * K];
+        Arrays.fill(fNarrow, (byte) NARROW_NONE);
+        Arrays.fill(tNarrow, (byte) NARROW_NONE);
+        boolean narrow = IntStream.range(0, 2 * K).parallel().allMatch(job -> {
+            int l = job >> 1;
+            boolean forward = (job & 1) == 0;
+            Levels levels = bfs(forward ? out : in, landmarks[l]);
+            if(levels.depth > NARROW_NONE) {
+                return false;
+            }
+            byte[] table = forward ? fNarrow : tNarrow;
+            for(int d = 0; d < levels.depth; d++) {
+                for(int i = levels.start[d]; i < levels.start[d + 1]; i++) {
+                    table[levels.order[i] * K + l] = (byte) d;
+                }
+            }
+            return true;
+        });
+        if(narrow) {
+            return new LandmarkIndex(n, landmarks, fNarrow, tNarrow, null, null);
+        }
+        short[] fWide = new short[n * K];
+        short[] tWide = new short[n * K];
+        Arrays.fill(fWide, (short) WIDE_NONE);
+        Arrays.fill(tWide, (short) WIDE_NONE);
+        boolean wide = IntStream.range(0, 2 * K).parallel().allMatch(job -> {
+            int l = job >> 1;
+            boolean forward = (job & 1) == 0;
+            Levels levels = bfs(forward ? out : in, landmarks[l]);
+            if(levels.depth > WIDE_NONE) {
+                return false;
+            }
+            short[] table = forward ? fWide : tWide;
+            for(int d = 0; d < levels.depth; d++) {
+                for(int i = levels.start[d]; i < levels.start[d + 1]; i++) {
+                    table[levels.order[i] * K + l] = (short) d;
+                }
+            }
+            return true;
+        });
+        if(!wide) {
+            throw new IllegalArgumentException("graph diameter too large for landmark tables");
+        }
+        return new LandmarkIndex(n, landmarks, null, null, fWide, tWide);
+    }
+
+    // Greedy pick by total degree, skipping vertices adjacent to a landmark
+    // already picked so that the landmarks cover different regions.
+    private static int[] pickLandmarks(CsrRows out, CsrRows in, int k) {
+        int n = out.numVerts();
+        // Highest total degree first, ties by vertex ID.
+        long[] order = new long[n];
+        for(int v = 0; v < n; v++) {
+            order[v] = (Integer.MAX_VALUE - (long) degree(out, in, v)) << 32 | v;
+        }
+        Arrays.sort(order);
+        boolean[] blocked = new boolean[n];
+        int[] picked = new int[k];
+        int count = 0;
+        for(int i = 0; i < n && count < k; i++) {
+            int v = (int) order[i];
+            if(blocked[v]) {
+                continue;
+            }
+            picked[count++] = v;
+            for(int j = out.start(v); j < out.end(v); j++) {
+                blocked[out.target(j)] = true;
+            }
+            for(int j = in.start(v); j < in.end(v); j++) {
+                blocked[in.target(j)] = true;
+            }
+        }
+        // A graph too small to spread out: fill up with the best leftovers.
+        for(int i = 0; i < n && count < k; i++) {
+            int v = (int) order[i];
+            if(blocked[v] && Arrays.stream(picked, 0, count).noneMatch(p -> p == v)) {
+                picked[count++] = v;
+            }
+        }
+        return Arrays.copyOf(picked, count);
+    }
+
+    private static int degree(CsrRows out, CsrRows in, int v) {
+        return out.end(v) - out.start(v) + in.end(v) - in.start(v);
+    }
+
+    // The vertices a breadth-first search reached, in the order it reached
+    // them: those at distance d are order[start[d]] up to order[start[d + 1]],
+    // for d below depth.
+    private static final class Levels {
+        final int[] order;
+        final int[] start;
+        final int depth;
+
+        Levels(int[] order, int[] start, int depth) {
+            this.order = order;
+            this.start = start;
+            this.depth = depth;
+        }
+    }
+
+    // Breadth-first search from source along rows, level by level.
+    private static Levels bfs(CsrRows rows, int source) {
+        int n = rows.numVerts();
+        long[] seen = new long[(n + 63) >>> 6];
+        int[] queue = new int[n];
+        int[] start = new int[16];
+        int depth = 0;
+        int head = 0;
+        int tail = 0;
+        seen[source >>> 6] |= 1L << source;
+        queue[tail++] = source;
+        while(head < tail) {
+            int end = tail;
+            while(head < end) {
+                int v = queue[head++];
+                for(int i = rows.start(v); i < rows.end(v); i++) {
+                    int u = rows.target(i);
+                    if((seen[u >>> 6] & (1L << u)) == 0) {
+                        seen[u >>> 6] |= 1L << u;
+                        queue[tail++] = u;
+                    }
+                }
+            }
+            depth++;
+            if(depth == start.length) {
+                start = Arrays.copyOf(start, 2 * depth);
+            }
+            start[depth] = end;
+        }
+        return new Levels(queue, start, depth);
+    }
+
+    /** Returns the number of landmarks. */
+    public int numLandmarks() {
+        return landmarks.length;
+    }
+
+    /** Returns the vertex ID of the specified landmark. */
+    public int landmark(int l) {
+        return landmarks[l];
+    }
+
+    /** Returns the number of vertices of the graph the index was built for. */
+    public int numVerts() {
+        return n;
+    }
+
+    /** Returns a lower bound on the distance from v to t, or UNREACHABLE if
+     * the landmark distances prove that t cannot be reached from v.
+     * @throws IndexOutOfBoundsException if either vertex ID is out of bounds.
+     */
+    public int lowerBound(int v, int t) {
+        if(v < 0 || v >= n || t < 0 || t >= n) {
+            throw new IndexOutOfBoundsException();
+        }
+        int K = landmarks.length;
+        int best = 0;
+        int vi = v * K;
+        int ti = t * K;
+        if(fromNarrow != null) {
+            for(int l = 0; l < K; l++) {
+                int fv = fromNarrow[vi + l] & 0xff;
+                int ft = fromNarrow[ti + l] & 0xff;
+                int tv = toNarrow[vi + l] & 0xff;
+                int tt = toNarrow[ti + l] & 0xff;
+                if(fv != NARROW_NONE) {
+                    if(ft == NARROW_NONE) {
+                        return UNREACHABLE;
+                    }
+                    best = Math.max(best, ft - fv);
+                }
+                if(tt != NARROW_NONE) {
+                    if(tv == NARROW_NONE) {
+                        return UNREACHABLE;
+                    }
+                    best = Math.max(best, tv - tt);
+                }
+            }
+        } else {
+            for(int l = 0; l < K; l++) {
+                int fv = fromWide[vi + l] & 0xffff;
+                int ft = fromWide[ti + l] & 0xffff;
+                int tv = toWide[vi + l] & 0xffff;
+                int tt = toWide[ti + l] & 0xffff;
+                if(fv != WIDE_NONE) {
+                    if(ft == WIDE_NONE) {
+                        return UNREACHABLE;
+                    }
+                    best = Math.max(best, ft - fv);
+                }
+                if(tt != WIDE_NONE) {
+                    if(tv == WIDE_NONE) {
+                        return UNREACHABLE;
+                    }
+                    best = Math.max(best, tv - tt);
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Writes the index to a file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void save(String file) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(landmarks.length);
+            out.writeInt(fromNarrow != null ? 1 : 2);
+            for(int l : landmarks) {
+                out.writeInt(l);
+            }
+            if(fromNarrow != null) {
+                out.write(fromNarrow);
+                out.write(toNarrow);
+            } else {
+                for(short d : fromWide) {
+                    out.writeShort(d);
+                }
+                for(short d : toWide) {
+                    out.writeShort(d);
+                }
+            }
+        }
+    }
+
+    /** Reads an index written by save().
+     * @throws IOException if the file cannot be read or is not a landmark
+     * index of a supported version.
+     */
+    public static LandmarkIndex load(String file) throws IOException {
+        try(FileChannel channel = FileChannel.open(Paths.get(file),
+                StandardOpenOption.READ)) {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            if(buf.remaining() < 20 || buf.getInt() != MAGIC) {
+                throw new IOException(file + ": not a landmark index");
+            }
+            if(buf.getInt() != VERSION) {
+                throw new IOException(file + ": unsupported landmark index version");
+            }
+            int n = buf.getInt();
+            int K = buf.getInt();
+            int width = buf.getInt();
+            int[] landmarks = new int[K];
+            buf.asIntBuffer().get(landmarks);
+            buf.position(buf.position() + 4 * K);
+            int size = n * K;
+            if(buf.remaining() != (long) size * 2 * width) {
+                throw new IOException(file + ": truncated landmark index");
+            }
+            if(width == 1) {
+                byte[] from = new byte[size];
+                byte[] to = new byte[size];
+                buf.get(from).get(to);
+                return new LandmarkIndex(n, landmarks, from, to, null, null);
+            }
+            short[] from = new short[size];
+            short[] to = new short[size];
+            buf.asShortBuffer().get(from);
+            buf.position(buf.position() + 2 * size);
+            buf.asShortBuffer().get(to);
+            return new LandmarkIndex(n, landmarks, null, null, from, to);
+        }
+    }
+
+    /** Builds landmarks for a snapshot and saves them next to it, as
+     * snapshot.landmarks.
+     * Usage: java LandmarkIndex wikipaths.snapshot [K]
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1) {
+            System.err.println("Usage: java LandmarkIndex graph.snapshot [K]");
+            System.exit(1);
+        }
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        GraphSnapshot snapshot = GraphSnapshot.open(args[0]);
+        long start = System.nanoTime();
+        LandmarkIndex index = build(snapshot.graph(), k);
+        index.save(args[0] + ".landmarks");
+        System.out.printf("Wrote %s.landmarks: %d landmarks in %.1f ms%n", args[0],
+                index.numLandmarks(), (System.nanoTime() - start) / 1e6);
+        for(int l = 0; l < index.numLandmarks(); l++) {
+            System.out.println("  " + snapshot.title(index.landmark(l)));
+        }
+    }
+}
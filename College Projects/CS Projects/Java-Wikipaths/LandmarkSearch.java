@@ -0,0 +1,183 @@
+import java.util.Arrays;
+/**
+ * A goal-directed shortest-path engine: A* search over an unweighted graph,
+ * guided by the lower bounds of a LandmarkIndex.  Vertices whose bound says
+ * they cannot reach the target are never queued, and a query whose endpoints
+ * are provably unreachable is answered before any search starts.
+ *   Landmark bounds are consistent (each is a triangle inequality), so a vertex
+ * is final the first time it is expanded and the estimate f = g + h never
+ * decreases along an edge.  Since f is a small integer, the open set is an
+ * array of buckets indexed by f, scanned upward, instead of a heap.
+ *   As in BidirectionalSearch, all per-query state lives in primitive arrays
+ * that are reset only where the query touched them.  An instance is not
+ * thread-safe; give each thread its own engine.
+ */
+public class LandmarkSearch implements PathSearch {
+    private final int n;
+    private final CsrRows out;
+    private final LandmarkIndex landmarks;
+
+    private final long[] seen;
+    private final long[] closed;
+    private final int[] dist;
+    private final int[] parent;
+    private int[] touched;
+    private int touchedCount;
+    private int[][] buckets;
+    private int[] bucketSize;
+    private long expanded;
+    private long scanned;
+    private QueryTrace trace;
+
+    /** Constructs an engine over the specified graph and a landmark index
+     * built for it.  The graph must not change while the engine is in use.
+     */
+    public LandmarkSearch(Graph graph, LandmarkIndex landmarks) {
+        if(landmarks.numVerts() != graph.numVerts()) {
+            throw new IllegalArgumentException("landmark index is for a different graph");
+        }
+        this.n = graph.numVerts();
+        this.out = CsrRows.out(graph);
+        this.landmarks = landmarks;
+        seen = new long[(n + 63) >>> 6];
+        closed = new long[(n + 63) >>> 6];
+        dist = new int[n];
+        parent = new int[n];
+        touched = new int[64];
+        buckets = new int[16][];
+        bucketSize = new int[16];
+    }
+
+    /** Returns the number of vertices expanded by the last query. */
+    public long lastExpanded() {
+        return expanded;
+    }
+
+    public void setTrace(QueryTrace trace) {
+        this.trace = trace;
+    }
+
+    /** Returns a shortest path from source to target as a sequence of vertex
+     * IDs beginning with source and ending with target, or null if target is
+     * not reachable from source.
+     * @throws IndexOutOfBoundsException if either vertex ID is out of bounds.
+     */
+    public int[] findPath(int source, int target) {
+        if(source < 0 || source >= n || target < 0 || target >= n) {
+            throw new IndexOutOfBoundsException();
+        }
+        expanded = 0;
+        scanned = 0;
+        if(source == target) {
+            if(trace != null) {
+                trace.shortCircuit(QueryTrace.ShortCircuit.TRIVIAL);
+            }
+            return new int[] {source};
+        }
+        int h = landmarks.lowerBound(source, target);
+        if(h == LandmarkIndex.UNREACHABLE) {
+            if(trace != null) {
+                trace.shortCircuit(QueryTrace.ShortCircuit.LANDMARK);
+            }
+            return null;
+        }
+        try {
+            return search(source, target, h);
+        } finally {
+            if(trace != null) {
+                trace.expanded(expanded, scanned);
+            }
+            reset();
+        }
+    }
+
+    private int[] search(int source, int target, int h) {
+        visit(source, 0, -1);
+        push(h, source);
+        int f = h;
+        int pending = 1;
+        while(pending > 0) {
+            if(bucketSize[f] == 0) {
+                f++;
+                continue;
+            }
+            int v = buckets[f][--bucketSize[f]];
+            pending--;
+            if(isSet(closed, v)) {
+                continue;
+            }
+            closed[v >>> 6] |= 1L << v;
+            expanded++;
+            if(v == target) {
+                return buildPath(target);
+            }
+            int g = dist[v] + 1;
+            scanned += out.end(v) - out.start(v);
+            for(int i = out.start(v); i < out.end(v); i++) {
+                int u = out.target(i);
+                if(isSet(seen, u) && dist[u] <= g) {
+                    continue;
+                }
+                int hu = landmarks.lowerBound(u, target);
+                if(hu == LandmarkIndex.UNREACHABLE) {
+                    // Prune for good: u cannot lead to the target.
+                    visit(u, 0, -1);
+                    closed[u >>> 6] |= 1L << u;
+                    continue;
+                }
+                visit(u, g, v);
+                push(g + hu, u);
+                pending++;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isSet(long[] bits, int v) {
+        return (bits[v >>> 6] & (1L << v)) != 0;
+    }
+
+    private void visit(int v, int d, int p) {
+        if(!isSet(seen, v)) {
+            seen[v >>> 6] |= 1L << v;
+            if(touchedCount == touched.length) {
+                touched = Arrays.copyOf(touched, touchedCount * 2);
+            }
+            touched[touchedCount++] = v;
+        }
+        dist[v] = d;
+        parent[v] = p;
+    }
+
+    private void push(int f, int v) {
+        if(f >= buckets.length) {
+            int capacity = Math.max(f + 1, buckets.length * 2);
+            buckets = Arrays.copyOf(buckets, capacity);
+            bucketSize = Arrays.copyOf(bucketSize, capacity);
+        }
+        if(buckets[f] == null) {
+            buckets[f] = new int[64];
+        } else if(bucketSize[f] == buckets[f].length) {
+            buckets[f] = Arrays.copyOf(buckets[f], bucketSize[f] * 2);
+        }
+        buckets[f][bucketSize[f]++] = v;
+    }
+
+    private int[] buildPath(int target) {
+        int[] path = new int[dist[target] + 1];
+        for(int v = target, i = path.length - 1; v != -1; v = parent[v], i--) {
+            path[i] = v;
+        }
+        return path;
+    }
+
+    private void reset() {
+        for(int i = 0; i < touchedCount; i++) {
+            int v = touched[i];
+            seen[v >>> 6] = 0;
+            closed[v >>> 6] = 0;
+        }
+        touchedCount = 0;
+        Arrays.fill(bucketSize, 0);
+    }
+}
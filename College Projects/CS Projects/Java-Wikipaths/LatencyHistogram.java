@@ -0,0 +1,102 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+/**
+ * A concurrent histogram of non-negative long values, laid out like an HDR
+ * histogram: values below 256 get a bucket each, and every power-of-two range
+ * above that is split into 128 equal buckets.  Any value is therefore counted
+ * within 1/128 (under 0.8%) of itself, from nanoseconds to days, in a fixed
+ * 7296 buckets.
+ *   Recording is one atomic increment and never blocks, so many threads can
+ * record into one histogram.  Reading percentiles while others record gives
+ * a consistent enough view for reporting; it does not stop the recorders.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 7;
+    private static final int HALF = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    private static int index(long value) {
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        if(shift <= 0) {
+            return (int) value;
+        }
+        return (shift << SUB_BITS) + (int) (value >>> shift);
+    }
+
+    // The largest value counted in the specified bucket.
+    private static long highest(int index) {
+        if(index < 2 * HALF) {
+            return index;
+        }
+        int shift = (index >>> SUB_BITS) - 1;
+        long m = index - ((long) shift << SUB_BITS);
+        return ((m + 1) << shift) - 1;
+    }
+
+    /** Counts one value.
+     * @throws IllegalArgumentException if value is negative.
+     */
+    public void record(long value) {
+        if(value < 0) {
+            throw new IllegalArgumentException("negative value: " + value);
+        }
+        counts.incrementAndGet(index(value));
+        total.increment();
+        sum.add(value);
+        if(value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /** Returns the number of values recorded. */
+    public long count() {
+        return total.sum();
+    }
+
+    /** Returns the largest value recorded, or 0 if there is none. */
+    public long max() {
+        return max.get();
+    }
+
+    /** Returns the mean of the values recorded, or 0 if there is none. */
+    public double mean() {
+        long n = total.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /** Returns a value that at least the specified percentage of the recorded
+     * values do not exceed, within the precision of the buckets; 0 if nothing
+     * was recorded.
+     */
+    public long percentile(double percent) {
+        long n = total.sum();
+        if(n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percent / 100.0 * n));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if(seen >= rank) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /** Forgets every recorded value. */
+    public void reset() {
+        for(int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        sum.reset();
+        max.set(0);
+    }
+}
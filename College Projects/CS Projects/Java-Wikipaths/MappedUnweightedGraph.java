@@ -0,0 +1,242 @@
+import java.nio.IntBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+/**
+ * A read-only implementation of the Unweighted Graph ADT that answers queries
+ * straight from the memory-mapped adjacency of a GraphSnapshot file.  The
+ * layout is the same compressed sparse row form as CompactUnweightedGraph, but
+ * the arrays live in the page cache rather than on the heap, so opening a graph
+ * costs nothing up front and several processes can share one copy.
+ *   Instances are obtained from GraphSnapshot.open(); the mutating methods of
+ * the Graph interface throw UnsupportedOperationException.
+ *   Any method that takes one or more vertex IDs as arguments may throw an
+ * IndexOutOfBoundsException if any input ID is out of bounds.
+ */
+public class MappedUnweightedGraph implements UnweightedGraph {
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+    // Transposed rows of a directed graph, or null if the snapshot has none.
+    private final IntBuffer inOffsets;
+    private final IntBuffer inTargets;
+    private final boolean undirected;
+    private final int numVerts;
+    private final int numEdges;
+
+    MappedUnweightedGraph(IntBuffer offsets, IntBuffer targets,
+            IntBuffer inOffsets, IntBuffer inTargets, boolean directed,
+            int numEdges) {
+        this.offsets = offsets;
+        this.targets = targets;
+        this.inOffsets = inOffsets;
+        this.inTargets = inTargets;
+        this.undirected = !directed;
+        this.numVerts = offsets.limit() - 1;
+        this.numEdges = numEdges;
+    }
+
+    CsrRows outRows() {
+        return new CsrRows(offsets, targets);
+    }
+
+    CsrRows inRows() {
+        return undirected ? outRows() : new CsrRows(inOffsets, inTargets);
+    }
+
+    /** Returns true if in-neighbors can be looked up without scanning every
+     * row, i.e. if the graph is undirected or the snapshot holds in-edges.
+     */
+    public boolean hasInEdgeIndex() {
+        return undirected || inOffsets != null;
+    }
+
+    private void checkVertex(int v) {
+        if(v < 0 || v >= numVerts) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    // Binary search for goal among targets[l..r).
+    private static boolean contains(IntBuffer targets, int l, int r, int goal) {
+        r--;
+        while(l <= r) {
+            int m = l + (r-l)/2;
+            int v = targets.get(m);
+            if(v < goal) {
+                l = m + 1;
+            } else if(v > goal) {
+                r = m - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Unsupported: a mapped graph is read-only. */
+    public int addVertex() {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Unsupported: a mapped graph is read-only. */
+    public boolean addEdge(int begin, int end) {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Checks whether an edge exists between two vertices.
+     * In an undirected graph, this returns the same as hasEdge(end, begin).
+     * @return true if there is an edge from begin to end.
+     */
+    public boolean hasEdge(int begin, int end) {
+        checkVertex(begin);
+        checkVertex(end);
+        return contains(targets, offsets.get(begin), offsets.get(begin + 1), end);
+    }
+
+    /** Returns the out-degree of the specified vertex. */
+    public int getDegree(int v) {
+        checkVertex(v);
+        return offsets.get(v + 1) - offsets.get(v);
+    }
+
+    /** Returns the in-degree of the specified vertex. */
+    public int getInDegree(int v) {
+        checkVertex(v);
+        if(hasInEdgeIndex()) {
+            CsrRows in = inRows();
+            return in.end(v) - in.start(v);
+        }
+        int d = 0;
+        for(int u = 0; u < numVerts; u++) {
+            if(contains(targets, offsets.get(u), offsets.get(u + 1), v)) {
+                d++;
+            }
+        }
+        return d;
+    }
+
+    // Read-only view of one row of a mapped targets buffer.
+    private static class NeighborCollection implements Iterable<Integer> {
+        private final IntBuffer targets;
+        private final int start;
+        private final int end;
+        public NeighborCollection(IntBuffer targets, int start, int end) {
+            this.targets = targets;
+            this.start = start;
+            this.end = end;
+        }
+        public Iterator<Integer> iterator() {
+            return new Iterator<Integer>() {
+                private int i = start;
+                public boolean hasNext() {
+                    return i < end;
+                }
+                public Integer next() {
+                    if(i >= end) {
+                        throw new NoSuchElementException();
+                    }
+                    return targets.get(i++);
+                }
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    /** Returns an iterator over the neighbors of the specified vertex.
+     * In particular, the vertex u is included in the returned iterator's
+     * sequence if and only if there is an edge from v to u in the graph.
+     */
+    public Iterable<Integer> getNeighbors(int v) {
+        checkVertex(v);
+        return new NeighborCollection(targets, offsets.get(v), offsets.get(v + 1));
+    }
+
+    /** Calls action once for each neighbor of the specified vertex, in
+     * increasing order, straight from the mapped targets.
+     */
+    public void forEachNeighbor(int v, IntConsumer action) {
+        checkVertex(v);
+        int end = offsets.get(v + 1);
+        for(int i = offsets.get(v); i < end; i++) {
+            action.accept(targets.get(i));
+        }
+    }
+
+    /** Returns a primitive iterator over the neighbors of the specified
+     * vertex, in increasing order.
+     */
+    public PrimitiveIterator.OfInt neighborIterator(int v) {
+        checkVertex(v);
+        int start = offsets.get(v);
+        int end = offsets.get(v + 1);
+        return new PrimitiveIterator.OfInt() {
+            private int i = start;
+            public boolean hasNext() {
+                return i < end;
+            }
+            public int nextInt() {
+                if(i >= end) {
+                    throw new NoSuchElementException();
+                }
+                return targets.get(i++);
+            }
+        };
+    }
+
+    /** Copies the neighbors of the specified vertex into dst, in increasing
+     * order, with one bulk read of the mapped targets.
+     * @return the out-degree of v.
+     * @throws IndexOutOfBoundsException if dst is shorter than the out-degree.
+     */
+    public int copyNeighbors(int v, int[] dst) {
+        checkVertex(v);
+        int start = offsets.get(v);
+        int d = offsets.get(v + 1) - start;
+        targets.get(start, dst, 0, d);
+        return d;
+    }
+
+    /** Returns an iterator over the in-neighbors of the specified vertex, in
+     * increasing order.  Without in-edges in the snapshot this falls back to
+     * probing every row.
+     */
+    public Iterable<Integer> getInNeighbors(int v) {
+        checkVertex(v);
+        if(!hasInEdgeIndex()) {
+            return UnweightedGraph.super.getInNeighbors(v);
+        }
+        IntBuffer in = undirected ? offsets : inOffsets;
+        return new NeighborCollection(undirected ? targets : inTargets,
+                in.get(v), in.get(v + 1));
+    }
+
+    /** Returns the number of vertices in the graph. */
+    public int numVerts() {
+        return numVerts;
+    }
+
+    /** Returns the number of edges in the graph.
+     * The result does *not* double-count edges in undirected graphs.
+     */
+    public int numEdges() {
+        return numEdges;
+    }
+
+    /** Returns true if the graph is directed. */
+    public boolean isDirected() {
+        return !undirected;
+    }
+
+    /** Returns true if there are no vertices in the graph. */
+    public boolean isEmpty() {
+        return numVerts == 0;
+    }
+
+    /** Unsupported: a mapped graph is read-only. */
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+}
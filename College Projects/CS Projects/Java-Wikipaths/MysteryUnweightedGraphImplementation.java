@@ -1,12 +1,25 @@
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.function.IntConsumer;
 /**
  * An implementation of the Unweighted Graph ADT.  This class can
  * represent both directed and undirected graphs, but the choice must be made
  * at construction time, and is final.
  *   Technically, this implementation supports self-loops; it makes no effort to
  * prevent these.
+ *   A directed graph can optionally keep a reverse adjacency index (the sorted
+ * list of in-neighbors of every vertex), which makes getInDegree and
+ * getInNeighbors cost O(1) and O(in-degree) instead of a scan of every edge.
+ * The index is either kept up to date by addEdge from construction on, or
+ * built in bulk with buildInEdgeIndex() once loading is finished.
+ *   addEdge inserts into a sorted list, which costs time proportional to the
+ * row; addEdges sorts a whole batch of edges and merges each row once, which
+ * is much faster for large batches and rows.
  *   Any method that takes one or more vertex IDs as arguments may throw an
  * IndexOutOfBoundsException if any input ID is out of bounds.
  * 
@@ -15,6 +28,8 @@ import java.util.ArrayList;
  */
 public class MysteryUnweightedGraphImplementation implements UnweightedGraph {
     private List<List<Integer>> adj;
+    // Reverse adjacency of a directed graph, or null if it is not kept.
+    private List<List<Integer>> inAdj;
     private final boolean undirected;
     
     /** Default constructor: an empty directed graph. */
@@ -29,11 +44,60 @@ public class MysteryUnweightedGraphImplementation implements UnweightedGraph {
     
     /** Constructs a graph with N vertices and the specified directedness. */
     public MysteryUnweightedGraphImplementation(boolean directed, int N) {
+        this(directed, N, false);
+    }
+    
+    /** Constructs a graph with N vertices and the specified directedness.
+     * If trackInEdges is true, a directed graph keeps its reverse adjacency
+     * index up to date on every addEdge.  (An undirected graph never needs
+     * one, since its in-neighbors are its neighbors.)
+     */
+    public MysteryUnweightedGraphImplementation(boolean directed, int N,
+            boolean trackInEdges) {
         adj = new ArrayList<List<Integer>>();
         undirected = !directed;
         for(int i = 0; i < N; i++) {
             adj.add(new ArrayList<Integer>());
         }
+        if(directed && trackInEdges) {
+            inAdj = new ArrayList<List<Integer>>();
+            for(int i = 0; i < N; i++) {
+                inAdj.add(new ArrayList<Integer>());
+            }
+        }
+    }
+    
+    /** Builds the reverse adjacency index of a directed graph in one pass over
+     * the edges, replacing any index already kept.  From then on addEdge keeps
+     * the index up to date.  Does nothing for an undirected graph.
+     */
+    public void buildInEdgeIndex() {
+        if(undirected) {
+            return;
+        }
+        int[] inDegree = new int[adj.size()];
+        for(List<Integer> edges : adj) {
+            for(int e : edges) {
+                inDegree[e]++;
+            }
+        }
+        inAdj = new ArrayList<List<Integer>>(adj.size());
+        for(int v = 0; v < adj.size(); v++) {
+            inAdj.add(new ArrayList<Integer>(inDegree[v]));
+        }
+        // Visiting sources in increasing order leaves every in-list sorted.
+        for(int v = 0; v < adj.size(); v++) {
+            for(int e : adj.get(v)) {
+                inAdj.get(e).add(v);
+            }
+        }
+    }
+    
+    /** Returns true if in-neighbors can be looked up without scanning every
+     * edge, i.e. if the graph is undirected or keeps a reverse index.
+     */
+    public boolean hasInEdgeIndex() {
+        return undirected || inAdj != null;
     }
     
     /** Adds a new vertex.
@@ -41,6 +105,9 @@ public class MysteryUnweightedGraphImplementation implements UnweightedGraph {
      */
     public int addVertex() {
         adj.add(new ArrayList<Integer>());
+        if(inAdj != null) {
+            inAdj.add(new ArrayList<Integer>());
+        }
         return adj.size() - 1;
     }
     
@@ -83,6 +150,10 @@ public class MysteryUnweightedGraphImplementation implements UnweightedGraph {
             return false;
         }
         edges.add(-i-1, end);
+        if(inAdj != null) {
+            List<Integer> in = inAdj.get(end);
+            in.add(-findEdge(in, begin)-1, begin);
+        }
         if(undirected && (begin != end)) {
             // We have to add the edge in the other direction too.
             //   The (begin == end) case is a self-loop; we there's no "other
@@ -97,6 +168,173 @@ public class MysteryUnweightedGraphImplementation implements UnweightedGraph {
         return true;
     }
     
+    /** Adds the edges (src[i], dst[i]) for i < count, as addEdge would.
+     * The batch is radix-sorted by source and then target, and each row it
+     * touches is merged with its new targets in one pass; the reverse index,
+     * if kept, is merged the same way.  Only the rows of vertices in the
+     * batch are visited, so a small batch costs little in a large graph.
+     * Every ID is checked before anything is added.
+     * @return the number of edges that were not already in the graph.
+     * @throws IndexOutOfBoundsException if count exceeds either array, or if
+     * any vertex ID is out of bounds.
+     */
+    public int addEdges(int[] src, int[] dst, int count) {
+        if(count < 0 || count > src.length || count > dst.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        int n = adj.size();
+        for(int i = 0; i < count; i++) {
+            if(src[i] < 0 || src[i] >= n || dst[i] < 0 || dst[i] >= n) {
+                throw new IndexOutOfBoundsException();
+            }
+        }
+        int[] from;
+        int[] to;
+        int m = count;
+        if(!undirected) {
+            from = Arrays.copyOf(src, count);
+            to = Arrays.copyOf(dst, count);
+        } else {
+            // Each edge goes into both rows, except for self-loops.
+            from = new int[2 * count];
+            to = new int[2 * count];
+            m = 0;
+            for(int i = 0; i < count; i++) {
+                from[m] = src[i];
+                to[m++] = dst[i];
+                if(src[i] != dst[i]) {
+                    from[m] = dst[i];
+                    to[m++] = src[i];
+                }
+            }
+        }
+        radixSort(to, from, m, n);
+        radixSort(from, to, m, n);
+        int[] fresh = new int[m];
+        List<Integer> merged = new ArrayList<Integer>();
+        // The new edges, in order of source and then target, for the index.
+        int[] newFrom = inAdj == null ? null : new int[m];
+        int[] newTo = inAdj == null ? null : new int[m];
+        int numNew = 0;
+        int added = 0;
+        int start = 0;
+        while(start < m) {
+            int v = from[start];
+            int end = start + 1;
+            while(end < m && from[end] == v) {
+                end++;
+            }
+            int k = mergeRow(adj.get(v), to, start, end, merged, fresh);
+            for(int j = 0; j < k; j++) {
+                // An undirected edge is in two rows but counts once.
+                if(!undirected || v <= fresh[j]) {
+                    added++;
+                }
+                if(inAdj != null) {
+                    newFrom[numNew] = v;
+                    newTo[numNew++] = fresh[j];
+                }
+            }
+            start = end;
+        }
+        // Sorting the new edges by target keeps each group in order of
+        // source, since they were listed that way.
+        radixSort(newTo, newFrom, numNew, n);
+        start = 0;
+        while(start < numNew) {
+            int v = newTo[start];
+            int end = start + 1;
+            while(end < numNew && newTo[end] == v) {
+                end++;
+            }
+            mergeRow(inAdj.get(v), newFrom, start, end, merged, fresh);
+            start = end;
+        }
+        return added;
+    }
+    
+    // Stably sorts the first m pairs (keys[i], values[i]), whose keys are
+    // vertex IDs below n, by key, in place.  An LSD radix sort over the
+    // digits of the key, so the work grows with the batch and the number of
+    // digits, not with the number of vertices.
+    private static void radixSort(int[] keys, int[] values, int m, int n) {
+        final int DIGIT_BITS = 11;
+        final int MASK = (1 << DIGIT_BITS) - 1;
+        if(m < 2) {
+            return;
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, n - 1));
+        int[] k = keys;
+        int[] v = values;
+        int[] kNext = new int[m];
+        int[] vNext = new int[m];
+        int[] counts = new int[1 << DIGIT_BITS];
+        for(int shift = 0; shift < bits; shift += DIGIT_BITS) {
+            Arrays.fill(counts, 0);
+            for(int i = 0; i < m; i++) {
+                counts[(k[i] >>> shift) & MASK]++;
+            }
+            int sum = 0;
+            for(int d = 0; d < counts.length; d++) {
+                int c = counts[d];
+                counts[d] = sum;
+                sum += c;
+            }
+            for(int i = 0; i < m; i++) {
+                int d = (k[i] >>> shift) & MASK;
+                kNext[counts[d]] = k[i];
+                vNext[counts[d]++] = v[i];
+            }
+            int[] swap = k;
+            k = kNext;
+            kNext = swap;
+            swap = v;
+            v = vNext;
+            vNext = swap;
+        }
+        if(k != keys) {
+            System.arraycopy(k, 0, keys, 0, m);
+            System.arraycopy(v, 0, values, 0, m);
+        }
+    }
+    
+    // Merges the sorted ids[start..end), which may repeat, into the sorted
+    // row in place, using merged as scratch, and copies the IDs that were not
+    // in the row yet to fresh.  Returns how many of those there were.
+    private static int mergeRow(List<Integer> row, int[] ids, int start, int end,
+            List<Integer> merged, int[] fresh) {
+        merged.clear();
+        int size = row.size();
+        int i = 0;
+        int k = 0;
+        int last = -1;
+        for(int j = start; j < end; j++) {
+            int u = ids[j];
+            if(u == last) {
+                continue;
+            }
+            last = u;
+            while(i < size && row.get(i) < u) {
+                merged.add(row.get(i++));
+            }
+            if(i < size && row.get(i) == u) {
+                merged.add(row.get(i++));
+            } else {
+                merged.add(u);
+                fresh[k++] = u;
+            }
+        }
+        if(k > 0) {
+            while(i < size) {
+                merged.add(row.get(i++));
+            }
+            // Refill the same list, so that views of the row stay live.
+            row.clear();
+            row.addAll(merged);
+        }
+        return k;
+    }
+    
     /** Checks whether an edge exists between two vertices.
      * In an undirected graph, this returns the same as hasEdge(end, begin).
      * @return true if there is an edge from begin to end.
@@ -123,12 +361,18 @@ public class MysteryUnweightedGraphImplementation implements UnweightedGraph {
         if(v < 0 || v >= adj.size()) {
             throw new IndexOutOfBoundsException();
         }
+        if(undirected) {
+            return adj.get(v).size();
+        }
+        if(inAdj != null) {
+            return inAdj.get(v).size();
+        }
         // To count the in-degree, we have to look for edges to v from *all*
         // vertices.  (Including v!  Self-loops are allowed.)
         int d = 0;
         for(List<Integer> edges : adj) {
-            for(Integer e : edges) {
-                if(e.equals(v)) {
+            for(int i = 0; i < edges.size(); i++) {
+                if(edges.get(i) == v) {
                     d++;
                 }
             }
@@ -176,6 +420,77 @@ public class MysteryUnweightedGraphImplementation implements UnweightedGraph {
         return new NeighborCollection(neighbors);
     }
     
+    /** Calls action once for each neighbor of the specified vertex, in
+     * increasing order.  Indexed reads unbox the stored IDs without creating
+     * an iterator.
+     */
+    public void forEachNeighbor(int v, IntConsumer action) {
+        List<Integer> neighbors = adj.get(v);
+        for(int i = 0; i < neighbors.size(); i++) {
+            action.accept(neighbors.get(i));
+        }
+    }
+    
+    /** Returns a primitive iterator over the neighbors of the specified
+     * vertex, in increasing order.
+     */
+    public PrimitiveIterator.OfInt neighborIterator(int v) {
+        List<Integer> neighbors = adj.get(v);
+        return new PrimitiveIterator.OfInt() {
+            private int i = 0;
+            public boolean hasNext() {
+                return i < neighbors.size();
+            }
+            public int nextInt() {
+                if(i >= neighbors.size()) {
+                    throw new NoSuchElementException();
+                }
+                return neighbors.get(i++);
+            }
+        };
+    }
+    
+    /** Copies the neighbors of the specified vertex into dst, in increasing
+     * order.
+     * @return the out-degree of v.
+     * @throws IndexOutOfBoundsException if dst is shorter than the out-degree.
+     */
+    public int copyNeighbors(int v, int[] dst) {
+        List<Integer> neighbors = adj.get(v);
+        int d = neighbors.size();
+        if(dst.length < d) {
+            throw new IndexOutOfBoundsException();
+        }
+        for(int i = 0; i < d; i++) {
+            dst[i] = neighbors.get(i);
+        }
+        return d;
+    }
+    
+    /** Returns an iterator over the in-neighbors of the specified vertex.
+     * In particular, the vertex u is included in the returned iterator's
+     * sequence if and only if there is an edge from u to v in the graph.
+     * Without a reverse index this scans every edge; see buildInEdgeIndex().
+     */
+    public Iterable<Integer> getInNeighbors(int v) {
+        if(v < 0 || v >= adj.size()) {
+            throw new IndexOutOfBoundsException();
+        }
+        if(undirected) {
+            return new NeighborCollection(adj.get(v));
+        }
+        if(inAdj != null) {
+            return new NeighborCollection(inAdj.get(v));
+        }
+        List<Integer> in = new ArrayList<Integer>();
+        for(int u = 0; u < adj.size(); u++) {
+            if(findEdge(adj.get(u), v) >= 0) {
+                in.add(u);
+            }
+        }
+        return new NeighborCollection(in);
+    }
+    
     /** Returns the number of vertices in the graph. */
     public int numVerts() {
         return adj.size();
@@ -208,5 +523,66 @@ public class MysteryUnweightedGraphImplementation implements UnweightedGraph {
     /** Removes all vertices and edges from the graph. */
     public void clear() {
         adj.clear();
+        if(inAdj != null) {
+            inAdj.clear();
+        }
+    }
+
+    /** Checks that addEdges leaves the same graph as a loop of addEdge, on
+     * random batches into directed graphs with and without the reverse index
+     * and into undirected graphs, and prints the time each takes.
+     * Usage: java MysteryUnweightedGraphImplementation [trials [seed]]
+     */
+    public static void main(String[] args) {
+        int trials = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        Random random = new Random(args.length > 1 ? Long.parseLong(args[1]) : 1);
+        long loopNanos = 0;
+        long batchNanos = 0;
+        int mismatches = 0;
+        for(int trial = 0; trial < trials; trial++) {
+            boolean directed = trial % 3 != 2;
+            boolean inEdges = trial % 3 == 1;
+            int n = 1 + random.nextInt(trial % 2 == 0 ? 20 : 3000);
+            MysteryUnweightedGraphImplementation loop =
+                    new MysteryUnweightedGraphImplementation(directed, n, inEdges);
+            MysteryUnweightedGraphImplementation batch =
+                    new MysteryUnweightedGraphImplementation(directed, n, inEdges);
+            // Several batches, so that later ones merge into full rows.
+            for(int round = 0; round < 4; round++) {
+                int m = random.nextInt(trial % 2 == 0 ? 60 : 20000);
+                int[] src = new int[m];
+                int[] dst = new int[m];
+                for(int i = 0; i < m; i++) {
+                    src[i] = random.nextInt(n);
+                    // Skewed towards low IDs, so that some edges repeat.
+                    dst[i] = random.nextInt(1 + random.nextInt(n));
+                }
+                long start = System.nanoTime();
+                int looped = 0;
+                for(int i = 0; i < m; i++) {
+                    if(loop.addEdge(src[i], dst[i])) {
+                        looped++;
+                    }
+                }
+                long middle = System.nanoTime();
+                int batched = batch.addEdges(src, dst);
+                batchNanos += System.nanoTime() - middle;
+                loopNanos += middle - start;
+                if(looped != batched || loop.numEdges() != batch.numEdges()) {
+                    mismatches++;
+                }
+            }
+            for(int v = 0; v < n; v++) {
+                if(!loop.adj.get(v).equals(batch.adj.get(v))
+                        || (inEdges && !loop.inAdj.get(v).equals(batch.inAdj.get(v)))) {
+                    mismatches++;
+                }
+            }
+        }
+        System.out.printf("%d trials, %d mismatches; addEdge loop %.1f ms, addEdges %.1f ms%n",
+                trials, mismatches, loopNanos / 1e6, batchNanos / 1e6);
+        if(mismatches > 0) {
+            System.exit(1);
+        }
     }
 }
@@ -0,0 +1,256 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+/**
+ * Loads a links file in the PathFinder TSV format (one "source TAB target" line
+ * per link, '#' comments and blank lines ignored) into a directed
+ * CompactUnweightedGraph using every core.
+ *   The file is split into byte ranges that start and end on line boundaries,
+ * and the ranges are tokenized on a fork-join pool in two passes: the first
+ * pass only counts the out-degree of every vertex, which fixes the CSR row
+ * offsets; the second pass tokenizes again and scatters each link into its
+ * row.  Finally every row is sorted and deduplicated once, again in parallel.
+ *   No per-link objects are kept between the passes, but the arrays are not
+ * free: the scatter pass fills a targets array with one entry per link line,
+ * deduplication packs it into a second, shorter one whenever lines repeat,
+ * and CompactUnweightedGraph.fromRows then builds the in-edge index beside
+ * both.  At its peak the loader holds roughly two targets arrays plus the
+ * in-index, along with the AtomicIntegerArray of degrees and a handful of
+ * other int arrays with one entry per vertex.
+ */
+public class ParallelEdgeLoader {
+    // Target size of one byte range.  Several ranges per thread keep the pool
+    // balanced when some parts of the file are denser than others.
+    private static final long RANGE_SIZE = 16L << 20;
+
+    private final ArticleDictionary articles;
+    private final int numVerts;
+    private final int parallelism;
+
+    /** Constructs a loader that resolves titles through articles, with one
+     * thread per core.
+     */
+    public ParallelEdgeLoader(ArticleDictionary articles) {
+        this(articles, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Constructs a loader that uses the specified number of threads. */
+    public ParallelEdgeLoader(ArticleDictionary articles, int parallelism) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.articles = articles;
+        this.numVerts = articles.size();
+        this.parallelism = parallelism;
+    }
+
+    /** Reads edgeFile and returns the graph it describes, with in-edges.
+     * @throws IOException if the file cannot be read or a link names an
+     * article that is not in the dictionary.
+     */
+    public CompactUnweightedGraph load(String edgeFile) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try(FileChannel channel = FileChannel.open(Paths.get(edgeFile),
+                StandardOpenOption.READ)) {
+            List<MappedByteBuffer> ranges = split(channel);
+
+            // Pass 1: count degrees.
+            AtomicIntegerArray degree = new AtomicIntegerArray(numVerts);
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for(MappedByteBuffer range : ranges) {
+                tasks.add(() -> {
+                    tokenize(edgeFile, range.duplicate(),
+                            (begin, end) -> degree.incrementAndGet(begin));
+                    return null;
+                });
+            }
+            runAll(pool, tasks);
+            int[] offsets = new int[numVerts + 1];
+            for(int v = 0; v < numVerts; v++) {
+                offsets[v + 1] = offsets[v] + degree.get(v);
+            }
+
+            // Pass 2: scatter every link into its row.  The degree counters
+            // are reused as per-row fill cursors.
+            int[] targets = new int[offsets[numVerts]];
+            for(int v = 0; v < numVerts; v++) {
+                degree.set(v, offsets[v]);
+            }
+            tasks.clear();
+            for(MappedByteBuffer range : ranges) {
+                tasks.add(() -> {
+                    tokenize(edgeFile, range.duplicate(),
+                            (begin, end) -> targets[degree.getAndIncrement(begin)] = end);
+                    return null;
+                });
+            }
+            runAll(pool, tasks);
+
+            // Sort and deduplicate each row in place, then squeeze the gaps.
+            int[] unique = new int[numVerts];
+            tasks.clear();
+            int chunk = Math.max(1, (numVerts + parallelism * 4 - 1) / (parallelism * 4));
+            for(int lo = 0; lo < numVerts; lo += chunk) {
+                int from = lo;
+                int to = Math.min(numVerts, lo + chunk);
+                tasks.add(() -> {
+                    for(int v = from; v < to; v++) {
+                        unique[v] = sortRow(targets, offsets[v], offsets[v + 1]);
+                    }
+                    return null;
+                });
+            }
+            runAll(pool, tasks);
+            int[] packed = new int[numVerts + 1];
+            for(int v = 0; v < numVerts; v++) {
+                packed[v + 1] = packed[v] + unique[v];
+            }
+            int[] packedTargets = targets;
+            if(packed[numVerts] != targets.length) {
+                packedTargets = new int[packed[numVerts]];
+                for(int v = 0; v < numVerts; v++) {
+                    System.arraycopy(targets, offsets[v], packedTargets, packed[v], unique[v]);
+                }
+            }
+            return CompactUnweightedGraph.fromRows(packed, packedTargets, true);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Sorts targets[from..to) and moves its distinct values to the front.
+    // Returns the number of distinct values.
+    private static int sortRow(int[] targets, int from, int to) {
+        if(from == to) {
+            return 0;
+        }
+        Arrays.sort(targets, from, to);
+        int write = from + 1;
+        for(int i = from + 1; i < to; i++) {
+            if(targets[i] != targets[write - 1]) {
+                targets[write++] = targets[i];
+            }
+        }
+        return write - from;
+    }
+
+    // Splits the file into mapped ranges of about RANGE_SIZE bytes, moving
+    // every split point forward to just past the next newline.
+    private static List<MappedByteBuffer> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<MappedByteBuffer> ranges = new ArrayList<MappedByteBuffer>();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long start = 0;
+        while(start < size) {
+            long end = Math.min(size, start + RANGE_SIZE);
+            while(end < size) {
+                probe.clear();
+                int n = channel.read(probe, end);
+                int i = 0;
+                while(i < n && probe.get(i) != '\n') {
+                    i++;
+                }
+                end += i;
+                if(i < n) {
+                    end++;
+                    break;
+                }
+            }
+            ranges.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+            start = end;
+        }
+        return ranges;
+    }
+
+    private interface EdgeSink {
+        void accept(int begin, int end);
+    }
+
+    // Tokenizes every line of range and passes each link's vertex IDs to sink.
+    private void tokenize(String edgeFile, ByteBuffer range, EdgeSink sink) {
+        int limit = range.limit();
+        int lineStart = 0;
+        while(lineStart < limit) {
+            int tab = -1;
+            int lineEnd = lineStart;
+            while(lineEnd < limit && range.get(lineEnd) != '\n') {
+                if(tab < 0 && range.get(lineEnd) == '\t') {
+                    tab = lineEnd;
+                }
+                lineEnd++;
+            }
+            int textEnd = lineEnd;
+            if(textEnd > lineStart && range.get(textEnd - 1) == '\r') {
+                textEnd--;
+            }
+            if(!isSkipped(range, lineStart, textEnd)) {
+                if(tab < 0) {
+                    throw new UncheckedIOException(new IOException(edgeFile
+                            + ": malformed link line"));
+                }
+                int begin = resolve(edgeFile, range, lineStart, tab);
+                int end = resolve(edgeFile, range, tab + 1, textEnd);
+                sink.accept(begin, end);
+            }
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    // Comment lines and lines of only whitespace carry no link.
+    private static boolean isSkipped(ByteBuffer range, int from, int to) {
+        if(from < to && range.get(from) == '#') {
+            return true;
+        }
+        for(int i = from; i < to; i++) {
+            if((range.get(i) & 0xff) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Looks the title up straight from the mapped bytes; a String is only
+    // built for the error message.
+    private int resolve(String edgeFile, ByteBuffer range, int from, int to) {
+        int id = articles.find(range, from, to);
+        if(id < 0) {
+            byte[] title = new byte[to - from];
+            range.get(from, title);
+            throw new UncheckedIOException(new IOException(edgeFile
+                    + ": unknown article in link: "
+                    + new String(title, StandardCharsets.UTF_8)));
+        }
+        return id;
+    }
+
+    // Runs the tasks on the pool and rethrows the first failure.
+    private static void runAll(ForkJoinPool pool, List<Callable<Void>> tasks)
+            throws IOException {
+        for(Future<Void> f : pool.invokeAll(tasks)) {
+            try {
+                f.get();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while loading links", e);
+            } catch(ExecutionException e) {
+                if(e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+}
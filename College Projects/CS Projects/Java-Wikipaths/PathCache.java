@@ -0,0 +1,188 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+/**
+ * A bounded, thread-safe least-recently-used cache of shortest-path results,
+ * keyed by (origin, via, target) vertex IDs, with via = NO_VIA for plain
+ * queries.  Paths are stored as compact int[] vertex sequences; "no path"
+ * answers are cached too, as the NO_PATH array, or for a via query as the
+ * sentinel of the leg that has no path.
+ *   The cache is bounded both by entry count and by an estimate of the heap it
+ * uses, and evicts least-recently-used entries until both limits hold.  It is
+ * tied to one graph: bind() with a different graph (e.g. a reloaded snapshot)
+ * drops every entry.  Hit, miss, eviction and invalidation counters are kept
+ * in LongAdders so that concurrent readers do not contend on them.
+ */
+public class PathCache {
+    /** The via value of a query without an intermediate vertex. */
+    public static final int NO_VIA = -1;
+    /** The cached value of a query whose target is unreachable. */
+    public static final int[] NO_PATH = new int[0];
+    /** The cached value of a via query with no path from origin to via. */
+    public static final int[] NO_FIRST_LEG = new int[0];
+    /** The cached value of a via query with no path from via to target. */
+    public static final int[] NO_SECOND_LEG = new int[0];
+
+    // Rough heap cost of one entry besides the path itself: the map entry,
+    // the key object and the int[] header.
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, int[]> map;
+    private long bytes;
+    private Object graph;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private static final class Key {
+        final int origin;
+        final int via;
+        final int target;
+        Key(int origin, int via, int target) {
+            this.origin = origin;
+            this.via = via;
+            this.target = target;
+        }
+        public boolean equals(Object o) {
+            if(!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return origin == k.origin && via == k.via && target == k.target;
+        }
+        public int hashCode() {
+            return (origin * 31 + via) * 0x9e3779b1 + target;
+        }
+    }
+
+    /** A point-in-time copy of the cache counters. */
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long invalidations;
+        public final int entries;
+        public final long bytes;
+
+        Stats(long hits, long misses, long evictions, long invalidations,
+                int entries, long bytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        public String toString() {
+            return String.format("path cache: %d hits, %d misses (%.1f%% hit rate), %d evictions, %d invalidations, %d entries, %d bytes",
+                    hits, misses, 100 * hitRate(), evictions, invalidations, entries, bytes);
+        }
+    }
+
+    /** Constructs a cache holding at most maxEntries paths and about maxBytes
+     * bytes of heap.
+     */
+    public PathCache(int maxEntries, long maxBytes) {
+        if(maxEntries < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("cache limits must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.map = new LinkedHashMap<Key, int[]>(16, 0.75f, true);
+    }
+
+    /** Ties the cache to the specified graph.  If it was tied to a different
+     * graph, every entry is dropped.
+     */
+    public synchronized void bind(Object graph) {
+        if(this.graph != graph) {
+            if(!map.isEmpty()) {
+                invalidateAll();
+            }
+            this.graph = graph;
+        }
+    }
+
+    /** Drops every entry. */
+    public synchronized void invalidateAll() {
+        map.clear();
+        bytes = 0;
+        invalidations.increment();
+    }
+
+    /** Returns true if a cached value says the query has no path, i.e. it is
+     * NO_PATH or one of the leg sentinels.
+     */
+    public static boolean isNoPath(int[] path) {
+        return path != null && path.length == 0;
+    }
+
+    /** Returns the cached path for the query, NO_PATH or a leg sentinel if
+     * the query is cached as unreachable, or null on a miss.  The returned array must not be
+     * modified.
+     */
+    public int[] get(int origin, int via, int target) {
+        int[] path;
+        synchronized(this) {
+            path = map.get(new Key(origin, via, target));
+        }
+        if(path == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return path;
+    }
+
+    /** Caches the result of a query; a null path is cached as NO_PATH.  The
+     * cache keeps the array, so the caller must not modify it afterwards.
+     */
+    public void put(int origin, int via, int target, int[] path) {
+        if(path == null) {
+            path = NO_PATH;
+        }
+        long cost = cost(path);
+        if(cost > maxBytes) {
+            return;
+        }
+        synchronized(this) {
+            int[] old = map.put(new Key(origin, via, target), path);
+            if(old != null) {
+                bytes -= cost(old);
+            }
+            bytes += cost;
+            while(map.size() > maxEntries || bytes > maxBytes) {
+                Map.Entry<Key, int[]> eldest = map.entrySet().iterator().next();
+                bytes -= cost(eldest.getValue());
+                map.remove(eldest.getKey());
+                evictions.increment();
+            }
+        }
+    }
+
+    private static long cost(int[] path) {
+        return ENTRY_OVERHEAD + 4L * path.length;
+    }
+
+    /** Returns a copy of the counters. */
+    public Stats stats() {
+        int entries;
+        long b;
+        synchronized(this) {
+            entries = map.size();
+            b = bytes;
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(),
+                invalidations.sum(), entries, b);
+    }
+}
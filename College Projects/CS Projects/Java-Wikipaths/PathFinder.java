@@ -1,233 +1,630 @@
 import java.util.*;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 
 public class PathFinder {
 
   private UnweightedGraph graph;
-  private Map<String, Integer> articles;
+  private ArticleTitles articles;
+  private ArticleDictionary dictionary;
   private List<String> solution;
-  private Queue<Integer> path;
-  private List<Integer> visited;
+  private PathSearch search;
+  private ViaPathSearch viaSearch;
+  private ViaPathSearch.Result viaResult;
+  private ShardedSearch sharded;
+  private boolean dump;
+  private boolean decodeTitles;
+  private PathCache cache;
+  private ShortestPathEnumerator enumerator;
+  private ReachabilityIndex reach;
+  private LandmarkIndex landmarks;
+  private DistanceOracle oracle;
+  private SearchMetrics metrics;
+  private QueryTrace trace;
 
   public PathFinder(String nodeFile, String edgeFile) {
-      graph = new MysteryUnweightedGraphImplementation (true);
-      this.articles = new HashMap<String, Integer>();
+      graph = new CompactUnweightedGraph.Builder(0).build();
+      this.dictionary = new ArticleDictionary();
+      this.articles = dictionary;
       this.solution = new ArrayList<String>();
-      this.path = new LinkedList<Integer>();
-      this.visited  = new ArrayList<Integer>();
+      // a gzipped pair is streamed, as GraphSnapshot.compile does. Streaming only changes how the files are read, never the titles
+      this.dump = nodeFile.endsWith(".gz") || edgeFile.endsWith(".gz");
+      this.cache = new PathCache(100000, 64L << 20);
   }
 
-  // create a map that stores vertex and the number they correspond with. The number starts with 0.
-  public Map<String, Integer> getMap(String nodeFile){
-      try{
-          Scanner scanner = new Scanner(new File(nodeFile));
-          int n = 0;
-          while (scanner.hasNext()) {
-              String next = scanner.nextLine();
+  // decode percent-encoded titles such as %C3%85land in both files, gzipped or not. Off by default; call before getMap, and look articles up by their decoded titles afterwards
+  public void setDecodeTitles(boolean decode) {
+      this.decodeTitles = decode;
+  }
+
+  // create a dictionary that stores vertex and the number they correspond with. The number starts with 0. Dumps, and files whose titles are decoded, are streamed
+  public ArticleDictionary getMap(String nodeFile){
+      if (dump || decodeTitles) {
+          try {
+              articles = dictionary;
+              StreamingDumpLoader loader = new StreamingDumpLoader(dictionary);
+              loader.setDecodeTitles(decodeTitles);
+              return loader.loadArticles(nodeFile);
+          }
+          catch (IOException e) {
+              System.err.println("nodeFile could not be read: " + e.getMessage());
+              return dictionary;
+          }
+      }
+      // read as UTF-8 whatever the platform charset, since ParallelEdgeLoader matches the UTF-8 bytes of the links file against these titles
+      try (BufferedReader reader = Files.newBufferedReader(Paths.get(nodeFile), StandardCharsets.UTF_8)) {
+          String next;
+          while ((next = reader.readLine()) != null) {
               if (!next.startsWith("#") && next.trim().length() > 0) {
-                  articles.put(next, n);
-                  n++; 
+                  dictionary.add(next);
                   //System.out.println(next);
               }
           }
-          scanner.close();
-          //System.out.println(articles.get("Fish"));
-          return articles;
+          dictionary.trimToSize();
+          articles = dictionary;
+          //System.out.println(articles.find("Fish"));
+          return dictionary;
       } 
-      catch (FileNotFoundException e) {
+      catch (NoSuchFileException e) {
           System.err.println("nodeFile not found.");
-          return articles;
+          return dictionary;
       }
-  }
-
-  // return the key by value from the articles map
-  public String getKeyByValue(Map<String, Integer> map, int value) {
-      String result = " ";
-      for (Map.Entry<String, Integer> e : map.entrySet()) {
-          if (e.getValue().equals(value)) {
-              result = e.getKey();
-              return result;
-          }
+      catch (IOException e) {
+          System.err.println("nodeFile could not be read: " + e.getMessage());
+          return dictionary;
       }
-      return result;
   }
 
-  // create an adjacent list with all the edges
+  // create an adjacent list with all the edges. The edge file is tokenized in parallel byte ranges and packed into a CSR graph, or streamed in two passes if it is part of a dump
   public UnweightedGraph getAdjacencyList(String edgeFile) {
       try{
-          Scanner scanner = new Scanner(new File(edgeFile));
-          for (int i = 0; i < articles.size(); i++) {
-              graph.addVertex();
+          if (dump || decodeTitles) {
+              StreamingDumpLoader loader = new StreamingDumpLoader(dictionary);
+              loader.setProgress(System.err);
+              loader.setDecodeTitles(decodeTitles);
+              graph = loader.loadLinks(edgeFile);
+          } else {
+              graph = new ParallelEdgeLoader(dictionary).load(edgeFile);
           }
-          while (scanner.hasNext()) {
-              String next = scanner.nextLine();
-              //System.out.println(next);
-              if (!next.startsWith("#") && next.trim().length() > 0) {
-                  String[] eachLine = next.split("\t");
-                  //System.out.println(eachLine[0] + " " + eachLine[1]);
-                  graph.addEdge(articles.get(eachLine[0]), articles.get(eachLine[1]));
-              }
-          }
-          scanner.close();
+          closeShards();
+          search = new BidirectionalSearch(graph);
+          closeViaSearch();
+          enumerator = null;
+          reach = null;
+          landmarks = null;
+          oracle = null;
+          cache.bind(graph);
           return graph;
       }
-      catch (FileNotFoundException e) {
+      catch (NoSuchFileException e) {
           System.err.println("edgeFile not found.");
           return graph;
       }
+      catch (IOException e) {
+          System.err.println("edgeFile could not be read: " + e.getMessage());
+          return graph;
+      }
   }
 
-  // generate a list of all the neighbors of a vertice
-  public List<Integer> getNeighborsList(int v) {
-        List<Integer> neighbors = new ArrayList<Integer>();
-        Iterator<Integer> neighborsIterator = this.graph.getNeighbors(v).iterator();
-        while (neighborsIterator.hasNext()) {
-            neighbors.add(neighborsIterator.next());
-        }
-        return neighbors;
+  // load both the articles and the links from a snapshot compiled by GraphSnapshot. The graph and the titles are served from the memory-mapped file, so nothing is parsed or copied
+  public UnweightedGraph getSnapshot(String snapshotFile) {
+      try{
+          GraphSnapshot snapshot = GraphSnapshot.open(snapshotFile);
+          articles = snapshot;
+          graph = snapshot.graph();
+          closeShards();
+          search = new BidirectionalSearch(graph);
+          closeViaSearch();
+          enumerator = null;
+          reach = null;
+          landmarks = null;
+          oracle = null;
+          cache.bind(graph);
+          return graph;
+      }
+      catch (IOException e) {
+          System.err.println("snapshotFile could not be read: " + e.getMessage());
+          return graph;
+      }
+  }
+
+  // load the landmark distances saved by LandmarkIndex next to the graph and switch to the goal-directed A* search that uses them
+  public LandmarkIndex getLandmarks(String landmarkFile) {
+      try{
+          LandmarkIndex index = LandmarkIndex.load(landmarkFile);
+          search = new LandmarkSearch(graph, index);
+          closeViaSearch();
+          viaSearch = new ViaPathSearch(new LandmarkSearch(graph, index), new LandmarkSearch(graph, index));
+          landmarks = index;
+          return landmarks;
+      }
+      catch (IOException | IllegalArgumentException e) {
+          System.err.println("landmarkFile could not be used: " + e.getMessage());
+          return null;
+      }
   }
 
-  //get the solution path by using hasEdge(). Iterate backward in the visited list, find which integer that cur has edge with, and repeat the same procedure until going back to the starting vertex
-  public List<String> getTheSolution1(int origin, int end) {
-      Stack<Integer> intSolution = new Stack<Integer>();
-      intSolution.push(end);
-      int cur = end;
-      int index = -1;
-      for (int i = 0; i < this.visited.size(); i++) {
-          if (this.visited.get(i) == end) {
-              index = i;
+  // partition the graph across worker processes on this machine and answer shortest-path queries with the level-synchronous search between them, which finds the same paths as the bidirectional search
+  public ShardedSearch useShards(int shards) throws IOException {
+      closeShards();
+      sharded = new ShardedSearch(graph, shards, ShardedSearch.Partition.HASH);
+      search = sharded;
+      return sharded;
+  }
+
+  // stop the worker processes started by useShards, if any, and go back to the bidirectional search
+  public void closeShards() {
+      if (sharded != null) {
+          sharded.close();
+          sharded = null;
+          search = new BidirectionalSearch(graph);
+      }
+  }
+
+  // stop the helper thread of the via-node engine before it is replaced
+  private void closeViaSearch() {
+      if (viaSearch != null) {
+          viaSearch.close();
+          viaSearch = null;
+      }
+  }
+
+  // load the strongly connected components and interval labels saved by ReachabilityIndex next to the graph, so that unreachable pairs are answered without a search
+  public ReachabilityIndex getReachability(String reachFile) {
+      try{
+          ReachabilityIndex index = ReachabilityIndex.load(reachFile);
+          if (index.numVerts() != graph.numVerts()) {
+              System.err.println("reachFile is for a different graph.");
+              return null;
           }
+          reach = index;
+          return reach;
       }
-      while (cur != origin) {
-          for (int j = 0; j < index; j++) {
-              if (graph.hasEdge(this.visited.get(j), cur)) {
-                  intSolution.push(this.visited.get(j));
-                  cur = this.visited.get(j);
-                  index = j;
-              }
+      catch (IOException e) {
+          System.err.println("reachFile could not be read: " + e.getMessage());
+          return null;
+      }
+  }
+
+  // build the reachability index for the loaded graph in memory. One linear pass, which pays for itself after the first unreachable query
+  public ReachabilityIndex buildReachability() {
+      reach = ReachabilityIndex.build(graph);
+      return reach;
+  }
+
+  // load the pruned landmark labels saved by DistanceOracle next to the graph, so that getDistance answers by merging two short label lists instead of searching
+  public DistanceOracle getDistanceOracle(String distFile) {
+      try{
+          DistanceOracle index = DistanceOracle.load(distFile);
+          if (index.numVerts() != graph.numVerts()) {
+              System.err.println("distFile is for a different graph.");
+              return null;
           }
+          oracle = index;
+          return oracle;
       }
-      while (!intSolution.isEmpty()) {
-          this.solution.add(getKeyByValue(articles, intSolution.pop()));
+      catch (IOException e) {
+          System.err.println("distFile could not be read: " + e.getMessage());
+          return null;
       }
-      //System.out.println(solution);
-      return this.solution;
   }
 
+  // the number of clicks from node1 to node2, or -1 if there is no path. Answered by the distance oracle in microseconds when one is loaded, and by a search otherwise
+  public int getDistance(String node1, String node2) {
+      int origin = findArticle(node1);
+      int end = findArticle(node2);
+      if (origin < 0 || end < 0) {
+          return -1;
+      }
+      if (oracle != null) {
+          return oracle.distance(origin, end);
+      }
+      if (search == null) {
+          search = new BidirectionalSearch(graph);
+      }
+      int[] intSolution = search.findPath(origin, end);
+      return intSolution == null ? -1 : intSolution.length - 1;
+  }
+
+  // generate a list of all the neighbors of a vertice. The neighbors are copied out in one bulk read instead of going through a boxing iterator
+  public List<Integer> getNeighborsList(int v) {
+        int[] ids = new int[this.graph.getDegree(v)];
+        int d = this.graph.copyNeighbors(v, ids);
+        List<Integer> neighbors = new ArrayList<Integer>(d);
+        for (int i = 0; i < d; i++) {
+            neighbors.add(ids[i]);
+        }
+        return neighbors;
+  }
+
+  // record what every shortest-path query does (expanded vertices, scanned edges, frontier sizes, short-circuits, wall time) into histograms that can be printed or read over JMX. Until this is called queries record nothing
+  public SearchMetrics enableMetrics() {
+      if (metrics == null) {
+          metrics = new SearchMetrics(articles);
+          trace = new QueryTrace();
+      }
+      return metrics;
+  }
+
+  // find the shortest path with the bidirectional search engine, then turn the vertex ids back into article names
   public List<String> getShortestPath(String node1, String node2) {
-      int origin = articles.get(node1); 
-      int end = articles.get(node2);
-      this.path.add(origin);
-      this.visited.add(origin);
-
-      while (!this.path.isEmpty()) {
-          int cur = this.path.peek();
-          if (cur == end) {
-              return getTheSolution1(origin, end);
-          }
-          cur = this.path.poll();
-          List<Integer> neighbors = getNeighborsList(cur);
-          for (int i = 0; i < neighbors.size(); i++) {
-              if (!this.visited.contains(neighbors.get(i))) {
-                  this.visited.add(neighbors.get(i));
-                  this.path.add(neighbors.get(i));
+      long began = System.nanoTime();
+      this.solution.clear();
+      int origin = findArticle(node1); 
+      int end = findArticle(node2);
+      if (origin < 0 || end < 0) {
+          return this.solution;
+      }
+      if (search == null) {
+          search = new BidirectionalSearch(graph);
+      }
+      search.setTrace(trace);
+      if (trace != null) {
+          trace.begin(origin, end);
+      }
+      // popular pairs repeat constantly, so answer from the cache when we can
+      cache.bind(graph);
+      int[] intSolution = cache.get(origin, PathCache.NO_VIA, end);
+      if (intSolution != null && trace != null) {
+          trace.shortCircuit(QueryTrace.ShortCircuit.CACHE);
+      }
+      if (intSolution == null) {
+          // a pair in components that cannot reach each other has no path, and the index knows that without exploring anything
+          if (reach != null && !reach.reachable(origin, end)) {
+              intSolution = PathCache.NO_PATH;
+              if (trace != null) {
+                  trace.shortCircuit(QueryTrace.ShortCircuit.REACHABILITY);
               }
           }
+          else {
+              intSolution = search.findPath(origin, end);
+          }
+          cache.put(origin, PathCache.NO_VIA, end, intSolution);
+      }
+      endTrace(intSolution, began);
+      if (intSolution == null || PathCache.isNoPath(intSolution)) {
+          //System.out.println(this.solution);
+          System.out.println("There is no path between these two vertex!");
+          return this.solution;
+      }
+      for (int i = 0; i < intSolution.length; i++) {
+          this.solution.add(articles.title(intSolution[i]));
       }
-      //System.out.println(this.solution);
-      System.out.println("There is no path between these two vertex!");
       return this.solution;
   }
 
+  // answer every query in queryFile ("-" for stdin) concurrently against the loaded graph, with the landmark and reachability indexes when they are loaded, print the results in input order and a throughput summary at the end
+  public BatchQueryRunner.Summary runBatch(String queryFile) throws IOException {
+      BatchQueryRunner runner = new BatchQueryRunner(graph, articles);
+      cache.bind(graph);
+      runner.setCache(cache);
+      runner.setReachability(reach);
+      runner.setLandmarks(landmarks);
+      runner.setMetrics(metrics);
+      BufferedReader in;
+      if (queryFile.equals("-")) {
+          in = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+      }
+      else {
+          in = new BufferedReader(new InputStreamReader(new FileInputStream(queryFile), "UTF-8"));
+      }
+      PrintStream out = new PrintStream(new BufferedOutputStream(System.out, 1 << 16), false, "UTF-8");
+      BatchQueryRunner.Summary summary = runner.run(in, out);
+      in.close();
+      System.err.println(summary);
+      System.err.println(cache.stats());
+      return summary;
+  }
+
+  // hit, miss and eviction counters of the path cache, for dashboards
+  public PathCache.Stats getCacheStats() {
+      return cache.stats();
+  }
+
   public int getShortestPathLength(String node1, String node2) {
       //System.out.println(this.solution.size()-1);
       return this.solution.size()-1;
   }
 
-  // return a solution path when user inputs an intermediate vertice. This method uses getShortestPath(String node1, String node2) to find out if there is a path between origin and intermediate, and intermediate and end. If so, combine the two paths and return it
-  public List<String> getTheSolution2 (String origin, String intermediate, String end) {
-      Boolean intermediateEnd = false;
-      Boolean originIntermediate = false;
-      this.path.clear();
-      this.visited.clear();
-
-      List<String> intermediateEndList = new ArrayList<String>(getShortestPath(intermediate, end));
-      if (!intermediateEndList.isEmpty()) {
-          intermediateEnd = true;
-          this.solution.clear();
-          this.path.clear();
-          this.visited.clear();
+  // find the shortest path from node1 to node2 through intermediateNode. Both legs are searched at the same time by the via-node engine, and the result says which leg failed instead of printing it
+  public ViaPathSearch.Result getViaPath(String node1, String intermediateNode, String node2) {
+      long began = System.nanoTime();
+      int origin = findArticle(node1); 
+      int end = findArticle(node2);
+      int intermediate = findArticle(intermediateNode);
+      // a leg with an unknown article at either end has no path
+      if (origin < 0 || intermediate < 0) {
+          return new ViaPathSearch.Result(null, -1, -1, ViaPathSearch.Leg.ORIGIN_TO_VIA);
       }
-      List<String> originIntermediateList = new ArrayList<String>(getShortestPath(origin, intermediate));
-      if (!originIntermediateList.isEmpty()) {
-          originIntermediate = true;
-          this.solution.clear();
-          this.path.clear();
-          this.visited.clear();
+      if (end < 0) {
+          return new ViaPathSearch.Result(null, -1, -1, ViaPathSearch.Leg.VIA_TO_TARGET);
+      }
+      if (trace != null) {
+          trace.begin(origin, end);
       }
-      if (intermediateEnd == true && originIntermediate == true) {
-          this.solution = originIntermediateList;
-          for (int i = 1; i < intermediateEndList.size(); i++) {
-              this.solution.add(intermediateEndList.get(i));
+      ViaPathSearch.Result result = searchVia(origin, intermediate, end);
+      endTrace(result.path, began);
+      return result;
+  }
+
+  // the via query behind getViaPath and getShortestPath: the reachability index first, then both legs at once, recorded into the trace the caller began
+  private ViaPathSearch.Result searchVia(int origin, int intermediate, int end) {
+      if (reach != null && !reach.reachable(origin, intermediate)) {
+          if (trace != null) {
+              trace.shortCircuit(QueryTrace.ShortCircuit.REACHABILITY);
           }
-          //System.out.println(this.solution);
-          return this.solution;
+          return new ViaPathSearch.Result(null, -1, -1, ViaPathSearch.Leg.ORIGIN_TO_VIA);
       }
-      //System.out.println(this.solution);
-      System.out.println("Sorry, no such path exist");
-      return this.solution;
+      if (reach != null && !reach.reachable(intermediate, end)) {
+          if (trace != null) {
+              trace.shortCircuit(QueryTrace.ShortCircuit.REACHABILITY);
+          }
+          return new ViaPathSearch.Result(null, -1, -1, ViaPathSearch.Leg.VIA_TO_TARGET);
+      }
+      if (viaSearch == null) {
+          viaSearch = new ViaPathSearch(graph);
+      }
+      viaSearch.setTrace(trace);
+      return viaSearch.findPath(origin, intermediate, end);
   }
 
+  // find the shortest path from node1 to node2 through intermediateNode and keep the whole result, so that getViaResult can tell which leg failed without searching again
   public List<String> getShortestPath(String node1, String intermediateNode, String node2) {
-      int origin = articles.get(node1); 
-      int end = articles.get(node2);
-      int intermediate = articles.get(intermediateNode);
-      boolean reachIntermediate = false;
-
-      this.path.add(origin);
-      this.visited.add(origin);
-
-      while (!this.path.isEmpty()) {
-          int cur = this.path.peek();
-          if (this.visited.contains(end) && reachIntermediate == true) {
-              return getTheSolution2(node1, intermediateNode, node2);
-          }
-          cur = this.path.poll();
-          List<Integer> neighbors = getNeighborsList(cur);
-          for (int i = 0; i < neighbors.size(); i++) {
-              if (!this.visited.contains(neighbors.get(i))) {
-                  this.visited.add(neighbors.get(i));
-                  this.path.add(neighbors.get(i));
-                  if (neighbors.get(i) == intermediate) {
-                      reachIntermediate = true;
-                  }
-              }
+      long began = System.nanoTime();
+      int origin = articles.find(node1); 
+      int end = articles.find(node2);
+      int intermediate = articles.find(intermediateNode);
+      if (origin < 0 || end < 0 || intermediate < 0) {
+          // getViaPath reports the unknown article and says which leg it breaks
+          this.viaResult = getViaPath(node1, intermediateNode, node2);
+          this.solution.clear();
+          return this.solution;
+      }
+      if (trace != null) {
+          trace.begin(origin, end);
+      }
+      cache.bind(graph);
+      int[] intSolution = cache.get(origin, intermediate, end);
+      if (intSolution != null && intSolution != PathCache.NO_PATH && trace != null) {
+          trace.shortCircuit(QueryTrace.ShortCircuit.CACHE);
+      }
+      // a failed query is cached with the leg that failed, so only an answer cached without one is searched again
+      if (intSolution == PathCache.NO_FIRST_LEG) {
+          this.viaResult = new ViaPathSearch.Result(null, -1, -1, ViaPathSearch.Leg.ORIGIN_TO_VIA);
+          intSolution = null;
+      }
+      else if (intSolution == PathCache.NO_SECOND_LEG) {
+          this.viaResult = new ViaPathSearch.Result(null, -1, -1, ViaPathSearch.Leg.VIA_TO_TARGET);
+          intSolution = null;
+      }
+      else if (intSolution == null || intSolution == PathCache.NO_PATH) {
+          this.viaResult = searchVia(origin, intermediate, end);
+          intSolution = this.viaResult.path;
+          if (intSolution != null) {
+              cache.put(origin, intermediate, end, intSolution);
+          }
+          else if (this.viaResult.unreachableLeg == ViaPathSearch.Leg.ORIGIN_TO_VIA) {
+              cache.put(origin, intermediate, end, PathCache.NO_FIRST_LEG);
+          }
+          else {
+              cache.put(origin, intermediate, end, PathCache.NO_SECOND_LEG);
+          }
+      }
+      else {
+          // a shortest first leg reaches the intermediate article only once, at its end
+          int firstLeg = 0;
+          while (intSolution[firstLeg] != intermediate) {
+              firstLeg++;
+          }
+          this.viaResult = new ViaPathSearch.Result(intSolution, firstLeg, intSolution.length - 1 - firstLeg, ViaPathSearch.Leg.NONE);
+      }
+      endTrace(intSolution, began);
+      this.solution.clear();
+      if (intSolution != null) {
+          for (int i = 0; i < intSolution.length; i++) {
+              this.solution.add(articles.title(intSolution[i]));
           }
       }
-      System.out.println("There is no path between these two vertex!");
       return this.solution;
   }
 
-  public static void main(String[] args) { 
-      // doesn't take in parentheses. Type \ in front of each parenthesis. 
-      String nodeFile = args[0];
-      String edgeFile = args[1];
-      String startVertex = args[2];
+  // finish the trace of a query that took the time since began and found path, and add it to the metrics
+  private void endTrace(int[] path, long began) {
+      if (trace != null) {
+          boolean found = path != null && !PathCache.isNoPath(path);
+          trace.end(found ? path.length - 1 : -1, System.nanoTime() - began);
+          metrics.record(trace);
+      }
+  }
 
-      PathFinder path = new PathFinder(nodeFile, edgeFile);
-      path.getMap(nodeFile);
-      path.getAdjacencyList(edgeFile);
+  // the full result of the last query through an intermediate article, including which leg had no path
+  public ViaPathSearch.Result getViaResult() {
+      return this.viaResult;
+  }
 
-      if (args.length == 4) {
-          String endVertex = args[3];
+  // count every shortest path from node1 to node2 on the breadth-first DAG. Hub-heavy pairs can have more than a long holds, so the count stops at ShortestPathEnumerator.SATURATED
+  public long countShortestPaths(String node1, String node2) {
+      int origin = findArticle(node1);
+      int end = findArticle(node2);
+      if (origin < 0 || end < 0) {
+          return 0;
+      }
+      return getEnumerator().countShortestPaths(origin, end);
+  }
+
+  // list up to limit of the shortest paths from node1 to node2. The paths are produced one at a time, so a small limit stays cheap even when there are millions
+  public List<List<String>> getAllShortestPaths(String node1, String node2, int limit) {
+      List<List<String>> paths = new ArrayList<List<String>>();
+      int origin = findArticle(node1);
+      int end = findArticle(node2);
+      if (origin < 0 || end < 0) {
+          return paths;
+      }
+      Iterator<int[]> it = getEnumerator().shortestPaths(origin, end);
+      while (it.hasNext() && paths.size() < limit) {
+          paths.add(toTitles(it.next()));
+      }
+      return paths;
+  }
+
+  // the k shortest paths from node1 to node2 that never revisit an article, found by Yen's algorithm within budgetMillis
+  public List<List<String>> getKShortestPaths(String node1, String node2, int k, long budgetMillis) {
+      List<List<String>> paths = new ArrayList<List<String>>();
+      int origin = findArticle(node1);
+      int end = findArticle(node2);
+      if (origin < 0 || end < 0) {
+          return paths;
+      }
+      for (int[] p : getEnumerator().kShortestSimplePaths(origin, end, k, budgetMillis * 1000000L)) {
+          paths.add(toTitles(p));
+      }
+      return paths;
+  }
+
+  // the vertex id of an article, or -1 after reporting the title the way batch mode does if it is not in the graph
+  private int findArticle(String title) {
+      int id = articles.find(title);
+      if (id < 0) {
+          System.err.println("unknown article: " + title);
+      }
+      return id;
+  }
+
+  private ShortestPathEnumerator getEnumerator() {
+      if (enumerator == null) {
+          enumerator = new ShortestPathEnumerator(graph);
+      }
+      return enumerator;
+  }
+
+  private List<String> toTitles(int[] ids) {
+      List<String> titles = new ArrayList<String>(ids.length);
+      for (int i = 0; i < ids.length; i++) {
+          titles.add(articles.title(ids[i]));
+      }
+      return titles;
+  }
+
+  public static void main(String[] args) throws IOException { 
+      // doesn't take in parentheses. Type \ in front of each parenthesis. 
+      // a snapshot compiled by GraphSnapshot can stand in for the two TSV files: PathFinder wikipaths.snapshot start [intermediate] end
+      // batch mode replaces the query with a file of tab-separated queries, or - for stdin: PathFinder articles.tsv links.tsv --batch queries.tsv
+      // --all lists the shortest paths instead of one of them, and --k the k shortest simple paths: PathFinder wikipaths.snapshot --all start end [limit]
+      // --distance prints only the number of clicks, from snapshot.dist when DistanceOracle has built one: PathFinder wikipaths.snapshot --distance start end
+      PathFinder path;
+      int first;
+      if (args[0].endsWith(".snapshot")) {
+          path = new PathFinder(args[0], args[0]);
+          path.getSnapshot(args[0]);
+          if (new File(args[0] + ".landmarks").exists()) {
+              path.getLandmarks(args[0] + ".landmarks");
+          }
+          if (new File(args[0] + ".reach").exists()) {
+              path.getReachability(args[0] + ".reach");
+          }
+          if (new File(args[0] + ".dist").exists()) {
+              path.getDistanceOracle(args[0] + ".dist");
+          }
+          first = 1;
+      }
+      else {
+          String nodeFile = args[0];
+          String edgeFile = args[1];
+          path = new PathFinder(nodeFile, edgeFile);
+          // --decode reads percent-encoded titles as the articles they name: PathFinder articles.tsv.gz links.tsv.gz --decode start end
+          first = 2;
+          if (args[first].equals("--decode")) {
+              path.setDecodeTitles(true);
+              first++;
+          }
+          path.getMap(nodeFile);
+          path.getAdjacencyList(edgeFile);
+      }
+      // --metrics traces every query, reports the aggregate to stderr every 10 seconds and at exit, and publishes it over JMX: PathFinder wikipaths.snapshot --metrics --batch queries.tsv
+      if (args[first].equals("--metrics")) {
+          SearchMetrics metrics = path.enableMetrics();
+          try {
+              metrics.register("PathFinder");
+          }
+          catch (javax.management.JMException e) {
+              System.err.println("metrics could not be registered: " + e.getMessage());
+          }
+          metrics.startReporting(System.err, 10000);
+          Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(metrics.report())));
+          first++;
+      }
+      // --shards spreads the graph over worker processes before the query: PathFinder wikipaths.snapshot --shards 4 start end
+      // only the single shortest-path query goes through the shards, so the other modes refuse it rather than ignore it
+      if (args[first].equals("--shards")) {
+          // check the count before reading any argument, so that a missing query is reported rather than indexed
+          if (args.length != first + 4 || args[first + 2].startsWith("--")) {
+              System.err.println("--shards only answers a start end query.");
+              System.exit(1);
+          }
+          int shards = Integer.parseInt(args[first + 1]);
+          first += 2;
+          path.useShards(shards);
+          try {
+              System.out.println(path.getShortestPath(args[first], args[first + 1]));
+              System.out.println(path.getShortestPathLength(args[first], args[first + 1]));
+          }
+          finally {
+              path.closeShards();
+          }
+          return;
+      }
+      if (args[first].equals("--batch")) {
+          // a long batch amortizes the index even when it was not saved with the graph
+          if (path.reach == null) {
+              path.buildReachability();
+          }
+          path.runBatch(args.length > first + 1 ? args[first + 1] : "-");
+          return;
+      }
+      if (args[first].equals("--distance")) {
+          System.out.println(path.getDistance(args[first + 1], args[first + 2]));
+          return;
+      }
+      if (args[first].equals("--all")) {
+          int limit = args.length > first + 3 ? Integer.parseInt(args[first + 3]) : 20;
+          System.out.println(path.countShortestPaths(args[first + 1], args[first + 2]) + " shortest paths");
+          for (List<String> p : path.getAllShortestPaths(args[first + 1], args[first + 2], limit)) {
+              System.out.println(p);
+          }
+          return;
+      }
+      if (args[first].equals("--k")) {
+          int k = args.length > first + 3 ? Integer.parseInt(args[first + 3]) : 10;
+          for (List<String> p : path.getKShortestPaths(args[first + 1], args[first + 2], k, 10000)) {
+              System.out.println((p.size() - 1) + "\t" + p);
+          }
+          return;
+      }
+      String startVertex = args[first];
+
+      if (args.length == first + 2) {
+          String endVertex = args[first + 1];
           System.out.println(path.getShortestPath(startVertex, endVertex));
           System.out.println(path.getShortestPathLength(startVertex, endVertex));
       }
 
-      else if (args.length == 5) {
-          String intermediateVertex = args[3];
-          String endVertex = args[4];
-          System.out.println(path.getShortestPath(startVertex, intermediateVertex, endVertex));
+      else if (args.length == first + 3) {
+          String intermediateVertex = args[first + 1];
+          String endVertex = args[first + 2];
+          List<String> solution = path.getShortestPath(startVertex, intermediateVertex, endVertex);
+          if (solution.isEmpty()) {
+              ViaPathSearch.Result result = path.getViaResult();
+              if (result.unreachableLeg == ViaPathSearch.Leg.ORIGIN_TO_VIA) {
+                  System.out.println("There is no path from " + startVertex + " to " + intermediateVertex + "!");
+              }
+              else {
+                  System.out.println("There is no path from " + intermediateVertex + " to " + endVertex + "!");
+              }
+          }
+          System.out.println(solution);
           System.out.println(path.getShortestPathLength(startVertex, endVertex));
       }
   }
@@ -0,0 +1,20 @@
+/**
+ * A point-to-point shortest-path engine over a fixed graph.  Engines keep
+ * reusable per-query scratch space, so an instance is generally not
+ * thread-safe; give each thread its own engine.
+ */
+public interface PathSearch {
+    /** Returns a shortest path from source to target as a sequence of vertex
+     * IDs beginning with source and ending with target, or null if target is
+     * not reachable from source.
+     * @throws IndexOutOfBoundsException if either vertex ID is out of bounds.
+     */
+    public int[] findPath(int source, int target);
+
+    /** Makes the engine record what each query does into trace, or stop
+     * recording if trace is null.  The caller begins and ends the trace;
+     * engines that cannot break a query down ignore the call.
+     */
+    public default void setTrace(QueryTrace trace) {
+    }
+}
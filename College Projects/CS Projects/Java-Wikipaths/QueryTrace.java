@@ -0,0 +1,165 @@
+import java.util.Arrays;
+/**
+ * What one shortest-path query did: the vertices it expanded, the edges it
+ * scanned, the size of every frontier it expanded, whether it was answered
+ * without a search, and how long it took.
+ *   A search engine fills in a trace only while one is attached with
+ * PathSearch.setTrace; with none attached the engines skip all of this
+ * bookkeeping.  A trace is reused from query to query through begin(), so
+ * recording allocates nothing once the frontier array has grown to the
+ * deepest query.  Like the engines, a trace is not thread-safe.
+ */
+public final class QueryTrace {
+    /** Why a query was answered without running a search. */
+    public enum ShortCircuit {
+        /** The query was searched. */
+        NONE,
+        /** The path came from the PathCache. */
+        CACHE,
+        /** The landmark distances proved the target unreachable. */
+        LANDMARK,
+        /** The ReachabilityIndex proved the target unreachable. */
+        REACHABILITY,
+        /** Source and target are the same vertex. */
+        TRIVIAL
+    }
+
+    private int source;
+    private int target;
+    private long expanded;
+    private long edgesScanned;
+    private int levels;
+    // The size of each expanded frontier, negated for backward levels.
+    private int[] frontiers = new int[16];
+    private ShortCircuit shortCircuit = ShortCircuit.NONE;
+    private int length = -1;
+    private long nanos;
+
+    /** Clears the trace for a new query from source to target. */
+    public void begin(int source, int target) {
+        this.source = source;
+        this.target = target;
+        expanded = 0;
+        edgesScanned = 0;
+        levels = 0;
+        shortCircuit = ShortCircuit.NONE;
+        length = -1;
+        nanos = 0;
+    }
+
+    /** Records one expanded frontier of the specified size, the edges scanned
+     * from it, and the direction it was expanded in.
+     */
+    public void level(int frontier, long edges, boolean forward) {
+        if(levels == frontiers.length) {
+            frontiers = Arrays.copyOf(frontiers, levels * 2);
+        }
+        frontiers[levels++] = forward ? frontier : -frontier;
+        expanded += frontier;
+        edgesScanned += edges;
+    }
+
+    /** Records vertices expanded and edges scanned outside of levels, by
+     * engines such as A* that have no frontiers.
+     */
+    public void expanded(long vertices, long edges) {
+        expanded += vertices;
+        edgesScanned += edges;
+    }
+
+    /** Adds what another trace recorded to this one, as the second leg of a
+     * via query adds to the first: its frontiers follow this trace's, and the
+     * query counts as answered without a search only if both were.
+     */
+    public void add(QueryTrace other) {
+        for(int i = 0; i < other.levels; i++) {
+            if(levels == frontiers.length) {
+                frontiers = Arrays.copyOf(frontiers, levels * 2);
+            }
+            frontiers[levels++] = other.frontiers[i];
+        }
+        expanded += other.expanded;
+        edgesScanned += other.edgesScanned;
+        if(other.shortCircuit == ShortCircuit.NONE) {
+            shortCircuit = ShortCircuit.NONE;
+        }
+    }
+
+    /** Records that the query was answered without a search. */
+    public void shortCircuit(ShortCircuit reason) {
+        shortCircuit = reason;
+    }
+
+    /** Records the outcome: the number of edges of the path found, or -1 if
+     * there was none, and the wall time of the whole query.
+     */
+    public void end(int length, long nanos) {
+        this.length = length;
+        this.nanos = nanos;
+    }
+
+    public int source() {
+        return source;
+    }
+
+    public int target() {
+        return target;
+    }
+
+    /** Returns the number of vertices whose rows were scanned. */
+    public long expanded() {
+        return expanded;
+    }
+
+    public long edgesScanned() {
+        return edgesScanned;
+    }
+
+    /** Returns the number of frontiers expanded. */
+    public int levels() {
+        return levels;
+    }
+
+    /** Returns the size of the i-th frontier expanded. */
+    public int frontier(int i) {
+        if(i < 0 || i >= levels) {
+            throw new IndexOutOfBoundsException();
+        }
+        return Math.abs(frontiers[i]);
+    }
+
+    /** Returns true if the i-th frontier was on the source side. */
+    public boolean forward(int i) {
+        if(i < 0 || i >= levels) {
+            throw new IndexOutOfBoundsException();
+        }
+        return frontiers[i] >= 0;
+    }
+
+    public ShortCircuit shortCircuit() {
+        return shortCircuit;
+    }
+
+    /** Returns the number of edges of the path found, or -1 if none was. */
+    public int length() {
+        return length;
+    }
+
+    public long nanos() {
+        return nanos;
+    }
+
+    /** Returns the frontier sizes as text, "f" for forward and "b" for
+     * backward levels, such as "f1 b1 f37 b212".
+     */
+    public String frontiers() {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < levels; i++) {
+            if(i > 0) {
+                sb.append(' ');
+            }
+            sb.append(frontiers[i] >= 0 ? 'f' : 'b').append(Math.abs(frontiers[i]));
+        }
+        return sb.toString();
+    }
+}
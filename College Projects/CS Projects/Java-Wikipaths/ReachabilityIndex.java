@@ -0,0 +1,438 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+/**
+ * Answers "can t be reached from s?" without searching the graph.
+ *   The strongly connected components are found with an iterative version of
+ * Tarjan's algorithm and numbered in the order Tarjan finishes them, which is
+ * a reverse topological order: every edge between two components goes from a
+ * higher number to a lower one.  Collapsing each component to one vertex gives
+ * the condensation DAG, and s reaches t exactly when comp(s) reaches comp(t)
+ * there.
+ *   Each DAG vertex carries GRAIL interval labels (Yildirim et al.): for a few
+ * randomized depth-first traversals, the pair [low, rank] of its post-order
+ * rank and the smallest rank below it.  If c reaches d then every interval of
+ * d lies inside the matching interval of c, so a single failed containment
+ * proves t unreachable.  Together with "same component means reachable" and
+ * "a lower component number cannot reach a higher one", most queries are
+ * decided in O(labels) time; the rest fall back to a breadth-first scan of
+ * the DAG, in FIFO order, that skips every vertex whose labels rule it out.
+ *   The index is immutable and thread-safe, and can be saved next to the
+ * graph and loaded again.  The fallback search keeps its visited bitset and
+ * worklist per thread and clears only the words a query touched, so a query
+ * allocates nothing once its thread's worklist has grown.
+ */
+public class ReachabilityIndex {
+    /** The number of interval labels per component built by default. */
+    public static final int DEFAULT_LABELS = 5;
+
+    private static final int MAGIC = 0x52434858; // "RCHX"
+    private static final int VERSION = 1;
+
+    private final int n;
+    private final int numComponents;
+    private final int labelsPer;
+    // comp[v] is the component of vertex v.
+    private final int[] comp;
+    // Condensation DAG in CSR form, every row sorted.
+    private final int[] dagOffsets;
+    private final int[] dagTargets;
+    // labels[2 * (c * labelsPer + i)] is the low end and the next entry the
+    // rank of component c in traversal i.
+    private final int[] labels;
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>();
+
+    // The state of one thread's fallback searches: a bitset of the components
+    // seen, all clear between queries, and the worklist of the components
+    // entered, which is also the list of words to clear.
+    private static final class Scratch {
+        final long[] seen;
+        int[] work = new int[16];
+
+        Scratch(int numComponents) {
+            seen = new long[(numComponents + 63) >>> 6];
+        }
+    }
+
+    private ReachabilityIndex(int n, int numComponents, int labelsPer, int[] comp,
+            int[] dagOffsets, int[] dagTargets, int[] labels) {
+        this.n = n;
+        this.numComponents = numComponents;
+        this.labelsPer = labelsPer;
+        this.comp = comp;
+        this.dagOffsets = dagOffsets;
+        this.dagTargets = dagTargets;
+        this.labels = labels;
+    }
+
+    /** Builds the index for the specified graph with DEFAULT_LABELS interval
+     * labels per component.
+     */
+    public static ReachabilityIndex build(Graph graph) {
+        return build(graph, DEFAULT_LABELS, 1);
+    }
+
+    /** Builds the index for the specified graph with the specified number of
+     * interval labels per component; seed fixes the randomized traversals.
+     */
+    public static ReachabilityIndex build(Graph graph, int labelsPer, long seed) {
+        if(labelsPer < 1) {
+            throw new IllegalArgumentException("need at least one label");
+        }
+        CsrRows out = CsrRows.out(graph);
+        int n = out.numVerts();
+        int[] comp = new int[n];
+        int numComponents = components(out, comp);
+        int[] dagOffsets = new int[numComponents + 1];
+        int[] dagTargets = condense(out, comp, numComponents, dagOffsets);
+        int[] labels = new int[2 * numComponents * labelsPer];
+        Random random = new Random(seed);
+        for(int i = 0; i < labelsPer; i++) {
+            label(dagOffsets, dagTargets, numComponents, labels, labelsPer, i, random);
+        }
+        return new ReachabilityIndex(n, numComponents, labelsPer, comp,
+                dagOffsets, dagTargets, labels);
+    }
+
+    // Iterative Tarjan.  The call stack holds each vertex being explored with
+    // its next out-edge; the component stack holds vertices visited but not
+    // yet assigned.  Fills comp and returns the number of components.
+    private static int components(CsrRows out, int[] comp) {
+        int n = out.numVerts();
+        int[] index = new int[n];
+        int[] low = new int[n];
+        Arrays.fill(index, -1);
+        Arrays.fill(comp, -1);
+        int[] call = new int[n];
+        int[] edge = new int[n];
+        int[] stack = new int[n];
+        int counter = 0;
+        int count = 0;
+        for(int root = 0; root < n; root++) {
+            if(index[root] >= 0) {
+                continue;
+            }
+            int top = 0;
+            int sp = 0;
+            call[0] = root;
+            edge[0] = out.start(root);
+            index[root] = low[root] = counter++;
+            stack[sp++] = root;
+            while(top >= 0) {
+                int v = call[top];
+                if(edge[top] < out.end(v)) {
+                    int u = out.target(edge[top]++);
+                    if(index[u] < 0) {
+                        index[u] = low[u] = counter++;
+                        stack[sp++] = u;
+                        top++;
+                        call[top] = u;
+                        edge[top] = out.start(u);
+                    } else if(comp[u] < 0) {
+                        // u is still on the component stack.
+                        low[v] = Math.min(low[v], index[u]);
+                    }
+                    continue;
+                }
+                top--;
+                if(low[v] == index[v]) {
+                    int u;
+                    do {
+                        u = stack[--sp];
+                        comp[u] = count;
+                    } while(u != v);
+                    count++;
+                }
+                if(top >= 0) {
+                    int parent = call[top];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+            }
+        }
+        return count;
+    }
+
+    // Builds the rows of the condensation DAG into dagOffsets and returns the
+    // targets, sorted and without duplicates.
+    private static int[] condense(CsrRows out, int[] comp, int numComponents,
+            int[] dagOffsets) {
+        int n = out.numVerts();
+        for(int v = 0; v < n; v++) {
+            for(int i = out.start(v); i < out.end(v); i++) {
+                if(comp[out.target(i)] != comp[v]) {
+                    dagOffsets[comp[v] + 1]++;
+                }
+            }
+        }
+        for(int c = 0; c < numComponents; c++) {
+            dagOffsets[c + 1] += dagOffsets[c];
+        }
+        int[] targets = new int[dagOffsets[numComponents]];
+        int[] fill = Arrays.copyOf(dagOffsets, numComponents);
+        for(int v = 0; v < n; v++) {
+            for(int i = out.start(v); i < out.end(v); i++) {
+                int d = comp[out.target(i)];
+                if(d != comp[v]) {
+                    targets[fill[comp[v]]++] = d;
+                }
+            }
+        }
+        int write = 0;
+        int rowStart = 0;
+        for(int c = 0; c < numComponents; c++) {
+            int rowEnd = dagOffsets[c + 1];
+            Arrays.sort(targets, rowStart, rowEnd);
+            dagOffsets[c] = write;
+            for(int i = rowStart; i < rowEnd; i++) {
+                if(i == rowStart || targets[i] != targets[i - 1]) {
+                    targets[write++] = targets[i];
+                }
+            }
+            rowStart = rowEnd;
+        }
+        dagOffsets[numComponents] = write;
+        return Arrays.copyOf(targets, write);
+    }
+
+    // One randomized post-order traversal of the DAG: roots are tried from a
+    // random starting point and children from a random offset in each row.
+    // Gives every component its rank and the smallest rank it reaches.
+    private static void label(int[] offsets, int[] targets, int numComponents,
+            int[] labels, int labelsPer, int which, Random random) {
+        boolean[] seen = new boolean[numComponents];
+        int[] call = new int[numComponents];
+        int[] first = new int[numComponents];
+        int[] step = new int[numComponents];
+        int rank = 0;
+        int start = random.nextInt(Math.max(1, numComponents));
+        for(int k = 0; k < numComponents; k++) {
+            int root = (start + k) % numComponents;
+            if(seen[root]) {
+                continue;
+            }
+            int top = 0;
+            call[0] = root;
+            seen[root] = true;
+            first[0] = random(random, offsets, root);
+            step[0] = 0;
+            int lowRoot = 2 * (root * labelsPer + which);
+            labels[lowRoot] = Integer.MAX_VALUE;
+            while(top >= 0) {
+                int c = call[top];
+                int degree = offsets[c + 1] - offsets[c];
+                int at = 2 * (c * labelsPer + which);
+                if(step[top] < degree) {
+                    int d = targets[offsets[c] + (first[top] + step[top]++) % degree];
+                    if(!seen[d]) {
+                        seen[d] = true;
+                        labels[2 * (d * labelsPer + which)] = Integer.MAX_VALUE;
+                        top++;
+                        call[top] = d;
+                        first[top] = random(random, offsets, d);
+                        step[top] = 0;
+                    } else {
+                        labels[at] = Math.min(labels[at], labels[2 * (d * labelsPer + which)]);
+                    }
+                    continue;
+                }
+                labels[at + 1] = rank;
+                labels[at] = Math.min(labels[at], rank);
+                rank++;
+                top--;
+                if(top >= 0) {
+                    int parent = 2 * (call[top] * labelsPer + which);
+                    labels[parent] = Math.min(labels[parent], labels[at]);
+                }
+            }
+        }
+    }
+
+    private static int random(Random random, int[] offsets, int c) {
+        int degree = offsets[c + 1] - offsets[c];
+        return degree == 0 ? 0 : random.nextInt(degree);
+    }
+
+    /** Returns the number of vertices of the graph the index was built for. */
+    public int numVerts() {
+        return n;
+    }
+
+    /** Returns the number of strongly connected components. */
+    public int numComponents() {
+        return numComponents;
+    }
+
+    /** Returns the component of the specified vertex.  Components are
+     * numbered in reverse topological order.
+     */
+    public int component(int v) {
+        return comp[v];
+    }
+
+    /** Returns the number of vertices in the largest component. */
+    public int largestComponentSize() {
+        int[] size = new int[numComponents];
+        int max = 0;
+        for(int v = 0; v < n; v++) {
+            max = Math.max(max, ++size[comp[v]]);
+        }
+        return max;
+    }
+
+    // True unless some traversal proves that c cannot reach d.
+    private boolean contains(int c, int d) {
+        int ci = 2 * c * labelsPer;
+        int di = 2 * d * labelsPer;
+        for(int i = 0; i < 2 * labelsPer; i += 2) {
+            if(labels[di + i] < labels[ci + i] || labels[di + i + 1] > labels[ci + i + 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns true if the labels alone cannot rule out a path from s to t.
+     * Never false for a reachable pair; takes O(labels) time.
+     * @throws IndexOutOfBoundsException if either vertex ID is out of bounds.
+     */
+    public boolean mayReach(int s, int t) {
+        if(s < 0 || s >= n || t < 0 || t >= n) {
+            throw new IndexOutOfBoundsException();
+        }
+        int cs = comp[s];
+        int ct = comp[t];
+        return cs == ct || (cs > ct && contains(cs, ct));
+    }
+
+    /** Returns true if t can be reached from s.
+     * @throws IndexOutOfBoundsException if either vertex ID is out of bounds.
+     */
+    public boolean reachable(int s, int t) {
+        if(!mayReach(s, t)) {
+            return false;
+        }
+        int cs = comp[s];
+        int ct = comp[t];
+        if(cs == ct) {
+            return true;
+        }
+        // The labels could not decide: search the DAG, entering only
+        // components numbered above ct whose labels still allow a path.
+        Scratch sc = scratch.get();
+        if(sc == null) {
+            sc = new Scratch(numComponents);
+            scratch.set(sc);
+        }
+        long[] seen = sc.seen;
+        int[] work = sc.work;
+        int tail = 0;
+        work[tail++] = cs;
+        seen[cs >>> 6] |= 1L << cs;
+        boolean found = false;
+        for(int head = 0; head < tail && !found; head++) {
+            int c = work[head];
+            for(int i = dagOffsets[c]; i < dagOffsets[c + 1]; i++) {
+                int d = dagTargets[i];
+                if(d == ct) {
+                    found = true;
+                    break;
+                }
+                if(d < ct || (seen[d >>> 6] & (1L << d)) != 0 || !contains(d, ct)) {
+                    continue;
+                }
+                seen[d >>> 6] |= 1L << d;
+                if(tail == work.length) {
+                    work = Arrays.copyOf(work, tail * 2);
+                    sc.work = work;
+                }
+                work[tail++] = d;
+            }
+        }
+        for(int q = 0; q < tail; q++) {
+            seen[work[q] >>> 6] = 0;
+        }
+        return found;
+    }
+
+    /** Writes the index to a file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void save(String file) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(numComponents);
+            out.writeInt(labelsPer);
+            out.writeInt(dagTargets.length);
+            for(int[] section : new int[][] {comp, dagOffsets, dagTargets, labels}) {
+                for(int x : section) {
+                    out.writeInt(x);
+                }
+            }
+        }
+    }
+
+    /** Reads an index written by save().
+     * @throws IOException if the file cannot be read or is not a reachability
+     * index of a supported version.
+     */
+    public static ReachabilityIndex load(String file) throws IOException {
+        try(FileChannel channel = FileChannel.open(Paths.get(file),
+                StandardOpenOption.READ)) {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            if(buf.remaining() < 24 || buf.getInt() != MAGIC) {
+                throw new IOException(file + ": not a reachability index");
+            }
+            if(buf.getInt() != VERSION) {
+                throw new IOException(file + ": unsupported reachability index version");
+            }
+            int n = buf.getInt();
+            int numComponents = buf.getInt();
+            int labelsPer = buf.getInt();
+            int dagEdges = buf.getInt();
+            long ints = (long) n + numComponents + 1 + dagEdges
+                    + 2L * numComponents * labelsPer;
+            if(buf.remaining() != 4 * ints) {
+                throw new IOException(file + ": truncated reachability index");
+            }
+            IntBuffer in = buf.asIntBuffer();
+            int[] comp = new int[n];
+            int[] dagOffsets = new int[numComponents + 1];
+            int[] dagTargets = new int[dagEdges];
+            int[] labels = new int[2 * numComponents * labelsPer];
+            in.get(comp).get(dagOffsets).get(dagTargets).get(labels);
+            return new ReachabilityIndex(n, numComponents, labelsPer, comp,
+                    dagOffsets, dagTargets, labels);
+        }
+    }
+
+    /** Builds the reachability index for a snapshot and saves it next to it,
+     * as snapshot.reach.
+     * Usage: java ReachabilityIndex wikipaths.snapshot [labels]
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1) {
+            System.err.println("Usage: java ReachabilityIndex graph.snapshot [labels]");
+            System.exit(1);
+        }
+        int labelsPer = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_LABELS;
+        GraphSnapshot snapshot = GraphSnapshot.open(args[0]);
+        long start = System.nanoTime();
+        ReachabilityIndex index = build(snapshot.graph(), labelsPer, 1);
+        index.save(args[0] + ".reach");
+        System.out.printf("Wrote %s.reach: %d components (largest %d of %d articles) in %.1f ms%n",
+                args[0], index.numComponents(), index.largestComponentSize(),
+                index.numVerts(), (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * One direction of a graph's adjacency as the search engines read it: after
+ * start(v), the row of vertex v is the entries target(start(v)) ..
+ * target(end(v) - 1).
+ *   CsrRows reads the entries in place, so any of its rows can be read at any
+ * time.  A reader over a compressed graph decodes row v into a buffer of its
+ * own when start(v) is called, and its entries stay readable only until the
+ * next call to start; such a reader is not thread-safe.  Callers therefore
+ * call start(v) first and finish with a row before starting the next one.
+ */
+interface RowReader {
+    int numVerts();
+
+    /** Makes v the current row and returns the index of its first entry. */
+    int start(int v);
+
+    /** Returns the index one past the last entry of row v, which must be
+     * the current row.
+     */
+    int end(int v);
+
+    int target(int i);
+
+    /** Returns the number of entries of row v without making it current. */
+    int degree(int v);
+}
@@ -0,0 +1,293 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+/**
+ * Aggregates the QueryTraces of many shortest-path queries: counts of
+ * queries, paths found and short-circuits of each kind, HDR-style histograms
+ * of query latency and of vertices expanded, and the slowest queries seen
+ * with their frontier sizes, which is where hub-heavy queries show up.
+ *   record() is safe to call from any number of threads and does not lock
+ * unless the query is among the slowest so far.  The aggregate can be printed
+ * as text with report(), on a timer with startReporting(), or read over JMX
+ * after register().
+ */
+public class SearchMetrics implements SearchMetricsMBean {
+    /** The number of slowest queries kept. */
+    public static final int SLOWEST = 10;
+
+    private final ArticleTitles articles;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram searchLatency = new LatencyHistogram();
+    private final LatencyHistogram expanded = new LatencyHistogram();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder found = new LongAdder();
+    private final LongAdder vertices = new LongAdder();
+    private final LongAdder edges = new LongAdder();
+    private final LongAdder[] shortCircuits =
+            new LongAdder[QueryTrace.ShortCircuit.values().length];
+    // The slowest queries, slowest first; a query must beat the last of a
+    // full list to take the lock.
+    private final Slow[] slowest = new Slow[SLOWEST];
+    private int numSlowest;
+    private volatile long slowThreshold;
+    private ScheduledExecutorService reporter;
+    private ObjectName name;
+
+    // One of the slowest queries, copied out of its trace.
+    private static final class Slow {
+        final int source;
+        final int target;
+        final long nanos;
+        final int length;
+        final long expanded;
+        final long edges;
+        final String frontiers;
+
+        Slow(QueryTrace trace) {
+            source = trace.source();
+            target = trace.target();
+            nanos = trace.nanos();
+            length = trace.length();
+            expanded = trace.expanded();
+            edges = trace.edgesScanned();
+            frontiers = trace.frontiers();
+        }
+    }
+
+    /** Constructs an empty aggregate that names vertices by their titles in
+     * the specified dictionary, or by ID if it is null.
+     */
+    public SearchMetrics(ArticleTitles articles) {
+        this.articles = articles;
+        for(int i = 0; i < shortCircuits.length; i++) {
+            shortCircuits[i] = new LongAdder();
+        }
+    }
+
+    /** Adds a finished query to the aggregate. */
+    public void record(QueryTrace trace) {
+        queries.increment();
+        latency.record(trace.nanos());
+        if(trace.length() >= 0) {
+            found.increment();
+        }
+        shortCircuits[trace.shortCircuit().ordinal()].increment();
+        if(trace.shortCircuit() == QueryTrace.ShortCircuit.NONE) {
+            searchLatency.record(trace.nanos());
+            expanded.record(trace.expanded());
+        }
+        vertices.add(trace.expanded());
+        edges.add(trace.edgesScanned());
+        if(trace.nanos() > slowThreshold) {
+            recordSlow(new Slow(trace));
+        }
+    }
+
+    private synchronized void recordSlow(Slow slow) {
+        int i = numSlowest < SLOWEST ? numSlowest++ : SLOWEST - 1;
+        if(i == SLOWEST - 1 && slowest[i] != null && slowest[i].nanos >= slow.nanos) {
+            return;
+        }
+        for(; i > 0 && slowest[i - 1].nanos < slow.nanos; i--) {
+            slowest[i] = slowest[i - 1];
+        }
+        slowest[i] = slow;
+        if(numSlowest == SLOWEST) {
+            slowThreshold = slowest[SLOWEST - 1].nanos;
+        }
+    }
+
+    private String name(int v) {
+        return articles == null ? Integer.toString(v) : articles.title(v);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    public long getSearches() {
+        return shortCircuits[QueryTrace.ShortCircuit.NONE.ordinal()].sum();
+    }
+
+    public long getPathsFound() {
+        return found.sum();
+    }
+
+    public long getCacheHits() {
+        return shortCircuits[QueryTrace.ShortCircuit.CACHE.ordinal()].sum();
+    }
+
+    public long getLandmarkShortCircuits() {
+        return shortCircuits[QueryTrace.ShortCircuit.LANDMARK.ordinal()].sum();
+    }
+
+    public long getReachabilityShortCircuits() {
+        return shortCircuits[QueryTrace.ShortCircuit.REACHABILITY.ordinal()].sum();
+    }
+
+    public long getVerticesExpanded() {
+        return vertices.sum();
+    }
+
+    public long getEdgesScanned() {
+        return edges.sum();
+    }
+
+    public double getMeanLatencyMillis() {
+        return latency.mean() / 1e6;
+    }
+
+    public double getLatencyP50Millis() {
+        return millis(latency.percentile(50));
+    }
+
+    public double getLatencyP90Millis() {
+        return millis(latency.percentile(90));
+    }
+
+    public double getLatencyP99Millis() {
+        return millis(latency.percentile(99));
+    }
+
+    public double getLatencyP999Millis() {
+        return millis(latency.percentile(99.9));
+    }
+
+    public double getMaxLatencyMillis() {
+        return millis(latency.max());
+    }
+
+    /** Returns the histogram of the wall time of every query, in
+     * nanoseconds.
+     */
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    /** Returns the histogram of the wall time of the queries that ran a
+     * search, in nanoseconds.
+     */
+    public LatencyHistogram searchLatency() {
+        return searchLatency;
+    }
+
+    /** Returns the histogram of the vertices expanded by the queries that ran
+     * a search.
+     */
+    public LatencyHistogram expanded() {
+        return expanded;
+    }
+
+    public synchronized String[] getSlowestQueries() {
+        String[] lines = new String[numSlowest];
+        for(int i = 0; i < numSlowest; i++) {
+            Slow s = slowest[i];
+            lines[i] = String.format("%.3f ms  %s -> %s  length %d, %d expanded, "
+                    + "%d edges (%.1f per vertex), frontiers %s", millis(s.nanos),
+                    name(s.source), name(s.target), s.length, s.expanded, s.edges,
+                    s.expanded == 0 ? 0.0 : (double) s.edges / s.expanded, s.frontiers);
+        }
+        return lines;
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        long n = getQueries();
+        sb.append(String.format("%d queries, %d paths found, %d searched; short-circuited: "
+                + "%d cache, %d landmark, %d reachability, %d trivial%n", n,
+                getPathsFound(), getSearches(), getCacheHits(),
+                getLandmarkShortCircuits(), getReachabilityShortCircuits(),
+                shortCircuits[QueryTrace.ShortCircuit.TRIVIAL.ordinal()].sum()));
+        for(LatencyHistogram h : new LatencyHistogram[] {latency, searchLatency}) {
+            sb.append(String.format("  %s ms: mean %.3f, p50 %.3f, p90 %.3f, p99 %.3f, "
+                    + "p99.9 %.3f, max %.3f%n", h == latency ? "latency" : "search ",
+                    h.mean() / 1e6, millis(h.percentile(50)), millis(h.percentile(90)),
+                    millis(h.percentile(99)), millis(h.percentile(99.9)), millis(h.max())));
+        }
+        sb.append(String.format("  expanded per search: mean %.1f, p50 %d, p99 %d, max %d; "
+                + "%d edges scanned in all%n", expanded.mean(), expanded.percentile(50),
+                expanded.percentile(99), expanded.max(), getEdgesScanned()));
+        String[] slow = getSlowestQueries();
+        if(slow.length > 0) {
+            sb.append(String.format("  slowest queries:%n"));
+            for(String line : slow) {
+                sb.append("    ").append(line).append(String.format("%n"));
+            }
+        }
+        return sb.toString();
+    }
+
+    public void reset() {
+        latency.reset();
+        searchLatency.reset();
+        expanded.reset();
+        queries.reset();
+        found.reset();
+        vertices.reset();
+        edges.reset();
+        for(LongAdder adder : shortCircuits) {
+            adder.reset();
+        }
+        synchronized(this) {
+            Arrays.fill(slowest, null);
+            numSlowest = 0;
+            slowThreshold = 0;
+        }
+    }
+
+    /** Prints report() to out every periodMillis milliseconds, from a daemon
+     * thread, until stopReporting() is called.
+     */
+    public synchronized void startReporting(PrintStream out, long periodMillis) {
+        stopReporting();
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "search-metrics-report");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(() -> out.print(report()), periodMillis,
+                periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Stops the periodic report, if one was started. */
+    public synchronized void stopReporting() {
+        if(reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    /** Registers this aggregate with the platform MBean server as
+     * "Wikipaths:type=SearchMetrics,name=" followed by the specified name.
+     * @throws JMException if the name is taken or invalid.
+     */
+    public synchronized ObjectName register(String instance) throws JMException {
+        unregister();
+        ObjectName objectName = new ObjectName("Wikipaths:type=SearchMetrics,name="
+                + ObjectName.quote(instance));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        name = objectName;
+        return name;
+    }
+
+    /** Removes this aggregate from the platform MBean server, if it was
+     * registered.
+     * @throws JMException if the server refuses.
+     */
+    public synchronized void unregister() throws JMException {
+        if(name != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            name = null;
+        }
+    }
+}
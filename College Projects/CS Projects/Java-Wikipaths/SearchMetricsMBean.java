@@ -0,0 +1,43 @@
+/**
+ * The JMX management interface of SearchMetrics.  Latencies are in
+ * milliseconds.
+ */
+public interface SearchMetricsMBean {
+    public long getQueries();
+
+    /** Returns the number of queries that ran a search. */
+    public long getSearches();
+
+    public long getPathsFound();
+
+    public long getCacheHits();
+
+    public long getLandmarkShortCircuits();
+
+    public long getReachabilityShortCircuits();
+
+    public long getVerticesExpanded();
+
+    public long getEdgesScanned();
+
+    public double getMeanLatencyMillis();
+
+    public double getLatencyP50Millis();
+
+    public double getLatencyP90Millis();
+
+    public double getLatencyP99Millis();
+
+    public double getLatencyP999Millis();
+
+    public double getMaxLatencyMillis();
+
+    /** Returns one line per slowest query, slowest first. */
+    public String[] getSlowestQueries();
+
+    /** Returns the full text report. */
+    public String report();
+
+    /** Forgets everything recorded so far. */
+    public void reset();
+}
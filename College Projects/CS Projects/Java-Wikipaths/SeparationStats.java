@@ -0,0 +1,458 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+/**
+ * Degrees-of-separation statistics for a whole graph, measured from every
+ * vertex or from a random sample of them: the histogram of click distances,
+ * the mean distance and the share of ordered pairs that are connected at all,
+ * each source's eccentricity, and bounds on the diameter.
+ *   Sources are searched 64 at a time by one bit-parallel breadth-first
+ * search (Then et al., "The More the Merrier").  Each vertex carries three
+ * words: which of the 64 searches have seen it, which have it in their
+ * frontier, and which reach it next.  One scan of a vertex's row advances all
+ * the searches that have it in their frontier at once, so the many searches
+ * that cross the same hub share the work.  Batches are spread over the
+ * worker threads, each with its own scratch words; results are kept per
+ * source and summed in source order, so they do not depend on the number of
+ * threads.
+ *   With a sample, the mean distance and the connected share are given with
+ * 95% confidence intervals, treating the sources as drawn without
+ * replacement; with every vertex as a source the intervals have width 0.
+ * The diameter of the largest strongly connected component is bracketed by
+ * the eccentricities of the sampled sources inside it: at least the largest
+ * of them in either direction, and at most the smallest sum of a source's
+ * forward and backward eccentricity, since every shortest path within the
+ * component can be routed through that source.
+ */
+public class SeparationStats {
+    private static final int BATCH = 64;
+    private static final double Z95 = 1.959964;
+
+    private final CsrRows out;
+    private final CsrRows in;
+    private final int n;
+    private final ForkJoinPool pool;
+    // Membership in the largest strongly connected component.
+    private final long[] largest;
+    private final int largestSize;
+
+    /** The statistics gathered from one set of sources. */
+    public static class Result {
+        /** The sources searched from, in the order their results are kept. */
+        public final int[] sources;
+        /** histogram[d] is the number of (source, target) pairs at distance
+         * d, for d >= 1. */
+        public final long[] histogram;
+        /** eccentricity[i] is the largest finite distance from sources[i]. */
+        public final int[] eccentricity;
+        /** The number of vertices in the graph. */
+        public final int numVerts;
+        /** The mean distance over connected pairs, and its 95% interval. */
+        public final double meanDistance;
+        public final double meanDistanceLow;
+        public final double meanDistanceHigh;
+        /** The share of ordered pairs of distinct vertices that are
+         * connected, and its 95% interval. */
+        public final double connected;
+        public final double connectedLow;
+        public final double connectedHigh;
+        /** Bounds on the diameter of the largest strongly connected
+         * component, or -1 if no source fell inside it. */
+        public final int componentDiameterLow;
+        public final int componentDiameterHigh;
+        public final long elapsedNanos;
+
+        Result(int[] sources, long[] histogram, int[] eccentricity, int numVerts,
+                double[] mean, double[] connected, int componentLow,
+                int componentHigh, long elapsedNanos) {
+            this.sources = sources;
+            this.histogram = histogram;
+            this.eccentricity = eccentricity;
+            this.numVerts = numVerts;
+            this.meanDistance = mean[0];
+            this.meanDistanceLow = mean[1];
+            this.meanDistanceHigh = mean[2];
+            this.connected = connected[0];
+            this.connectedLow = connected[1];
+            this.connectedHigh = connected[2];
+            this.componentDiameterLow = componentLow;
+            this.componentDiameterHigh = componentHigh;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /** Returns true if every vertex was a source, so that the figures
+         * are exact.
+         */
+        public boolean exact() {
+            return sources.length == numVerts;
+        }
+
+        /** Returns the largest finite distance seen from any source, a lower
+         * bound on the longest shortest path of the graph.
+         */
+        public int maxDistance() {
+            return histogram.length - 1;
+        }
+
+        /** Returns the smallest distance within which the specified fraction
+         * of the connected pairs lie; 0.9 gives the effective diameter.
+         */
+        public int percentileDistance(double fraction) {
+            long total = 0;
+            for(long c : histogram) {
+                total += c;
+            }
+            long seen = 0;
+            for(int d = 1; d < histogram.length; d++) {
+                seen += histogram[d];
+                if(seen >= fraction * total) {
+                    return d;
+                }
+            }
+            return maxDistance();
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%s from %d of %d sources in %.1f ms%n",
+                    exact() ? "Exact" : "Sampled", sources.length, numVerts,
+                    elapsedNanos / 1e6));
+            sb.append(String.format("  mean distance %.4f [%.4f, %.4f]%n", meanDistance,
+                    meanDistanceLow, meanDistanceHigh));
+            sb.append(String.format("  connected pairs %.4f%% [%.4f%%, %.4f%%]%n",
+                    100 * connected, 100 * connectedLow, 100 * connectedHigh));
+            sb.append(String.format("  effective diameter (90%%) %d, longest distance seen %d%n",
+                    percentileDistance(0.9), maxDistance()));
+            double ecc = 0;
+            for(int e : eccentricity) {
+                ecc += e;
+            }
+            sb.append(String.format("  mean eccentricity %.2f%n",
+                    eccentricity.length == 0 ? 0 : ecc / eccentricity.length));
+            if(componentDiameterLow >= 0) {
+                sb.append(String.format("  largest component diameter between %d and %d%n",
+                        componentDiameterLow, componentDiameterHigh));
+            }
+            long total = 0;
+            for(long c : histogram) {
+                total += c;
+            }
+            for(int d = 1; d < histogram.length; d++) {
+                sb.append(String.format("  %3d  %12d  %7.3f%%%n", d, histogram[d],
+                        100.0 * histogram[d] / total));
+            }
+            return sb.toString();
+        }
+    }
+
+    /** Constructs an engine over the specified graph with one thread per core. */
+    public SeparationStats(Graph graph) {
+        this(graph, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Constructs an engine over the specified graph with the specified
+     * number of threads.  The graph must not change while the engine is in
+     * use.
+     */
+    public SeparationStats(Graph graph, int parallelism) {
+        out = CsrRows.out(graph);
+        in = CsrRows.in(graph, out);
+        n = out.numVerts();
+        pool = new ForkJoinPool(parallelism);
+        ReachabilityIndex reach = ReachabilityIndex.build(graph);
+        int[] size = new int[reach.numComponents()];
+        int best = 0;
+        for(int v = 0; v < n; v++) {
+            if(++size[reach.component(v)] > size[best]) {
+                best = reach.component(v);
+            }
+        }
+        largest = new long[(n + 63) >>> 6];
+        for(int v = 0; v < n; v++) {
+            if(reach.component(v) == best) {
+                largest[v >>> 6] |= 1L << v;
+            }
+        }
+        largestSize = n == 0 ? 0 : size[best];
+    }
+
+    /** Releases the worker threads. */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /** Returns the number of vertices in the largest strongly connected
+     * component.
+     */
+    public int largestComponentSize() {
+        return largestSize;
+    }
+
+    /** Measures from every vertex. */
+    public Result all() {
+        int[] sources = new int[n];
+        for(int v = 0; v < n; v++) {
+            sources[v] = v;
+        }
+        return run(sources);
+    }
+
+    /** Measures from the specified number of distinct random sources, or
+     * from every vertex if samples is at least the number of vertices.
+     */
+    public Result sample(int samples, long seed) {
+        if(samples < 1) {
+            throw new IllegalArgumentException("need at least one sample");
+        }
+        if(samples >= n) {
+            return all();
+        }
+        // A partial Fisher-Yates shuffle draws without replacement.
+        int[] ids = new int[n];
+        for(int v = 0; v < n; v++) {
+            ids[v] = v;
+        }
+        Random random = new Random(seed);
+        for(int i = 0; i < samples; i++) {
+            int j = i + random.nextInt(n - i);
+            int t = ids[i];
+            ids[i] = ids[j];
+            ids[j] = t;
+        }
+        return run(Arrays.copyOf(ids, samples));
+    }
+
+    private Result run(int[] sources) {
+        long start = System.nanoTime();
+        int k = sources.length;
+        int batches = (k + BATCH - 1) / BATCH;
+        int workers = Math.max(1, Math.min(batches, pool.getParallelism()));
+        long[] sum = new long[k];
+        int[] reached = new int[k];
+        int[] ecc = new int[k];
+        int[] eccComponent = new int[k];
+        int[] eccComponentIn = new int[k];
+        long[][] histograms = new long[workers][];
+        try {
+            pool.submit(() -> IntStream.range(0, workers).parallel().forEach(w -> {
+                MultiBfs bfs = new MultiBfs();
+                for(int b = w; b < batches; b += workers) {
+                    int from = b * BATCH;
+                    int to = Math.min(k, from + BATCH);
+                    bfs.run(out, sources, from, to, sum, reached, ecc, eccComponent);
+                    bfs.runBackward(sources, from, to, eccComponentIn);
+                }
+                histograms[w] = bfs.histogram;
+            })).get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while measuring", e);
+        } catch(ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        int maxDistance = 0;
+        for(int e : ecc) {
+            maxDistance = Math.max(maxDistance, e);
+        }
+        long[] histogram = new long[maxDistance + 1];
+        for(long[] h : histograms) {
+            for(int d = 0; d < Math.min(h.length, histogram.length); d++) {
+                histogram[d] += h[d];
+            }
+        }
+        int low = -1;
+        int high = -1;
+        for(int i = 0; i < k; i++) {
+            if(inLargest(sources[i])) {
+                low = Math.max(low, Math.max(eccComponent[i], eccComponentIn[i]));
+                int bound = eccComponent[i] + eccComponentIn[i];
+                high = high < 0 ? bound : Math.min(high, bound);
+            }
+        }
+        return new Result(sources, histogram, ecc, n, meanDistance(sum, reached),
+                connectedShare(reached), low, high, System.nanoTime() - start);
+    }
+
+    private boolean inLargest(int v) {
+        return (largest[v >>> 6] & (1L << v)) != 0;
+    }
+
+    // The finite population correction for k of n sources.
+    private double correction(int k) {
+        return n <= 1 ? 0 : Math.max(0, (double) (n - k) / (n - 1));
+    }
+
+    // Total distance over total connected pairs, a ratio estimator; its
+    // variance is taken by the delta method.
+    private double[] meanDistance(long[] sum, int[] reached) {
+        int k = sum.length;
+        double totalSum = 0;
+        double totalReached = 0;
+        for(int i = 0; i < k; i++) {
+            totalSum += sum[i];
+            totalReached += reached[i];
+        }
+        if(totalReached == 0) {
+            return new double[] {0, 0, 0};
+        }
+        double ratio = totalSum / totalReached;
+        if(k < 2) {
+            return new double[] {ratio, ratio, ratio};
+        }
+        double meanReached = totalReached / k;
+        double squares = 0;
+        for(int i = 0; i < k; i++) {
+            double r = sum[i] - ratio * reached[i];
+            squares += r * r;
+        }
+        double variance = squares / (k - 1) / k / (meanReached * meanReached) * correction(k);
+        double half = Z95 * Math.sqrt(variance);
+        return new double[] {ratio, ratio - half, ratio + half};
+    }
+
+    // The mean over sources of the share of other vertices each reaches.
+    private double[] connectedShare(int[] reached) {
+        int k = reached.length;
+        if(n < 2) {
+            return new double[] {0, 0, 0};
+        }
+        double mean = 0;
+        for(int r : reached) {
+            mean += (double) r / (n - 1);
+        }
+        mean /= k;
+        if(k < 2) {
+            return new double[] {mean, mean, mean};
+        }
+        double squares = 0;
+        for(int r : reached) {
+            double x = (double) r / (n - 1) - mean;
+            squares += x * x;
+        }
+        double half = Z95 * Math.sqrt(squares / (k - 1) / k * correction(k));
+        return new double[] {mean, Math.max(0, mean - half), Math.min(1, mean + half)};
+    }
+
+    // One worker's scratch space: three words per vertex for up to 64
+    // searches, and the vertices in the current and next frontier.
+    private class MultiBfs {
+        final long[] seen = new long[n];
+        final long[] frontier = new long[n];
+        final long[] next = new long[n];
+        int[] active = new int[n];
+        int[] touched = new int[n];
+        long[] histogram = new long[16];
+
+        // Searches from sources[from..to) along rows.  For every source i it
+        // fills the total distance and the number of vertices reached, its
+        // eccentricity, and its eccentricity within the largest component,
+        // and it adds every distance to the histogram.
+        void run(CsrRows rows, int[] sources, int from, int to, long[] sum,
+                int[] reached, int[] ecc, int[] eccComponent) {
+            int numActive = 0;
+            for(int i = from; i < to; i++) {
+                int s = sources[i];
+                if(frontier[s] == 0) {
+                    active[numActive++] = s;
+                }
+                long bit = 1L << (i - from);
+                seen[s] |= bit;
+                frontier[s] |= bit;
+            }
+            for(int level = 1; numActive > 0; level++) {
+                int numTouched = 0;
+                for(int a = 0; a < numActive; a++) {
+                    int v = active[a];
+                    long f = frontier[v];
+                    int end = rows.end(v);
+                    for(int e = rows.start(v); e < end; e++) {
+                        int u = rows.target(e);
+                        if((f & ~seen[u]) != 0) {
+                            if(next[u] == 0) {
+                                touched[numTouched++] = u;
+                            }
+                            next[u] |= f;
+                        }
+                    }
+                    frontier[v] = 0;
+                }
+                numActive = 0;
+                long levelMask = 0;
+                long componentMask = 0;
+                long count = 0;
+                for(int t = 0; t < numTouched; t++) {
+                    int u = touched[t];
+                    long fresh = next[u] & ~seen[u];
+                    next[u] = 0;
+                    seen[u] |= fresh;
+                    frontier[u] = fresh;
+                    active[numActive++] = u;
+                    levelMask |= fresh;
+                    if(inLargest(u)) {
+                        componentMask |= fresh;
+                    }
+                    count += Long.bitCount(fresh);
+                    if(sum != null) {
+                        for(long x = fresh; x != 0; x &= x - 1) {
+                            int i = from + Long.numberOfTrailingZeros(x);
+                            sum[i] += level;
+                            reached[i]++;
+                        }
+                    }
+                }
+                if(count == 0) {
+                    break;
+                }
+                if(sum != null) {
+                    if(level >= histogram.length) {
+                        histogram = Arrays.copyOf(histogram, Math.max(level + 1, 2 * histogram.length));
+                    }
+                    histogram[level] += count;
+                    for(long x = levelMask; x != 0; x &= x - 1) {
+                        ecc[from + Long.numberOfTrailingZeros(x)] = level;
+                    }
+                }
+                for(long x = componentMask; x != 0; x &= x - 1) {
+                    eccComponent[from + Long.numberOfTrailingZeros(x)] = level;
+                }
+            }
+            Arrays.fill(seen, 0);
+        }
+
+        // Searches backward from the sources that lie in the largest
+        // component, for their eccentricity within it.
+        void runBackward(int[] sources, int from, int to, int[] eccComponentIn) {
+            boolean any = false;
+            for(int i = from; i < to && !any; i++) {
+                any = inLargest(sources[i]);
+            }
+            if(any) {
+                run(in, sources, from, to, null, null, null, eccComponentIn);
+            }
+        }
+    }
+
+    /** Prints the statistics of a snapshot, measured from a sample of sources
+     * or, without a sample size, from every article.
+     * Usage: java SeparationStats graph.snapshot [samples] [threads]
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1 || args.length > 3) {
+            System.err.println("Usage: java SeparationStats graph.snapshot [samples] [threads]");
+            System.exit(1);
+        }
+        GraphSnapshot snapshot = GraphSnapshot.open(args[0]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+        SeparationStats stats = new SeparationStats(snapshot.graph(), threads);
+        System.out.printf("Largest strongly connected component: %d of %d articles%n",
+                stats.largestComponentSize(), snapshot.graph().numVerts());
+        Result result = args.length > 1 ? stats.sample(Integer.parseInt(args[1]), 1)
+                : stats.all();
+        System.out.print(result);
+        stats.shutdown();
+    }
+}
@@ -0,0 +1,1001 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+/**
+ * A shortest-path engine that partitions the graph across worker processes
+ * and runs the bidirectional search of BidirectionalSearch over them, level
+ * by level, as a stand-in for a graph too large for one JVM.
+ *   Every vertex is owned by one worker, which keeps its out-row, its in-row
+ * and its search state; nothing else about the vertex exists in that
+ * process.  The coordinator (this object) launches the workers on the local
+ * machine, ships each its slice of the adjacency over a loopback socket and
+ * then only drives the search: at each level it tells the workers which side
+ * to expand, and the workers send the frontier's neighbors straight to their
+ * owners over a mesh of sockets between them.
+ *   The search returns exactly the path BidirectionalSearch would.  That
+ * engine gives each vertex the parent that discovered it first, in queue
+ * order, and picks the first meeting vertex with the shortest total.  Here a
+ * vertex discovered at a level carries the key (rank of its parent in the
+ * frontier, index in the parent's row), which orders discoveries as the
+ * single-process queue would; its owner keeps the smallest key, and the
+ * coordinator merges the workers' sorted keys into the ranks of the next
+ * frontier.
+ *   Workers get a random nonce on their command line.  Every connection, to
+ * the coordinator or between workers, must open with that nonce and a worker
+ * ID in range that is not connected yet; any other connection to the
+ * loopback ports is dropped, so another local process can neither crash the
+ * setup with a bad ID nor take over a shard.
+ *   The bytes exchanged between workers and with the coordinator are
+ * recorded per level and can be read with lastLevels().  An instance is not
+ * thread-safe, and must be closed to stop the workers.
+ */
+public class ShardedSearch implements PathSearch, Closeable {
+    /** How vertex IDs are assigned to workers. */
+    public enum Partition {
+        /** Worker i owns a contiguous range of IDs. */
+        RANGE,
+        /** Worker i owns the IDs congruent to i modulo the number of
+         * workers, which spreads clusters of neighboring IDs evenly. */
+        HASH
+    }
+
+    private static final byte START = 1;
+    private static final byte EXPAND = 2;
+    private static final byte PARENT = 3;
+    private static final byte QUIT = 4;
+    private static final byte READY = 5;
+    private static final int NO_MEET = Integer.MAX_VALUE;
+    private static final int BUFFER = 1 << 16;
+    private static final int HANDSHAKE_TIMEOUT = 60000;
+
+    /** The communication of one level of a query. */
+    public static final class Level {
+        /** True if the forward side was expanded. */
+        public final boolean forward;
+        /** The number of vertices in the frontier that was expanded. */
+        public final int frontier;
+        /** The number of vertices discovered. */
+        public final int discovered;
+        /** The number of (vertex, parent, key) candidates sent between
+         * workers, after each worker dropped its own duplicates. */
+        public final long candidates;
+        /** The bytes sent from worker to worker. */
+        public final long peerBytes;
+        /** The bytes sent between the coordinator and the workers. */
+        public final long coordinatorBytes;
+
+        Level(boolean forward, int frontier, int discovered, long candidates,
+                long peerBytes, long coordinatorBytes) {
+            this.forward = forward;
+            this.frontier = frontier;
+            this.discovered = discovered;
+            this.candidates = candidates;
+            this.peerBytes = peerBytes;
+            this.coordinatorBytes = coordinatorBytes;
+        }
+
+        public String toString() {
+            return String.format("%s frontier %d, discovered %d, %d candidates, "
+                    + "%d peer bytes, %d coordinator bytes",
+                    forward ? "forward " : "backward", frontier, discovered,
+                    candidates, peerBytes, coordinatorBytes);
+        }
+    }
+
+    // Maps vertex IDs to their owner and to their index in the owner's slice.
+    private static final class Slicing {
+        final int n;
+        final int shards;
+        final Partition partition;
+        final int per;
+
+        Slicing(int n, int shards, Partition partition) {
+            this.n = n;
+            this.shards = shards;
+            this.partition = partition;
+            this.per = (int) (((long) n + shards - 1) / shards);
+        }
+
+        int owner(int v) {
+            return partition == Partition.RANGE ? v / per : v % shards;
+        }
+
+        int local(int v) {
+            return partition == Partition.RANGE ? v - owner(v) * per : v / shards;
+        }
+
+        int global(int shard, int local) {
+            return partition == Partition.RANGE ? shard * per + local : local * shards + shard;
+        }
+
+        int size(int shard) {
+            if(partition == Partition.RANGE) {
+                return Math.max(0, Math.min(per, n - shard * per));
+            }
+            return (n - shard + shards - 1) / shards;
+        }
+    }
+
+    private final int n;
+    private final Slicing slicing;
+    private final Process[] workers;
+    private final Socket[] sockets;
+    private final DataInputStream[] ins;
+    private final DataOutputStream[] outs;
+    private final CountingInput[] inCounts;
+    private final CountingOutput[] outCounts;
+    private final List<Level> levels = new ArrayList<Level>();
+
+    /** Launches shards worker processes with the classpath of this JVM and
+     * gives each its part of the specified graph, which may be discarded
+     * afterwards.
+     * @throws IOException if a worker cannot be started or reached.
+     */
+    public ShardedSearch(Graph graph, int shards, Partition partition) throws IOException {
+        if(shards < 1) {
+            throw new IllegalArgumentException("shards must be positive");
+        }
+        n = graph.numVerts();
+        slicing = new Slicing(n, shards, partition);
+        workers = new Process[shards];
+        sockets = new Socket[shards];
+        ins = new DataInputStream[shards];
+        outs = new DataOutputStream[shards];
+        inCounts = new CountingInput[shards];
+        outCounts = new CountingOutput[shards];
+        try(ServerSocket server = new ServerSocket(0, shards, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(HANDSHAKE_TIMEOUT);
+            long nonce = new SecureRandom().nextLong();
+            String java = System.getProperty("java.home") + File.separator + "bin"
+                    + File.separator + "java";
+            for(int i = 0; i < shards; i++) {
+                workers[i] = new ProcessBuilder(java, "-cp",
+                        System.getProperty("java.class.path"), "ShardedSearch",
+                        "--worker", Integer.toString(server.getLocalPort()),
+                        Integer.toString(i), Long.toString(nonce)).inheritIO().start();
+            }
+            int[] peerPorts = new int[shards];
+            int connected = 0;
+            while(connected < shards) {
+                Socket socket = server.accept();
+                try {
+                    socket.setTcpNoDelay(true);
+                    socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+                    CountingInput in = new CountingInput(socket.getInputStream());
+                    DataInputStream data = new DataInputStream(new BufferedInputStream(in, BUFFER));
+                    int id = handshake(data, nonce, 0, shards, sockets);
+                    if(id < 0) {
+                        socket.close();
+                        continue;
+                    }
+                    peerPorts[id] = data.readInt();
+                    socket.setSoTimeout(0);
+                    sockets[id] = socket;
+                    inCounts[id] = in;
+                    ins[id] = data;
+                    outCounts[id] = new CountingOutput(socket.getOutputStream());
+                    outs[id] = new DataOutputStream(new BufferedOutputStream(outCounts[id], BUFFER));
+                    connected++;
+                } catch(IOException e) {
+                    // Not a worker, or one that died mid-handshake; a missing
+                    // worker surfaces as the accept timeout.
+                    socket.close();
+                }
+            }
+            CsrRows out = CsrRows.out(graph);
+            CsrRows in = CsrRows.in(graph, out);
+            for(int i = 0; i < shards; i++) {
+                sendSlice(i, peerPorts, out, in);
+            }
+            for(int i = 0; i < shards; i++) {
+                if(ins[i].readByte() != READY) {
+                    throw new IOException("worker " + i + " failed to start");
+                }
+            }
+        } catch(IOException | RuntimeException e) {
+            stop();
+            throw e;
+        }
+    }
+
+    private void sendSlice(int shard, int[] peerPorts, CsrRows out, CsrRows in)
+            throws IOException {
+        DataOutputStream data = outs[shard];
+        data.writeInt(slicing.shards);
+        data.writeInt(slicing.partition.ordinal());
+        data.writeInt(n);
+        for(int port : peerPorts) {
+            data.writeInt(port);
+        }
+        int size = slicing.size(shard);
+        long outEdges = 0;
+        long inEdges = 0;
+        for(int l = 0; l < size; l++) {
+            int v = slicing.global(shard, l);
+            outEdges += out.end(v) - out.start(v);
+            inEdges += in.end(v) - in.start(v);
+        }
+        data.writeInt((int) outEdges);
+        data.writeInt((int) inEdges);
+        for(CsrRows rows : new CsrRows[] {out, in}) {
+            for(int l = 0; l < size; l++) {
+                int v = slicing.global(shard, l);
+                data.writeInt(rows.end(v) - rows.start(v));
+                for(int i = rows.start(v); i < rows.end(v); i++) {
+                    data.writeInt(rows.target(i));
+                }
+            }
+        }
+        data.flush();
+    }
+
+    /** Returns the number of worker processes. */
+    public int numShards() {
+        return slicing.shards;
+    }
+
+    /** Returns the communication of each level of the last query, in the
+     * order the levels were expanded.
+     */
+    public List<Level> lastLevels() {
+        return Collections.unmodifiableList(levels);
+    }
+
+    /** Returns a shortest path from source to target as a sequence of vertex
+     * IDs beginning with source and ending with target, or null if target is
+     * not reachable from source.
+     * @throws IndexOutOfBoundsException if either vertex ID is out of bounds.
+     * @throws UncheckedIOException if a worker cannot be reached.
+     */
+    public int[] findPath(int source, int target) {
+        if(source < 0 || source >= n || target < 0 || target >= n) {
+            throw new IndexOutOfBoundsException();
+        }
+        levels.clear();
+        if(source == target) {
+            return new int[] {source};
+        }
+        try {
+            return search(source, target);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int[] search(int source, int target) throws IOException {
+        int shards = slicing.shards;
+        for(DataOutputStream data : outs) {
+            data.writeByte(START);
+            data.writeInt(source);
+            data.writeInt(target);
+        }
+        int[] frontier = {1, 1};
+        int[] level = {0, 0};
+        long[][] keys = new long[shards][];
+        int[][] ranks = new int[shards][];
+        while(frontier[0] > 0 && frontier[1] > 0) {
+            int side = frontier[0] <= frontier[1] ? 0 : 1;
+            long before = coordinatorBytes();
+            for(DataOutputStream data : outs) {
+                data.writeByte(EXPAND);
+                data.writeByte(side);
+                data.writeInt(level[side]);
+                data.flush();
+            }
+            int bestTotal = NO_MEET;
+            long bestKey = Long.MAX_VALUE;
+            int meet = -1;
+            long candidates = 0;
+            long peerBytes = 0;
+            int discovered = 0;
+            for(int i = 0; i < shards; i++) {
+                DataInputStream data = ins[i];
+                int k = data.readInt();
+                keys[i] = new long[k];
+                for(int j = 0; j < k; j++) {
+                    keys[i][j] = data.readLong();
+                }
+                discovered += k;
+                int total = data.readInt();
+                long key = data.readLong();
+                int u = data.readInt();
+                candidates += data.readLong();
+                peerBytes += data.readLong();
+                if(total < bestTotal || (total == bestTotal && key < bestKey)) {
+                    bestTotal = total;
+                    bestKey = key;
+                    meet = u;
+                }
+            }
+            // Merge the workers' sorted keys; a vertex's position in the merge
+            // is its rank in the next frontier.
+            int[] pos = new int[shards];
+            for(int i = 0; i < shards; i++) {
+                ranks[i] = new int[keys[i].length];
+            }
+            for(int rank = 0; rank < discovered; rank++) {
+                int min = -1;
+                for(int i = 0; i < shards; i++) {
+                    if(pos[i] < keys[i].length
+                            && (min < 0 || keys[i][pos[i]] < keys[min][pos[min]])) {
+                        min = i;
+                    }
+                }
+                ranks[min][pos[min]++] = rank;
+            }
+            for(int i = 0; i < shards; i++) {
+                for(int r : ranks[i]) {
+                    outs[i].writeInt(r);
+                }
+                outs[i].flush();
+            }
+            levels.add(new Level(side == 0, frontier[side], discovered, candidates,
+                    peerBytes, coordinatorBytes() - before));
+            frontier[side] = discovered;
+            level[side]++;
+            if(meet >= 0) {
+                return buildPath(meet);
+            }
+        }
+        return null;
+    }
+
+    private long coordinatorBytes() {
+        long total = 0;
+        for(int i = 0; i < slicing.shards; i++) {
+            total += inCounts[i].count + outCounts[i].count;
+        }
+        return total;
+    }
+
+    // Follows the parent chains of both sides from meet, one round trip to
+    // the owner per vertex; paths are short, so this costs little.
+    private int[] buildPath(int meet) throws IOException {
+        List<Integer> forward = new ArrayList<Integer>();
+        for(int v = meet; v != -1; v = parent(0, v)) {
+            forward.add(v);
+        }
+        List<Integer> backward = new ArrayList<Integer>();
+        for(int v = parent(1, meet); v != -1; v = parent(1, v)) {
+            backward.add(v);
+        }
+        int[] path = new int[forward.size() + backward.size()];
+        int i = 0;
+        for(int j = forward.size() - 1; j >= 0; j--) {
+            path[i++] = forward.get(j);
+        }
+        for(int v : backward) {
+            path[i++] = v;
+        }
+        return path;
+    }
+
+    private int parent(int side, int v) throws IOException {
+        int owner = slicing.owner(v);
+        outs[owner].writeByte(PARENT);
+        outs[owner].writeByte(side);
+        outs[owner].writeInt(v);
+        outs[owner].flush();
+        return ins[owner].readInt();
+    }
+
+    /** Stops the workers and waits for them to exit. */
+    public void close() {
+        stop();
+    }
+
+    private void stop() {
+        for(int i = 0; i < workers.length; i++) {
+            try {
+                if(outs[i] != null) {
+                    outs[i].writeByte(QUIT);
+                    outs[i].flush();
+                }
+                if(sockets[i] != null) {
+                    sockets[i].close();
+                }
+            } catch(IOException e) {
+                // The worker is gone already.
+            }
+        }
+        for(Process worker : workers) {
+            if(worker == null) {
+                continue;
+            }
+            try {
+                if(!worker.waitFor(5, TimeUnit.SECONDS)) {
+                    worker.destroyForcibly();
+                }
+            } catch(InterruptedException e) {
+                worker.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class CountingInput extends FilterInputStream {
+        long count;
+
+        CountingInput(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            int b = super.read();
+            if(b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int r = super.read(b, off, len);
+            if(r > 0) {
+                count += r;
+            }
+            return r;
+        }
+    }
+
+    private static final class CountingOutput extends FilterOutputStream {
+        long count;
+
+        CountingOutput(OutputStream out) {
+            super(out);
+        }
+
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    // Reads the nonce and worker ID a connection opens with, and returns the
+    // ID if the nonce matches and the ID lies in [from, to) with no socket in
+    // taken yet; -1 otherwise.
+    private static int handshake(DataInputStream in, long nonce, int from, int to,
+            Object[] taken) throws IOException {
+        if(in.readLong() != nonce) {
+            return -1;
+        }
+        int id = in.readInt();
+        return id >= from && id < to && taken[id] == null ? id : -1;
+    }
+
+    // The worker process: owns one slice of the graph and both sides' search
+    // state for it, and answers the coordinator's commands until told to quit
+    // or the coordinator goes away.
+    private static final class Worker {
+        final int id;
+        final Slicing slicing;
+        final int size;
+        final int[][] offsets = new int[2][];
+        final int[][] targets = new int[2][];
+        final long[][] seen = new long[2][];
+        final int[][] dist = new int[2][];
+        final int[][] parent = new int[2][];
+        // Every local vertex a side has visited, for resetting.
+        final int[][] visited = new int[2][];
+        final int[] numVisited = new int[2];
+        // The current frontier of each side in rank order, as local indices.
+        final int[][] frontier = new int[2][];
+        final int[][] frontierRank = new int[2][];
+        final int[] frontierSize = new int[2];
+        // The best claim on each local vertex during one level.
+        final long[] claimKey;
+        final int[] claimParent;
+        final DataInputStream in;
+        final DataOutputStream out;
+        final DataInputStream[] peerIn;
+        final DataOutputStream[] peerOut;
+        final CountingOutput[] peerCount;
+        final ExecutorService senders;
+        // Outgoing candidates per destination: vertex, parent and key.
+        final int[][] sendVertex;
+        final int[][] sendParent;
+        final long[][] sendKey;
+        final int[] sendSize;
+        final IntSet sent = new IntSet();
+
+        Worker(int id, long nonce, DataInputStream in, DataOutputStream out,
+                ServerSocket peerServer) throws IOException {
+            this.id = id;
+            this.in = in;
+            this.out = out;
+            int shards = in.readInt();
+            Partition partition = Partition.values()[in.readInt()];
+            int n = in.readInt();
+            slicing = new Slicing(n, shards, partition);
+            int[] peerPorts = new int[shards];
+            for(int i = 0; i < shards; i++) {
+                peerPorts[i] = in.readInt();
+            }
+            size = slicing.size(id);
+            int[] edges = {in.readInt(), in.readInt()};
+            for(int side = 0; side < 2; side++) {
+                offsets[side] = new int[size + 1];
+                targets[side] = new int[edges[side]];
+                for(int l = 0; l < size; l++) {
+                    int d = in.readInt();
+                    int start = offsets[side][l];
+                    for(int i = 0; i < d; i++) {
+                        targets[side][start + i] = in.readInt();
+                    }
+                    offsets[side][l + 1] = start + d;
+                }
+                seen[side] = new long[(size + 63) >>> 6];
+                dist[side] = new int[size];
+                parent[side] = new int[size];
+                visited[side] = new int[size];
+                frontier[side] = new int[size];
+                frontierRank[side] = new int[size];
+            }
+            claimKey = new long[size];
+            Arrays.fill(claimKey, Long.MAX_VALUE);
+            claimParent = new int[size];
+
+            // Connect to the lower-numbered workers and accept the higher,
+            // dropping any connection that is not one of them.
+            peerIn = new DataInputStream[shards];
+            peerOut = new DataOutputStream[shards];
+            peerCount = new CountingOutput[shards];
+            for(int j = 0; j < id; j++) {
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), peerPorts[j]);
+                DataOutputStream hello = new DataOutputStream(socket.getOutputStream());
+                hello.writeLong(nonce);
+                hello.writeInt(id);
+                connectPeer(j, socket);
+            }
+            for(int accepted = id + 1; accepted < shards; ) {
+                Socket socket = peerServer.accept();
+                try {
+                    socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+                    int peer = handshake(new DataInputStream(socket.getInputStream()), nonce,
+                            id + 1, shards, peerIn);
+                    if(peer < 0) {
+                        socket.close();
+                        continue;
+                    }
+                    socket.setSoTimeout(0);
+                    connectPeer(peer, socket);
+                    accepted++;
+                } catch(IOException e) {
+                    socket.close();
+                }
+            }
+            peerServer.close();
+            senders = Executors.newFixedThreadPool(Math.max(1, shards - 1), r -> {
+                Thread t = new Thread(r, "shard-sender");
+                t.setDaemon(true);
+                return t;
+            });
+            sendVertex = new int[shards][16];
+            sendParent = new int[shards][16];
+            sendKey = new long[shards][16];
+            sendSize = new int[shards];
+        }
+
+        private void connectPeer(int peer, Socket socket) throws IOException {
+            socket.setTcpNoDelay(true);
+            peerIn[peer] = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream(), BUFFER));
+            peerCount[peer] = new CountingOutput(socket.getOutputStream());
+            peerOut[peer] = new DataOutputStream(
+                    new BufferedOutputStream(peerCount[peer], BUFFER));
+        }
+
+        void run() throws IOException {
+            out.writeByte(READY);
+            out.flush();
+            while(true) {
+                byte command = in.readByte();
+                if(command == START) {
+                    start(in.readInt(), in.readInt());
+                } else if(command == EXPAND) {
+                    int side = in.readByte();
+                    expand(side, in.readInt());
+                } else if(command == PARENT) {
+                    int side = in.readByte();
+                    out.writeInt(parent[side][slicing.local(in.readInt())]);
+                    out.flush();
+                } else if(command == QUIT) {
+                    return;
+                } else {
+                    throw new IOException("unknown command " + command);
+                }
+            }
+        }
+
+        private boolean isSeen(int side, int l) {
+            return (seen[side][l >>> 6] & (1L << l)) != 0;
+        }
+
+        private void visit(int side, int l, int d, int p) {
+            seen[side][l >>> 6] |= 1L << l;
+            dist[side][l] = d;
+            parent[side][l] = p;
+            visited[side][numVisited[side]++] = l;
+        }
+
+        private void start(int source, int target) {
+            for(int side = 0; side < 2; side++) {
+                for(int q = 0; q < numVisited[side]; q++) {
+                    seen[side][visited[side][q] >>> 6] = 0;
+                }
+                numVisited[side] = 0;
+                frontierSize[side] = 0;
+                int root = side == 0 ? source : target;
+                if(slicing.owner(root) == id) {
+                    int l = slicing.local(root);
+                    visit(side, l, 0, -1);
+                    frontier[side][0] = l;
+                    frontierRank[side][0] = 0;
+                    frontierSize[side] = 1;
+                }
+            }
+        }
+
+        private void expand(int side, int level) throws IOException {
+            int shards = slicing.shards;
+            int[] off = offsets[side];
+            int[] tgt = targets[side];
+            Arrays.fill(sendSize, 0);
+            sent.clear();
+            // Frontier vertices in rank order, each row in order: the first
+            // candidate for a vertex has the smallest key this worker can give.
+            for(int q = 0; q < frontierSize[side]; q++) {
+                int l = frontier[side][q];
+                int v = slicing.global(id, l);
+                long rank = (long) frontierRank[side][q] << 32;
+                for(int i = off[l]; i < off[l + 1]; i++) {
+                    int u = tgt[i];
+                    int owner = slicing.owner(u);
+                    if(owner == id && isSeen(side, slicing.local(u))) {
+                        continue;
+                    }
+                    if(!sent.add(u)) {
+                        continue;
+                    }
+                    append(owner, u, v, rank | (i - off[l]));
+                }
+            }
+            long candidates = 0;
+            long bytesBefore = 0;
+            List<Future<?>> sends = new ArrayList<Future<?>>();
+            for(int j = 0; j < shards; j++) {
+                if(j == id) {
+                    continue;
+                }
+                candidates += sendSize[j];
+                bytesBefore += peerCount[j].count;
+                final int peer = j;
+                sends.add(senders.submit(() -> {
+                    send(peer);
+                    return null;
+                }));
+            }
+            // Claims arrive from this worker and from every peer; each local
+            // vertex keeps the smallest key offered.
+            int[] touched = new int[16];
+            int numTouched = 0;
+            for(int j = 0; j < shards; j++) {
+                if(j == id) {
+                    for(int c = 0; c < sendSize[id]; c++) {
+                        numTouched = claim(side, sendVertex[id][c], sendParent[id][c],
+                                sendKey[id][c], touched, numTouched);
+                        if(numTouched == touched.length) {
+                            touched = Arrays.copyOf(touched, numTouched * 2);
+                        }
+                    }
+                    continue;
+                }
+                DataInputStream data = peerIn[j];
+                int count = data.readInt();
+                for(int c = 0; c < count; c++) {
+                    int u = data.readInt();
+                    int p = data.readInt();
+                    long key = data.readLong();
+                    numTouched = claim(side, u, p, key, touched, numTouched);
+                    if(numTouched == touched.length) {
+                        touched = Arrays.copyOf(touched, numTouched * 2);
+                    }
+                }
+            }
+            try {
+                for(Future<?> f : sends) {
+                    f.get();
+                }
+            } catch(InterruptedException e) {
+                throw new IOException(e);
+            } catch(ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+            long peerBytes = -bytesBefore;
+            for(int j = 0; j < shards; j++) {
+                if(j != id) {
+                    peerBytes += peerCount[j].count;
+                }
+            }
+
+            // Visit the claimed vertices in key order and report the keys.
+            long[] keys = new long[numTouched];
+            for(int t = 0; t < numTouched; t++) {
+                keys[t] = claimKey[touched[t]];
+            }
+            sortByKey(keys, touched, 0, numTouched);
+            int other = 1 - side;
+            int bestTotal = NO_MEET;
+            long bestKey = Long.MAX_VALUE;
+            int best = -1;
+            for(int t = 0; t < numTouched; t++) {
+                int l = touched[t];
+                visit(side, l, level + 1, claimParent[l]);
+                claimKey[l] = Long.MAX_VALUE;
+                if(isSeen(other, l) && level + 1 + dist[other][l] < bestTotal) {
+                    bestTotal = level + 1 + dist[other][l];
+                    bestKey = keys[t];
+                    best = slicing.global(id, l);
+                }
+            }
+            out.writeInt(numTouched);
+            for(int t = 0; t < numTouched; t++) {
+                out.writeLong(keys[t]);
+            }
+            out.writeInt(bestTotal);
+            out.writeLong(bestKey);
+            out.writeInt(best);
+            out.writeLong(candidates);
+            out.writeLong(peerBytes);
+            out.flush();
+            for(int t = 0; t < numTouched; t++) {
+                frontier[side][t] = touched[t];
+                frontierRank[side][t] = in.readInt();
+            }
+            frontierSize[side] = numTouched;
+        }
+
+        private int claim(int side, int u, int p, long key, int[] touched, int numTouched) {
+            int l = slicing.local(u);
+            if(isSeen(side, l)) {
+                return numTouched;
+            }
+            if(claimKey[l] == Long.MAX_VALUE) {
+                touched[numTouched++] = l;
+            }
+            if(key < claimKey[l]) {
+                claimKey[l] = key;
+                claimParent[l] = p;
+            }
+            return numTouched;
+        }
+
+        private void append(int owner, int u, int p, long key) {
+            int s = sendSize[owner];
+            if(s == sendVertex[owner].length) {
+                sendVertex[owner] = Arrays.copyOf(sendVertex[owner], s * 2);
+                sendParent[owner] = Arrays.copyOf(sendParent[owner], s * 2);
+                sendKey[owner] = Arrays.copyOf(sendKey[owner], s * 2);
+            }
+            sendVertex[owner][s] = u;
+            sendParent[owner][s] = p;
+            sendKey[owner][s] = key;
+            sendSize[owner] = s + 1;
+        }
+
+        private void send(int peer) throws IOException {
+            DataOutputStream data = peerOut[peer];
+            data.writeInt(sendSize[peer]);
+            for(int c = 0; c < sendSize[peer]; c++) {
+                data.writeInt(sendVertex[peer][c]);
+                data.writeInt(sendParent[peer][c]);
+                data.writeLong(sendKey[peer][c]);
+            }
+            data.flush();
+        }
+    }
+
+    // Sorts keys[from..to) ascending and permutes values alongside; the keys
+    // are distinct.
+    private static void sortByKey(long[] keys, int[] values, int from, int to) {
+        while(to - from > 16) {
+            long pivot = keys[(from + to) >>> 1];
+            int i = from;
+            int j = to - 1;
+            while(i <= j) {
+                while(keys[i] < pivot) {
+                    i++;
+                }
+                while(keys[j] > pivot) {
+                    j--;
+                }
+                if(i <= j) {
+                    long k = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = k;
+                    int v = values[i];
+                    values[i] = values[j];
+                    values[j] = v;
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the smaller part to bound the stack depth.
+            if(j + 1 - from < to - i) {
+                sortByKey(keys, values, from, j + 1);
+                from = i;
+            } else {
+                sortByKey(keys, values, i, to);
+                to = j + 1;
+            }
+        }
+        for(int i = from + 1; i < to; i++) {
+            long k = keys[i];
+            int v = values[i];
+            int j = i - 1;
+            for(; j >= from && keys[j] > k; j--) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+            }
+            keys[j + 1] = k;
+            values[j + 1] = v;
+        }
+    }
+
+    // An open-addressing set of non-negative ints that clears in time
+    // proportional to its size.
+    private static final class IntSet {
+        private int[] table = new int[64];
+        private int[] slots = new int[32];
+        private int size;
+
+        IntSet() {
+            Arrays.fill(table, -1);
+        }
+
+        boolean add(int x) {
+            int mask = table.length - 1;
+            int i = (x * 0x9E3779B9) >>> 7 & mask;
+            for(; table[i] != -1; i = (i + 1) & mask) {
+                if(table[i] == x) {
+                    return false;
+                }
+            }
+            table[i] = x;
+            if(size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = i;
+            if(size * 2 > table.length) {
+                grow();
+            }
+            return true;
+        }
+
+        private void grow() {
+            int[] old = table;
+            table = new int[old.length * 2];
+            Arrays.fill(table, -1);
+            int mask = table.length - 1;
+            for(int s = 0; s < size; s++) {
+                int x = old[slots[s]];
+                int i = (x * 0x9E3779B9) >>> 7 & mask;
+                while(table[i] != -1) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = x;
+                slots[s] = i;
+            }
+        }
+
+        void clear() {
+            for(int s = 0; s < size; s++) {
+                table[slots[s]] = -1;
+            }
+            size = 0;
+        }
+    }
+
+    private static void runWorker(int coordinatorPort, int id, long nonce) throws IOException {
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), coordinatorPort);
+                ServerSocket peerServer = new ServerSocket(0, 64,
+                        InetAddress.getLoopbackAddress())) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream(), BUFFER));
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream(), BUFFER));
+            out.writeLong(nonce);
+            out.writeInt(id);
+            out.writeInt(peerServer.getLocalPort());
+            out.flush();
+            new Worker(id, nonce, in, out, peerServer).run();
+        } catch(java.io.EOFException e) {
+            // The coordinator went away; there is nothing left to serve.
+        }
+    }
+
+    /** Checks the partitioned search against BidirectionalSearch on random
+     * pairs and prints the communication of the queries.
+     * Usage: java ShardedSearch graph.snapshot [shards] [range|hash] [queries]
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length == 4 && args[0].equals("--worker")) {
+            runWorker(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                    Long.parseLong(args[3]));
+            System.exit(0);
+        }
+        if(args.length < 1 || args.length > 4) {
+            System.err.println("Usage: java ShardedSearch graph.snapshot [shards] [range|hash] [queries]");
+            System.exit(1);
+        }
+        GraphSnapshot snapshot = GraphSnapshot.open(args[0]);
+        int shards = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        Partition partition = args.length > 2
+                ? Partition.valueOf(args[2].toUpperCase()) : Partition.HASH;
+        int queries = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        Graph graph = snapshot.graph();
+        int n = graph.numVerts();
+        long start = System.nanoTime();
+        try(ShardedSearch sharded = new ShardedSearch(graph, shards, partition)) {
+            System.out.printf("Started %d %s workers in %.1f ms%n", shards, partition,
+                    (System.nanoTime() - start) / 1e6);
+            BidirectionalSearch local = new BidirectionalSearch(graph);
+            Random random = new Random(1);
+            int mismatches = 0;
+            long levels = 0;
+            long peerBytes = 0;
+            long coordinatorBytes = 0;
+            start = System.nanoTime();
+            for(int q = 0; q < queries; q++) {
+                int s = random.nextInt(n);
+                int t = random.nextInt(n);
+                if(!Arrays.equals(sharded.findPath(s, t), local.findPath(s, t))) {
+                    mismatches++;
+                }
+                for(Level level : sharded.lastLevels()) {
+                    levels++;
+                    peerBytes += level.peerBytes;
+                    coordinatorBytes += level.coordinatorBytes;
+                }
+                if(q == 0) {
+                    System.out.println(snapshot.title(s) + " -> " + snapshot.title(t) + ":");
+                    for(Level level : sharded.lastLevels()) {
+                        System.out.println("  " + level);
+                    }
+                }
+            }
+            System.out.printf("%d queries in %.1f ms, %d paths differ from BidirectionalSearch%n",
+                    queries, (System.nanoTime() - start) / 1e6, mismatches);
+            System.out.printf("%d levels, %.1f KB between workers, %.1f KB with the coordinator%n",
+                    levels, peerBytes / 1024.0, coordinatorBytes / 1024.0);
+        }
+    }
+}
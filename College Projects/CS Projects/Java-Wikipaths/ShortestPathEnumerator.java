@@ -0,0 +1,311 @@
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+/**
+ * Counts and lists shortest paths between two vertices, and finds the k
+ * shortest simple paths.
+ *   Every shortest path from s to t runs through the breadth-first DAG of s:
+ * the edges (u, v) with dist(s, v) = dist(s, u) + 1.  countShortestPaths adds
+ * up path counts level by level on that DAG, saturating at Long.MAX_VALUE
+ * instead of overflowing.  shortestPaths walks the DAG backward from t with an
+ * explicit stack and produces one path per call to next(), so only the current
+ * path is ever in memory, however many there are.
+ *   kShortestSimplePaths is Yen's algorithm: each new path deviates from a
+ * known one at a spur vertex, found by a breadth-first search that avoids the
+ * root prefix and the edges already used there.
+ *   Counting and Yen's algorithm share reusable scratch arrays, so an instance
+ * is not thread-safe; give each thread its own.  Iterators own their state and
+ * stay valid across later calls.
+ */
+public class ShortestPathEnumerator {
+    /** The count returned when there are at least Long.MAX_VALUE paths. */
+    public static final long SATURATED = Long.MAX_VALUE;
+
+    private final int n;
+    private final CsrRows out;
+    private final CsrRows in;
+
+    private final int[] dist;
+    private final int[] parent;
+    private final long[] sigma;
+    private final int[] queue;
+    private final long[] banned;
+    private int tail;
+
+    /** Constructs an enumerator over the specified graph.  The graph must not
+     * change while the enumerator is in use.
+     */
+    public ShortestPathEnumerator(Graph graph) {
+        n = graph.numVerts();
+        out = CsrRows.out(graph);
+        in = CsrRows.in(graph, out);
+        dist = new int[n];
+        parent = new int[n];
+        sigma = new long[n];
+        queue = new int[n];
+        banned = new long[(n + 63) >>> 6];
+        Arrays.fill(dist, -1);
+    }
+
+    private void checkVertex(int v) {
+        if(v < 0 || v >= n) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    /** Returns the number of distinct shortest paths from s to t, 0 if t is
+     * unreachable, or SATURATED if there are at least Long.MAX_VALUE.
+     * @throws IndexOutOfBoundsException if either vertex ID is out of bounds.
+     */
+    public long countShortestPaths(int s, int t) {
+        checkVertex(s);
+        checkVertex(t);
+        try {
+            dist[s] = 0;
+            sigma[s] = 1;
+            queue[tail++] = s;
+            for(int head = 0; head < tail; head++) {
+                int v = queue[head];
+                if(dist[t] >= 0 && dist[v] >= dist[t]) {
+                    break;
+                }
+                for(int i = out.start(v); i < out.end(v); i++) {
+                    int u = out.target(i);
+                    if(dist[u] < 0) {
+                        dist[u] = dist[v] + 1;
+                        sigma[u] = 0;
+                        queue[tail++] = u;
+                    }
+                    if(dist[u] == dist[v] + 1) {
+                        sigma[u] = saturatedAdd(sigma[u], sigma[v]);
+                    }
+                }
+            }
+            return dist[t] < 0 ? 0 : sigma[t];
+        } finally {
+            reset();
+        }
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? SATURATED : sum;
+    }
+
+    private void reset() {
+        for(int i = 0; i < tail; i++) {
+            dist[queue[i]] = -1;
+        }
+        tail = 0;
+    }
+
+    /** Returns a lazy iterator over every shortest path from s to t, each as a
+     * fresh array of vertex IDs from s to t.  The iterator is empty if t is
+     * unreachable.
+     * @throws IndexOutOfBoundsException if either vertex ID is out of bounds.
+     */
+    public Iterator<int[]> shortestPaths(int s, int t) {
+        checkVertex(s);
+        checkVertex(t);
+        // The iterator keeps its own distance labels, so they are computed
+        // into a fresh array rather than the shared scratch space.
+        int[] levels = new int[n];
+        Arrays.fill(levels, -1);
+        int[] q = new int[n];
+        int qt = 0;
+        levels[s] = 0;
+        q[qt++] = s;
+        for(int head = 0; head < qt && levels[t] < 0; head++) {
+            int v = q[head];
+            for(int i = out.start(v); i < out.end(v); i++) {
+                int u = out.target(i);
+                if(levels[u] < 0) {
+                    levels[u] = levels[v] + 1;
+                    q[qt++] = u;
+                }
+            }
+        }
+        return new DagIterator(levels, s, t);
+    }
+
+    // Depth-first walk of the BFS DAG backward from t.  stack[d] is the
+    // vertex at distance d on the current path, and cursor[d] is the next
+    // in-edge of stack[d] to try.  Every vertex with a finite label other
+    // than s has an in-neighbor one level closer, so no branch dead-ends.
+    private class DagIterator implements Iterator<int[]> {
+        private final int[] levels;
+        private final int s;
+        private final int[] stack;
+        private final int[] cursor;
+        private boolean ready;
+        private boolean done;
+
+        DagIterator(int[] levels, int s, int t) {
+            this.levels = levels;
+            this.s = s;
+            int d = levels[t];
+            if(d < 0) {
+                stack = null;
+                cursor = null;
+                done = true;
+                return;
+            }
+            stack = new int[d + 1];
+            cursor = new int[d + 1];
+            stack[d] = t;
+            cursor[d] = in.start(t);
+            ready = descend(d);
+            done = !ready;
+        }
+
+        // Extends the path from level d down to s, always taking the first
+        // untried predecessor.  Returns false if level d has none left.
+        private boolean descend(int d) {
+            while(d > 0) {
+                int v = stack[d];
+                int u = -1;
+                while(cursor[d] < in.end(v)) {
+                    int w = in.target(cursor[d]++);
+                    if(levels[w] == d - 1 && (d - 1 > 0 || w == s)) {
+                        u = w;
+                        break;
+                    }
+                }
+                if(u < 0) {
+                    return false;
+                }
+                stack[d - 1] = u;
+                cursor[d - 1] = in.start(u);
+                d--;
+            }
+            return true;
+        }
+
+        // Moves to the next path: backtracks to the lowest level with an
+        // untried predecessor and descends again from there.
+        private boolean advance() {
+            for(int d = 1; d < stack.length; d++) {
+                if(descend(d)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean hasNext() {
+            if(!ready && !done) {
+                ready = advance();
+                done = !ready;
+            }
+            return ready;
+        }
+
+        public int[] next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ready = false;
+            return stack.clone();
+        }
+    }
+
+    /** Returns up to k shortest simple paths from s to t in order of length,
+     * using Yen's algorithm.  If the time budget runs out, the paths found so
+     * far are returned.
+     * @throws IndexOutOfBoundsException if either vertex ID is out of bounds.
+     */
+    public List<int[]> kShortestSimplePaths(int s, int t, int k, long budgetNanos) {
+        checkVertex(s);
+        checkVertex(t);
+        long deadline = System.nanoTime() + budgetNanos;
+        List<int[]> found = new ArrayList<int[]>();
+        if(k <= 0) {
+            return found;
+        }
+        int[] first = restrictedPath(s, t, null, 0, null);
+        if(first == null) {
+            return found;
+        }
+        found.add(first);
+        PriorityQueue<int[]> candidates = new PriorityQueue<int[]>(
+                (a, b) -> Integer.compare(a.length, b.length));
+        Set<IntBuffer> seen = new HashSet<IntBuffer>();
+        seen.add(IntBuffer.wrap(first));
+        while(found.size() < k && System.nanoTime() < deadline) {
+            int[] last = found.get(found.size() - 1);
+            for(int i = 0; i < last.length - 1 && System.nanoTime() < deadline; i++) {
+                // The root is last[0..i]; the spur path leaves last[i] by an
+                // edge no known path with the same root has used.
+                List<Integer> bannedNext = new ArrayList<Integer>();
+                for(int[] p : found) {
+                    if(p.length > i + 1 && Arrays.equals(p, 0, i + 1, last, 0, i + 1)) {
+                        bannedNext.add(p[i + 1]);
+                    }
+                }
+                int[] spur = restrictedPath(last[i], t, last, i, bannedNext);
+                if(spur == null) {
+                    continue;
+                }
+                int[] candidate = new int[i + spur.length];
+                System.arraycopy(last, 0, candidate, 0, i);
+                System.arraycopy(spur, 0, candidate, i, spur.length);
+                if(seen.add(IntBuffer.wrap(candidate))) {
+                    candidates.add(candidate);
+                }
+            }
+            if(candidates.isEmpty()) {
+                break;
+            }
+            found.add(candidates.poll());
+        }
+        return found;
+    }
+
+    // Breadth-first shortest path from spur to t that avoids root[0..i) and,
+    // on its first step, the vertices in bannedNext.
+    private int[] restrictedPath(int spur, int t, int[] root, int i,
+            List<Integer> bannedNext) {
+        for(int j = 0; j < i; j++) {
+            banned[root[j] >>> 6] |= 1L << root[j];
+        }
+        try {
+            dist[spur] = 0;
+            parent[spur] = -1;
+            queue[tail++] = spur;
+            for(int head = 0; head < tail; head++) {
+                int v = queue[head];
+                if(v == t) {
+                    int[] path = new int[dist[t] + 1];
+                    for(int u = t, j = dist[t]; u != -1; u = parent[u], j--) {
+                        path[j] = u;
+                    }
+                    return path;
+                }
+                for(int e = out.start(v); e < out.end(v); e++) {
+                    int u = out.target(e);
+                    if(dist[u] >= 0 || (banned[u >>> 6] & (1L << u)) != 0) {
+                        continue;
+                    }
+                    if(v == spur && bannedNext != null && bannedNext.contains(u)) {
+                        continue;
+                    }
+                    dist[u] = dist[v] + 1;
+                    parent[u] = v;
+                    queue[tail++] = u;
+                }
+            }
+            return null;
+        } finally {
+            reset();
+            for(int j = 0; j < i; j++) {
+                banned[root[j] >>> 6] = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,393 @@
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+/**
+ * Loads articles and links files in the PathFinder TSV format from dumps that
+ * may be gzipped (a ".gz" name) and far larger than memory.
+ *   Each file is read by a pair of threads: a reader thread inflates the
+ * stream into fixed-size byte chunks and hands them over a small bounded
+ * queue to the parsing thread, which splits lines in place and recycles the
+ * chunks.  Decompression and parsing overlap, and no more than a few chunks
+ * are ever in memory, whatever the size of the dump.
+ *   Titles are looked up in the ArticleDictionary straight from the bytes, so
+ * no String or String[] is built per line.  They are kept as they appear in
+ * the files, as every other loader keeps them, unless setDecodeTitles(true)
+ * is called: then percent-encoding such as "%C3%85land" is decoded once, as
+ * the title is read, into the UTF-8 bytes of "\u00c5land", and link endpoints
+ * are decoded the same way into a scratch buffer.  Whether the files are
+ * gzipped makes no difference to the titles.
+ *   Links are read in two passes, like ParallelEdgeLoader: the first counts
+ * out-degrees to size the CSR rows and the second fills them, so the dump is
+ * inflated twice rather than held.  Rows are deduplicated in place; if any
+ * link repeats, the targets are trimmed into a copy, and the in-edge index is
+ * transposed from that copy while the untrimmed array is still live.  Expect
+ * a peak of two targets arrays and the in-index, plus a few int arrays sized
+ * by the vertex count.
+ *   Progress (bytes of the file read, lines, elapsed time) is reported about
+ * once a second to the stream given to setProgress, if any.
+ */
+public class StreamingDumpLoader {
+    private static final int CHUNK_SIZE = 4 << 20;
+    private static final int CHUNKS = 4;
+    private static final int INFLATE_BUFFER = 1 << 20;
+    private static final long PROGRESS_NANOS = 1000000000L;
+
+    private final ArticleDictionary articles;
+    private PrintStream progress;
+    private boolean decodeTitles;
+
+    /** Constructs a loader that adds titles to, and resolves links through,
+     * the specified dictionary.
+     */
+    public StreamingDumpLoader(ArticleDictionary articles) {
+        this.articles = articles;
+    }
+
+    /** Makes the loader report progress to out; null turns reporting off. */
+    public void setProgress(PrintStream out) {
+        this.progress = out;
+    }
+
+    /** Makes the loader decode the percent-encoding of every title it reads,
+     * in both files, or keep titles as they are (the default).  Call before
+     * loading, and load a links file with the same setting as its articles.
+     */
+    public void setDecodeTitles(boolean decode) {
+        this.decodeTitles = decode;
+    }
+
+    /** Adds every title in an articles file to the dictionary, decoding
+     * percent-encoding if setDecodeTitles(true) was called.
+     * @throws IOException if the file cannot be read.
+     */
+    public ArticleDictionary loadArticles(String nodeFile) throws IOException {
+        byte[] title = new byte[256];
+        scan(nodeFile, "articles", (line, from, to) -> {
+            if(!decodeTitles) {
+                articles.add(line, from, to);
+                return;
+            }
+            byte[] t = title.length >= to - from ? title : new byte[to - from];
+            int len = decode(line, from, to, t);
+            articles.add(t, 0, len);
+        });
+        articles.trimToSize();
+        return articles;
+    }
+
+    /** Reads a links file and returns the graph it describes, with in-edges,
+     * over the vertex IDs of the dictionary.
+     * @throws IOException if the file cannot be read or a link names an
+     * article that is not in the dictionary.
+     */
+    public CompactUnweightedGraph loadLinks(String edgeFile) throws IOException {
+        int n = articles.size();
+        int[] offsets = new int[n + 1];
+        Resolver resolver = new Resolver(edgeFile);
+        scan(edgeFile, "links pass 1/2", (line, from, to) ->
+                offsets[resolver.source(line, from, to) + 1]++);
+        for(int v = 0; v < n; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] targets = new int[offsets[n]];
+        int[] fill = Arrays.copyOf(offsets, n);
+        scan(edgeFile, "links pass 2/2", (line, from, to) -> {
+            int begin = resolver.source(line, from, to);
+            targets[fill[begin]++] = resolver.target(line, from, to);
+        });
+        // Sort and deduplicate each row, then squeeze out the gaps.
+        int write = 0;
+        int rowStart = 0;
+        for(int v = 0; v < n; v++) {
+            int rowEnd = offsets[v + 1];
+            Arrays.sort(targets, rowStart, rowEnd);
+            offsets[v] = write;
+            for(int i = rowStart; i < rowEnd; i++) {
+                if(i == rowStart || targets[i] != targets[i - 1]) {
+                    targets[write++] = targets[i];
+                }
+            }
+            rowStart = rowEnd;
+        }
+        offsets[n] = write;
+        return CompactUnweightedGraph.fromRows(offsets,
+                write == targets.length ? targets : Arrays.copyOf(targets, write),
+                true);
+    }
+
+    // Splits a link line at its tab and resolves each side.  Only the parsing
+    // thread uses it, so one scratch buffer is enough.
+    private class Resolver {
+        private final String file;
+        private byte[] scratch = new byte[256];
+
+        Resolver(String file) {
+            this.file = file;
+        }
+
+        int source(byte[] line, int from, int to) throws IOException {
+            return resolve(line, from, tab(line, from, to));
+        }
+
+        int target(byte[] line, int from, int to) throws IOException {
+            return resolve(line, tab(line, from, to) + 1, to);
+        }
+
+        private int tab(byte[] line, int from, int to) throws IOException {
+            for(int i = from; i < to; i++) {
+                if(line[i] == '\t') {
+                    return i;
+                }
+            }
+            throw new IOException(file + ": malformed link line");
+        }
+
+        private int resolve(byte[] line, int from, int to) throws IOException {
+            int id;
+            if(!decodeTitles || indexOf(line, from, to, (byte) '%') < 0) {
+                id = articles.find(line, from, to);
+            } else {
+                if(scratch.length < to - from) {
+                    scratch = new byte[to - from];
+                }
+                id = articles.find(scratch, 0, decode(line, from, to, scratch));
+            }
+            if(id < 0) {
+                throw new IOException(file + ": unknown article in link: "
+                        + new String(line, from, to - from, StandardCharsets.UTF_8));
+            }
+            return id;
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte b) {
+        for(int i = from; i < to; i++) {
+            if(bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Decodes the percent-encoding of bytes[from..to) into dst and returns
+     * the decoded length.  A '%' not followed by two hex digits is kept as
+     * is.  dst must have room for to - from bytes.
+     */
+    static int decode(byte[] bytes, int from, int to, byte[] dst) {
+        int len = 0;
+        for(int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if(b == '%' && i + 2 < to) {
+                int hi = Character.digit(bytes[i + 1], 16);
+                int lo = Character.digit(bytes[i + 2], 16);
+                if(hi >= 0 && lo >= 0) {
+                    dst[len++] = (byte) (hi << 4 | lo);
+                    i += 2;
+                    continue;
+                }
+            }
+            dst[len++] = b;
+        }
+        return len;
+    }
+
+    private interface LineSink {
+        void accept(byte[] line, int from, int to) throws IOException;
+    }
+
+    // One chunk of inflated bytes; length -1 marks the end of the stream,
+    // and a non-null failure an error in the reader thread.
+    private static final class Chunk {
+        final byte[] bytes = new byte[CHUNK_SIZE];
+        int length;
+        IOException failure;
+    }
+
+    // Counts the bytes read from the file itself, before inflating, so that
+    // progress can be reported against the file size.
+    private static final class CountingStream extends FilterInputStream {
+        volatile long count;
+
+        CountingStream(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            int b = super.read();
+            if(b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if(n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    // Streams the file through the reader thread and passes every line that
+    // is neither blank nor a '#' comment to sink, without its line ending.
+    private void scan(String file, String what, LineSink sink) throws IOException {
+        long fileSize = new java.io.File(file).length();
+        CountingStream raw = new CountingStream(new FileInputStream(file));
+        InputStream in = file.endsWith(".gz")
+                ? new GZIPInputStream(raw, INFLATE_BUFFER) : raw;
+        BlockingQueue<Chunk> full = new ArrayBlockingQueue<Chunk>(CHUNKS);
+        BlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(CHUNKS);
+        for(int i = 0; i < CHUNKS; i++) {
+            free.add(new Chunk());
+        }
+        Thread reader = new Thread(() -> inflate(in, free, full), "dump-reader");
+        reader.setDaemon(true);
+        reader.start();
+        long start = System.nanoTime();
+        long lastReport = start;
+        long lines = 0;
+        // A line cut by a chunk boundary is carried over here.
+        byte[] carry = new byte[256];
+        int carried = 0;
+        try {
+            while(true) {
+                Chunk chunk = full.take();
+                if(chunk.failure != null) {
+                    throw chunk.failure;
+                }
+                if(chunk.length < 0) {
+                    break;
+                }
+                byte[] b = chunk.bytes;
+                int lineStart = 0;
+                for(int i = 0; i < chunk.length; i++) {
+                    if(b[i] != '\n') {
+                        continue;
+                    }
+                    if(carried > 0) {
+                        carry = append(carry, carried, b, 0, i);
+                        line(carry, 0, carried + i, sink);
+                        carried = 0;
+                    } else {
+                        line(b, lineStart, i, sink);
+                    }
+                    lines++;
+                    lineStart = i + 1;
+                }
+                carry = append(carry, carried, b, lineStart, chunk.length);
+                carried += chunk.length - lineStart;
+                free.put(chunk);
+                long now = System.nanoTime();
+                if(progress != null && now - lastReport >= PROGRESS_NANOS) {
+                    lastReport = now;
+                    progress.printf("%s: %s: %.1f%% of %d bytes, %d lines, %.1f s%n",
+                            file, what, fileSize == 0 ? 100.0 : 100.0 * raw.count / fileSize,
+                            fileSize, lines, (now - start) / 1e9);
+                }
+            }
+            if(carried > 0) {
+                line(carry, 0, carried, sink);
+                lines++;
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while reading " + file, e);
+        } finally {
+            reader.interrupt();
+            in.close();
+        }
+        if(progress != null) {
+            progress.printf("%s: %s: done, %d lines in %.1f s%n", file, what,
+                    lines, (System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    // Copies bytes[from..to) after the first used bytes of carry, growing it
+    // if needed.
+    private static byte[] append(byte[] carry, int used, byte[] bytes, int from, int to) {
+        int len = to - from;
+        if(used + len > carry.length) {
+            carry = Arrays.copyOf(carry, Math.max(carry.length * 2, used + len));
+        }
+        System.arraycopy(bytes, from, carry, used, len);
+        return carry;
+    }
+
+    private static void line(byte[] b, int from, int to, LineSink sink) throws IOException {
+        if(to > from && b[to - 1] == '\r') {
+            to--;
+        }
+        if(from < to && b[from] == '#') {
+            return;
+        }
+        for(int i = from; i < to; i++) {
+            if((b[i] & 0xff) > ' ') {
+                sink.accept(b, from, to);
+                return;
+            }
+        }
+    }
+
+    // The reader thread: fills free chunks from the stream until it ends.
+    private static void inflate(InputStream in, BlockingQueue<Chunk> free,
+            BlockingQueue<Chunk> full) {
+        try {
+            while(true) {
+                Chunk chunk = free.take();
+                int n = 0;
+                int r = 0;
+                try {
+                    while(n < CHUNK_SIZE && (r = in.read(chunk.bytes, n, CHUNK_SIZE - n)) > 0) {
+                        n += r;
+                    }
+                } catch(IOException e) {
+                    chunk.failure = e;
+                    full.put(chunk);
+                    return;
+                }
+                if(n > 0) {
+                    chunk.length = n;
+                    full.put(chunk);
+                    if(r >= 0) {
+                        continue;
+                    }
+                    chunk = free.take();
+                }
+                chunk.length = -1;
+                full.put(chunk);
+                return;
+            }
+        } catch(InterruptedException e) {
+            // The parser gave up; nobody is waiting for more chunks.
+        }
+    }
+
+    /** Loads a pair of dumps and prints what they contain; --decode decodes
+     * percent-encoded titles.
+     * Usage: java StreamingDumpLoader [--decode] articles.tsv.gz links.tsv.gz
+     */
+    public static void main(String[] args) throws IOException {
+        boolean decode = args.length > 0 && args[0].equals("--decode");
+        int first = decode ? 1 : 0;
+        if(args.length != first + 2) {
+            System.err.println("Usage: java StreamingDumpLoader [--decode] articles.tsv[.gz] links.tsv[.gz]");
+            System.exit(1);
+        }
+        StreamingDumpLoader loader = new StreamingDumpLoader(new ArticleDictionary());
+        loader.setProgress(System.err);
+        loader.setDecodeTitles(decode);
+        long start = System.nanoTime();
+        ArticleDictionary titles = loader.loadArticles(args[first]);
+        CompactUnweightedGraph graph = loader.loadLinks(args[first + 1]);
+        System.out.printf("%d articles, %d links in %.1f ms%n", titles.size(),
+                graph.numEdges(), (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -10,4 +10,38 @@ public interface UnweightedGraph extends Graph {
      * @throws IndexOutOfBoundsException if either vertex ID is out of bounds.
      */
     public boolean addEdge(int begin, int end);
+
+    /** Adds the edges (src[i], dst[i]) for every i, as addEdge would.
+     * @return the number of edges that were not already in the graph.
+     * @throws IllegalArgumentException if src and dst differ in length.
+     * @throws IndexOutOfBoundsException if any vertex ID is out of bounds.
+     */
+    public default int addEdges(int[] src, int[] dst) {
+        if(src.length != dst.length) {
+            throw new IllegalArgumentException("src and dst differ in length");
+        }
+        return addEdges(src, dst, src.length);
+    }
+
+    /** Adds the edges (src[i], dst[i]) for i < count, as addEdge would, so
+     * that a stream of edges can be fed through the same pair of buffers.
+     * This default implementation calls addEdge once per edge, and an ID out
+     * of bounds may leave the edges before it added; implementations with
+     * sorted rows override it to merge the whole batch at once.
+     * @return the number of edges that were not already in the graph.
+     * @throws IndexOutOfBoundsException if count exceeds either array, or if
+     * any vertex ID is out of bounds.
+     */
+    public default int addEdges(int[] src, int[] dst, int count) {
+        if(count < 0 || count > src.length || count > dst.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        int added = 0;
+        for(int i = 0; i < count; i++) {
+            if(addEdge(src[i], dst[i])) {
+                added++;
+            }
+        }
+        return added;
+    }
 }
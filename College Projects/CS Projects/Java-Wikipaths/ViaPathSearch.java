@@ -0,0 +1,147 @@
+import java.io.Closeable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+/**
+ * Answers via-node queries: a shortest path from an origin to a target that
+ * passes through a given intermediate vertex.  Such a path is a shortest
+ * origin-to-via path followed by a shortest via-to-target path, and the two
+ * legs do not depend on each other, so they are searched at the same time:
+ * the first leg on the calling thread, the second on a helper thread.
+ *   Each leg has its own search engine, created once and reused for every
+ * query, so a query allocates no search state.  The helper is a daemon thread
+ * kept for the life of the instance; close() stops it.
+ *   If a QueryTrace is attached, the first leg records into it and the second
+ * into a trace of its own, which is added to it once both legs are done, so
+ * the two threads never write to one trace.  The caller begins and ends the
+ * attached trace.  An instance is not thread-safe; give each thread its own.
+ */
+public class ViaPathSearch implements Closeable {
+    /** Which leg of a via-node query has no path. */
+    public enum Leg { NONE, ORIGIN_TO_VIA, VIA_TO_TARGET }
+
+    /** The outcome of one via-node query. */
+    public static class Result {
+        /** The whole path from origin through via to target, or null. */
+        public final int[] path;
+        /** The length of each leg in edges, or -1 if that leg has no path. */
+        public final int firstLegLength;
+        public final int secondLegLength;
+        /** The first leg without a path, or NONE if path is not null. */
+        public final Leg unreachableLeg;
+
+        Result(int[] path, int firstLegLength, int secondLegLength,
+                Leg unreachableLeg) {
+            this.path = path;
+            this.firstLegLength = firstLegLength;
+            this.secondLegLength = secondLegLength;
+            this.unreachableLeg = unreachableLeg;
+        }
+
+        /** Returns true if a path through the via vertex exists. */
+        public boolean found() {
+            return path != null;
+        }
+    }
+
+    private final PathSearch first;
+    private final PathSearch second;
+    private final ExecutorService helper;
+    private final QueryTrace secondTrace = new QueryTrace();
+    private QueryTrace trace;
+
+    /** Constructs a via-node engine over the specified graph with a
+     * BidirectionalSearch engine per leg.
+     */
+    public ViaPathSearch(Graph graph) {
+        this(new BidirectionalSearch(graph), new BidirectionalSearch(graph));
+    }
+
+    /** Constructs a via-node engine from two engines over the same graph.
+     * They must be distinct, since the legs run concurrently.
+     */
+    public ViaPathSearch(PathSearch first, PathSearch second) {
+        if(first == second) {
+            throw new IllegalArgumentException("each leg needs its own engine");
+        }
+        this.first = first;
+        this.second = second;
+        this.helper = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "via-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Makes both legs record what they do into trace, or stop recording if
+     * trace is null.
+     */
+    public void setTrace(QueryTrace trace) {
+        this.trace = trace;
+        first.setTrace(trace);
+        second.setTrace(trace == null ? null : secondTrace);
+    }
+
+    /** Finds a shortest path from origin to target through via.
+     * @throws IndexOutOfBoundsException if any vertex ID is out of bounds.
+     */
+    public Result findPath(int origin, int via, int target) {
+        if(trace != null) {
+            secondTrace.begin(via, target);
+        }
+        Future<int[]> pending = helper.submit(() -> second.findPath(via, target));
+        int[] firstLeg;
+        int[] secondLeg;
+        try {
+            firstLeg = first.findPath(origin, via);
+        } finally {
+            secondLeg = await(pending);
+        }
+        if(trace != null) {
+            trace.add(secondTrace);
+        }
+        int firstLength = firstLeg == null ? -1 : firstLeg.length - 1;
+        int secondLength = secondLeg == null ? -1 : secondLeg.length - 1;
+        if(firstLeg == null) {
+            return new Result(null, firstLength, secondLength, Leg.ORIGIN_TO_VIA);
+        }
+        if(secondLeg == null) {
+            return new Result(null, firstLength, secondLength, Leg.VIA_TO_TARGET);
+        }
+        int[] path = new int[firstLeg.length + secondLeg.length - 1];
+        System.arraycopy(firstLeg, 0, path, 0, firstLeg.length);
+        System.arraycopy(secondLeg, 1, path, firstLeg.length, secondLeg.length - 1);
+        return new Result(path, firstLength, secondLength, Leg.NONE);
+    }
+
+    /** Stops the helper thread.  The instance cannot be used afterwards. */
+    public void close() {
+        helper.shutdownNow();
+    }
+
+    // Waits for the second leg even if interrupted, since the helper is still
+    // using the second engine; the interrupt is restored afterwards.
+    private static int[] await(Future<int[]> leg) {
+        boolean interrupted = false;
+        try {
+            while(true) {
+                try {
+                    return leg.get();
+                } catch(InterruptedException e) {
+                    interrupted = true;
+                } catch(ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if(cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw (RuntimeException) cause;
+                }
+            }
+        } finally {
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
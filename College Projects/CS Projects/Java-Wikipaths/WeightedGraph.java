@@ -0,0 +1,36 @@
+/**
+ * An interface for weighted graphs, whose edges each carry a non-negative
+ * cost.  For more discussion of the structure and use of this interface, see
+ * the Graph interface.
+ */
+public interface WeightedGraph extends Graph {
+    /** Receives the out-edges of a vertex one at a time, without boxing. */
+    public interface EdgeConsumer {
+        public void accept(int end, double weight);
+    }
+
+    /** Adds a weighted edge between two vertices.
+     * In an undirected graph, this has the same effect as
+     * addEdge(end, begin, weight).
+     * @return false if the edge was already in the graph.
+     * @throws IndexOutOfBoundsException if either vertex ID is out of bounds.
+     * @throws IllegalArgumentException if weight is negative or NaN.
+     */
+    public boolean addEdge(int begin, int end, double weight);
+
+    /** Returns the weight of the edge from begin to end.
+     * @throws java.util.NoSuchElementException if there is no such edge.
+     */
+    public double getWeight(int begin, int end);
+
+    /** Calls action once for each out-edge of the specified vertex, with the
+     * neighbor and the weight of the edge, in the order getNeighbors would
+     * give the neighbors.  This default implementation boxes the neighbors
+     * and looks every weight up; implementations override it.
+     */
+    public default void forEachEdge(int v, EdgeConsumer action) {
+        for(int u : getNeighbors(v)) {
+            action.accept(u, getWeight(v, u));
+        }
+    }
+}
@@ -0,0 +1,248 @@
+import java.util.Arrays;
+import java.util.Random;
+/**
+ * A shortest-path engine for weighted graphs: Dijkstra's algorithm, or A*
+ * when a Heuristic is attached, over an IndexedDaryHeap of vertex IDs.
+ *   The rows are read straight from the arrays of a CompactWeightedGraph, or
+ * copied once into the same form from any other WeightedGraph.  All per-query
+ * state lives in primitive arrays sized to the graph and allocated once: the
+ * heap, a distance and a parent per vertex, and a settled bitset.  Only the
+ * entries a query touched are reset, so a query costs time proportional to
+ * the part of the graph it explores, and nothing is boxed or allocated per
+ * vertex.  An instance is not thread-safe; give each thread its own engine.
+ */
+public class WeightedSearch implements PathSearch {
+    /** A lower bound on the remaining cost from a vertex to the target.  For
+     * A* to return shortest paths the bound must be consistent: never more
+     * than the weight of an edge (v, u) plus the bound at u, and 0 at the
+     * target.
+     */
+    public interface Heuristic {
+        public double estimate(int v, int target);
+    }
+
+    private final int n;
+    private final int[] offsets;
+    private final int[] targets;
+    private final float[] weights;
+
+    private final IndexedDaryHeap open;
+    private final double[] dist;
+    private final int[] parent;
+    private final long[] seen;
+    private final long[] settled;
+    private int[] touched;
+    private int touchedCount;
+    private Heuristic heuristic;
+    private QueryTrace trace;
+    private double lastDistance;
+    private long expanded;
+
+    /** Constructs an engine over the specified graph.  The graph must not
+     * change while the engine is in use.
+     */
+    public WeightedSearch(WeightedGraph graph) {
+        n = graph.numVerts();
+        if(graph instanceof CompactWeightedGraph) {
+            CompactWeightedGraph csr = (CompactWeightedGraph) graph;
+            offsets = csr.offsets();
+            targets = csr.targets();
+            weights = csr.weights();
+        } else {
+            offsets = new int[n + 1];
+            for(int v = 0; v < n; v++) {
+                offsets[v + 1] = offsets[v] + graph.getDegree(v);
+            }
+            targets = new int[offsets[n]];
+            weights = new float[offsets[n]];
+            int[] fill = {0};
+            for(int v = 0; v < n; v++) {
+                graph.forEachEdge(v, (u, w) -> {
+                    targets[fill[0]] = u;
+                    weights[fill[0]++] = (float) w;
+                });
+            }
+        }
+        open = new IndexedDaryHeap(n);
+        dist = new double[n];
+        parent = new int[n];
+        seen = new long[(n + 63) >>> 6];
+        settled = new long[(n + 63) >>> 6];
+        touched = new int[64];
+    }
+
+    /** Makes queries run A* with the specified heuristic; null goes back to
+     * Dijkstra's algorithm.
+     */
+    public void setHeuristic(Heuristic heuristic) {
+        this.heuristic = heuristic;
+    }
+
+    public void setTrace(QueryTrace trace) {
+        this.trace = trace;
+    }
+
+    /** Returns the total weight of the path found by the last query, or
+     * positive infinity if it found none.
+     */
+    public double lastDistance() {
+        return lastDistance;
+    }
+
+    /** Returns the number of vertices settled by the last query. */
+    public long lastExpanded() {
+        return expanded;
+    }
+
+    /** Returns the total weight of a lightest path from source to target, or
+     * positive infinity if target is not reachable from source.
+     * @throws IndexOutOfBoundsException if either vertex ID is out of bounds.
+     */
+    public double distance(int source, int target) {
+        findPath(source, target);
+        return lastDistance;
+    }
+
+    /** Returns a lightest path from source to target as a sequence of vertex
+     * IDs beginning with source and ending with target, or null if target is
+     * not reachable from source.
+     * @throws IndexOutOfBoundsException if either vertex ID is out of bounds.
+     */
+    public int[] findPath(int source, int target) {
+        if(source < 0 || source >= n || target < 0 || target >= n) {
+            throw new IndexOutOfBoundsException();
+        }
+        expanded = 0;
+        lastDistance = Double.POSITIVE_INFINITY;
+        long scanned = 0;
+        try {
+            visit(source, 0, -1);
+            open.offer(source, estimate(source, target));
+            while(!open.isEmpty()) {
+                int v = open.poll();
+                settled[v >>> 6] |= 1L << v;
+                expanded++;
+                if(v == target) {
+                    lastDistance = dist[target];
+                    return buildPath(target);
+                }
+                double g = dist[v];
+                int end = offsets[v + 1];
+                scanned += end - offsets[v];
+                for(int i = offsets[v]; i < end; i++) {
+                    int u = targets[i];
+                    if(isSet(settled, u)) {
+                        continue;
+                    }
+                    double d = g + weights[i];
+                    if(isSet(seen, u) && d >= dist[u]) {
+                        continue;
+                    }
+                    visit(u, d, v);
+                    open.offer(u, d + estimate(u, target));
+                }
+            }
+            return null;
+        } finally {
+            if(trace != null) {
+                trace.expanded(expanded, scanned);
+            }
+            reset();
+        }
+    }
+
+    private double estimate(int v, int target) {
+        return heuristic == null ? 0 : heuristic.estimate(v, target);
+    }
+
+    private static boolean isSet(long[] bits, int v) {
+        return (bits[v >>> 6] & (1L << v)) != 0;
+    }
+
+    private void visit(int v, double d, int p) {
+        if(!isSet(seen, v)) {
+            seen[v >>> 6] |= 1L << v;
+            if(touchedCount == touched.length) {
+                touched = Arrays.copyOf(touched, touchedCount * 2);
+            }
+            touched[touchedCount++] = v;
+        }
+        dist[v] = d;
+        parent[v] = p;
+    }
+
+    private int[] buildPath(int target) {
+        int length = 1;
+        for(int v = target; parent[v] != -1; v = parent[v]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for(int v = target, i = length - 1; v != -1; v = parent[v], i--) {
+            path[i] = v;
+        }
+        return path;
+    }
+
+    private void reset() {
+        for(int i = 0; i < touchedCount; i++) {
+            int v = touched[i];
+            seen[v >>> 6] = 0;
+            settled[v >>> 6] = 0;
+        }
+        touchedCount = 0;
+        open.clear();
+    }
+
+    /** Weighs every link of a snapshot by the cost of clicking it at random,
+     * -log(1 / out-degree), and times the most probable click paths between
+     * random pairs.
+     * Usage: java WeightedSearch graph.snapshot [queries]
+     */
+    public static void main(String[] args) throws java.io.IOException {
+        if(args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java WeightedSearch graph.snapshot [queries]");
+            System.exit(1);
+        }
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        GraphSnapshot snapshot = GraphSnapshot.open(args[0]);
+        Graph graph = snapshot.graph();
+        int n = graph.numVerts();
+        CompactWeightedGraph.Builder builder = new CompactWeightedGraph.Builder(n);
+        int[] row = new int[16];
+        for(int v = 0; v < n; v++) {
+            int d = graph.getDegree(v);
+            if(d > row.length) {
+                row = new int[d];
+            }
+            graph.copyNeighbors(v, row);
+            for(int i = 0; i < d; i++) {
+                builder.addEdge(v, row[i], Math.log(d));
+            }
+        }
+        CompactWeightedGraph weighted = builder.build();
+        WeightedSearch search = new WeightedSearch(weighted);
+        Random random = new Random(1);
+        long settled = 0;
+        int found = 0;
+        long start = System.nanoTime();
+        for(int q = 0; q < queries; q++) {
+            int s = random.nextInt(n);
+            int t = random.nextInt(n);
+            if(search.findPath(s, t) != null) {
+                found++;
+            }
+            settled += search.lastExpanded();
+        }
+        System.out.printf("%d queries (%d with a path) in %.1f ms, %.0f vertices settled per query%n",
+                queries, found, (System.nanoTime() - start) / 1e6, (double) settled / queries);
+        int[] path = search.findPath(0, n - 1);
+        if(path != null) {
+            StringBuilder sb = new StringBuilder();
+            for(int v : path) {
+                sb.append(sb.length() == 0 ? "" : " -> ").append(snapshot.title(v));
+            }
+            System.out.printf("Most probable click path, probability %.2e: %s%n",
+                    Math.exp(-search.lastDistance()), sb);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+import wikipaths.bench.BenchGraph;
+import wikipaths.bench.EdgeList;
+import wikipaths.bench.EdgeSink;
+import wikipaths.bench.Subjects;
+/**
+ * The Wikipaths side of the benchmark bridge.  It lives in the unnamed package
+ * with the graph classes, so it can name them, and hands them to the
+ * benchmarks in wikipaths.bench through the interfaces defined there.
+ */
+public class WikipathsSubjects implements Subjects {
+    // A bigger AdjacencyMatrix would need more than a billion list entries.
+    private static final int MATRIX_LIMIT = 1 << 14;
+
+    // An UnweightedGraph seen as a BenchGraph.
+    private static class Handle implements BenchGraph {
+        private final UnweightedGraph graph;
+        private BidirectionalSearch search;
+
+        Handle(UnweightedGraph graph) {
+            this.graph = graph;
+        }
+
+        public boolean hasEdge(int begin, int end) {
+            return graph.hasEdge(begin, end);
+        }
+
+        public Iterable<Integer> getNeighbors(int v) {
+            return graph.getNeighbors(v);
+        }
+
+        public int getInDegree(int v) {
+            return graph.getInDegree(v);
+        }
+
+        public int numVerts() {
+            return graph.numVerts();
+        }
+
+        public int numEdges() {
+            return graph.numEdges();
+        }
+
+        public int[] findPath(int source, int target) {
+            if(search == null) {
+                search = new BidirectionalSearch(graph);
+            }
+            return search.findPath(source, target);
+        }
+    }
+
+    // Adds edges straight to a mutable graph.  A Mystery graph can build its
+    // reverse adjacency index in bulk once the edges are in.
+    private static class MutableSink implements EdgeSink {
+        private final UnweightedGraph graph;
+        private final boolean indexInEdges;
+
+        MutableSink(UnweightedGraph graph, int numVerts, boolean indexInEdges) {
+            this.graph = graph;
+            this.indexInEdges = indexInEdges;
+            while(graph.numVerts() < numVerts) {
+                graph.addVertex();
+            }
+        }
+
+        public boolean addEdge(int begin, int end) {
+            return graph.addEdge(begin, end);
+        }
+
+        public BenchGraph finish() {
+            if(indexInEdges) {
+                ((MysteryUnweightedGraphImplementation) graph).buildInEdgeIndex();
+            }
+            return new Handle(graph);
+        }
+    }
+
+    // Collects edges in a builder and converts the result on finish().
+    private static class BuilderSink implements EdgeSink {
+        private final String implementation;
+        private final CompactUnweightedGraph.Builder builder;
+        private final ArticleDictionary titles;
+
+        BuilderSink(String implementation, int numVerts, ArticleDictionary titles) {
+            this.implementation = implementation;
+            this.builder = new CompactUnweightedGraph.Builder(numVerts).withInEdges();
+            this.titles = titles;
+        }
+
+        public boolean addEdge(int begin, int end) {
+            builder.addEdge(begin, end);
+            return true;
+        }
+
+        public BenchGraph finish() {
+            return convert(implementation, builder.build(), titles);
+        }
+    }
+
+    // Turns a loaded CompactUnweightedGraph into the specified immutable
+    // implementation.
+    private static BenchGraph convert(String implementation, CompactUnweightedGraph compact,
+            ArticleDictionary titles) {
+        switch(implementation) {
+            case "Compressed":
+                return new Handle(new CompressedUnweightedGraph(compact));
+            case "Hybrid":
+                return new Handle(new HybridUnweightedGraph(compact));
+            case "Mapped":
+                return new Handle(snapshot(compact, titles));
+            default:
+                return new Handle(compact);
+        }
+    }
+
+    // Writes the graph to a temporary snapshot and maps it.  The file is
+    // unlinked at once where the system allows it, so that repeated builds
+    // do not fill the temporary directory; the mapping stays valid.
+    private static MappedUnweightedGraph snapshot(CompactUnweightedGraph compact,
+            ArticleDictionary titles) {
+        ArticleDictionary names = titles;
+        if(names == null) {
+            names = new ArticleDictionary(compact.numVerts());
+            for(int v = 0; v < compact.numVerts(); v++) {
+                names.add("v" + v);
+            }
+        }
+        try {
+            File file = File.createTempFile("wikipaths", ".snapshot");
+            GraphSnapshot.write(names, compact, file.getPath());
+            MappedUnweightedGraph graph = GraphSnapshot.open(file.getPath()).graph();
+            if(!file.delete()) {
+                file.deleteOnExit();
+            }
+            return graph;
+        } catch(IOException e) {
+            throw new IllegalStateException("could not write a snapshot", e);
+        }
+    }
+
+    public EdgeList read(String articleFile, String linkFile) throws IOException {
+        ArticleDictionary titles = new ArticleDictionary();
+        CompactUnweightedGraph graph = loadCompact(titles, articleFile, linkFile);
+        int n = graph.numVerts();
+        String[] names = new String[n];
+        int[] src = new int[graph.numEdges()];
+        int[] dst = new int[graph.numEdges()];
+        int e = 0;
+        for(int v = 0; v < n; v++) {
+            names[v] = titles.title(v);
+            for(int u : graph.getNeighbors(v)) {
+                src[e] = v;
+                dst[e++] = u;
+            }
+        }
+        return new EdgeList(names, src, dst);
+    }
+
+    public EdgeSink create(String implementation, int numVerts) {
+        return create(implementation, numVerts, null);
+    }
+
+    // The compiled AdjacencyList and AdjacencyMatrix classes refuse to build
+    // directed graphs, so they get undirected ones.
+    private EdgeSink create(String implementation, int numVerts, ArticleDictionary titles) {
+        switch(implementation) {
+            case "AdjacencyList":
+                return new MutableSink(new AdjacencyListGraphImplementation(false), numVerts,
+                        false);
+            case "AdjacencyMatrix":
+                if(numVerts > MATRIX_LIMIT) {
+                    throw new IllegalArgumentException("AdjacencyMatrix would need "
+                            + (long) numVerts * numVerts + " entries; use at most "
+                            + MATRIX_LIMIT + " vertices");
+                }
+                return new MutableSink(new AdjacencyMatrixGraphImplementation(false), numVerts,
+                        false);
+            case "Mystery":
+            case "MysteryInIndex":
+                return new MutableSink(new MysteryUnweightedGraphImplementation(true, numVerts),
+                        numVerts, implementation.equals("MysteryInIndex"));
+            case "Compact":
+            case "Compressed":
+            case "Hybrid":
+            case "Mapped":
+                return new BuilderSink(implementation, numVerts, titles);
+            default:
+                throw new IllegalArgumentException("unknown implementation " + implementation);
+        }
+    }
+
+    // The immutable graphs are loaded with PathFinder's own loaders and then
+    // converted.  PathFinder never loads the mutable graphs, so they get every
+    // link line resolved and added as it is read.
+    public BenchGraph load(String implementation, String articleFile, String linkFile)
+            throws IOException {
+        switch(implementation) {
+            case "Compact":
+            case "Compressed":
+            case "Hybrid":
+            case "Mapped":
+                ArticleDictionary titles = new ArticleDictionary();
+                return convert(implementation, loadCompact(titles, articleFile, linkFile),
+                        titles);
+            default:
+                break;
+        }
+        ArticleDictionary titles = readTitles(new ArticleDictionary(), articleFile);
+        EdgeSink sink = create(implementation, titles.size(), titles);
+        try(BufferedReader reader = open(linkFile)) {
+            String next;
+            while((next = reader.readLine()) != null) {
+                if(!next.startsWith("#") && next.trim().length() > 0) {
+                    int tab = next.indexOf('\t');
+                    int begin = titles.find(next.substring(0, tab));
+                    int end = titles.find(next.substring(tab + 1));
+                    if(begin < 0 || end < 0) {
+                        throw new IOException(linkFile + ": unknown article in link: " + next);
+                    }
+                    sink.addEdge(begin, end);
+                }
+            }
+        }
+        return sink.finish();
+    }
+
+    // Fills titles and loads the links as PathFinder does: a gzipped pair is
+    // streamed by StreamingDumpLoader, anything else goes through
+    // ParallelEdgeLoader.
+    private static CompactUnweightedGraph loadCompact(ArticleDictionary titles,
+            String articleFile, String linkFile) throws IOException {
+        if(articleFile.endsWith(".gz") || linkFile.endsWith(".gz")) {
+            StreamingDumpLoader loader = new StreamingDumpLoader(titles);
+            loader.loadArticles(articleFile);
+            return loader.loadLinks(linkFile);
+        }
+        readTitles(titles, articleFile);
+        return new ParallelEdgeLoader(titles).load(linkFile);
+    }
+
+    private static ArticleDictionary readTitles(ArticleDictionary titles, String articleFile)
+            throws IOException {
+        try(BufferedReader reader = open(articleFile)) {
+            String next;
+            while((next = reader.readLine()) != null) {
+                if(!next.startsWith("#") && next.trim().length() > 0) {
+                    titles.add(next);
+                }
+            }
+        }
+        titles.trimToSize();
+        return titles;
+    }
+
+    // Opens a UTF-8 text file, decompressing it if its name ends in .gz.
+    private static BufferedReader open(String file) throws IOException {
+        InputStream in = Files.newInputStream(Paths.get(file));
+        if(file.endsWith(".gz")) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,26 @@
+package wikipaths.bench;
+
+/**
+ * One graph under test, seen through the calls the benchmarks make.  The
+ * Wikipaths classes live in the unnamed package, which code in a named package
+ * (as JMH requires benchmarks to be) cannot refer to, so WikipathsSubjects
+ * wraps each UnweightedGraph in one of these.  Each benchmark fork only ever
+ * sees one implementation, so the wrapper calls inline away.
+ */
+public interface BenchGraph {
+    public boolean hasEdge(int begin, int end);
+
+    public Iterable<Integer> getNeighbors(int v);
+
+    public int getInDegree(int v);
+
+    public int numVerts();
+
+    public int numEdges();
+
+    /** Returns a shortest path from source to target found by
+     * BidirectionalSearch, the engine PathFinder answers queries with, or
+     * null if there is none.  The engine is built on first use.
+     */
+    public int[] findPath(int source, int target);
+}
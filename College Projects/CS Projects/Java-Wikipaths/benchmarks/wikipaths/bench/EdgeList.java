@@ -0,0 +1,140 @@
+package wikipaths.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * A directed graph as titled vertices and a plain list of edges, the input
+ * every implementation is built from.  scaleUp() makes a larger graph of the
+ * same shape: it lays down several copies of the graph and sends a share of
+ * the links of each copy to the same article in another copy, so the degree
+ * distribution and the local link structure are kept while the copies stay
+ * connected to each other.
+ */
+public class EdgeList {
+    public final String[] titles;
+    public final int[] src;
+    public final int[] dst;
+
+    public EdgeList(String[] titles, int[] src, int[] dst) {
+        if(src.length != dst.length) {
+            throw new IllegalArgumentException("edge arrays differ in length");
+        }
+        this.titles = titles;
+        this.src = src;
+        this.dst = dst;
+    }
+
+    public int numVerts() {
+        return titles.length;
+    }
+
+    public int numEdges() {
+        return src.length;
+    }
+
+    /** Returns a graph with factor copies of this one, in which each link
+     * points into another copy, picked at random, with probability cross.
+     * Copy 0 keeps the original titles; copy c appends " (c)" to them.
+     */
+    public EdgeList scaleUp(int factor, double cross, long seed) {
+        if(factor < 1) {
+            throw new IllegalArgumentException("scale factor must be positive");
+        }
+        if(factor == 1) {
+            return this;
+        }
+        int n = numVerts();
+        int m = numEdges();
+        String[] bigTitles = new String[n * factor];
+        int[] bigSrc = new int[m * factor];
+        int[] bigDst = new int[m * factor];
+        Random random = new Random(seed);
+        for(int c = 0; c < factor; c++) {
+            for(int v = 0; v < n; v++) {
+                bigTitles[c * n + v] = c == 0 ? titles[v] : titles[v] + " (" + c + ")";
+            }
+            for(int i = 0; i < m; i++) {
+                int to = c;
+                if(random.nextDouble() < cross) {
+                    to = (c + 1 + random.nextInt(factor - 1)) % factor;
+                }
+                bigSrc[c * m + i] = c * n + src[i];
+                bigDst[c * m + i] = to * n + dst[i];
+            }
+        }
+        return new EdgeList(bigTitles, bigSrc, bigDst);
+    }
+
+    /** Adds every edge to a new graph of the specified implementation. */
+    public BenchGraph build(Subjects subjects, String implementation) {
+        EdgeSink sink = subjects.create(implementation, numVerts());
+        for(int i = 0; i < src.length; i++) {
+            sink.addEdge(src[i], dst[i]);
+        }
+        return sink.finish();
+    }
+
+    /** Returns count random vertices. */
+    public int[] randomVertices(int count, long seed) {
+        Random random = new Random(seed);
+        int[] ids = new int[count];
+        for(int i = 0; i < count; i++) {
+            ids[i] = random.nextInt(numVerts());
+        }
+        return ids;
+    }
+
+    /** Returns count (begin, end) pairs as two arrays; half of them, at
+     * random positions, are edges of the graph and the rest random pairs.
+     */
+    public int[][] probes(int count, long seed) {
+        Random random = new Random(seed);
+        int[][] pairs = new int[2][count];
+        for(int i = 0; i < count; i++) {
+            if(random.nextBoolean() && src.length > 0) {
+                int e = random.nextInt(src.length);
+                pairs[0][i] = src[e];
+                pairs[1][i] = dst[e];
+            } else {
+                pairs[0][i] = random.nextInt(numVerts());
+                pairs[1][i] = random.nextInt(numVerts());
+            }
+        }
+        return pairs;
+    }
+
+    /** Writes the graph to articles.tsv and links.tsv in dir, in the format
+     * PathFinder reads, and returns the two paths.
+     */
+    public Path[] writeTsv(Path dir) throws IOException {
+        Path articles = dir.resolve("articles.tsv");
+        Path links = dir.resolve("links.tsv");
+        try(BufferedWriter out = Files.newBufferedWriter(articles, StandardCharsets.UTF_8)) {
+            out.write("# The list of all articles.\n# FORMAT:   article\n#\n");
+            for(String title : titles) {
+                out.write(title);
+                out.write('\n');
+            }
+        }
+        try(BufferedWriter out = Files.newBufferedWriter(links, StandardCharsets.UTF_8)) {
+            out.write("# The list of all links between articles.\n");
+            out.write("# FORMAT:   linkSource   linkTarget\n#\n");
+            for(int i = 0; i < src.length; i++) {
+                out.write(titles[src[i]]);
+                out.write('\t');
+                out.write(titles[dst[i]]);
+                out.write('\n');
+            }
+        }
+        return new Path[] {articles, links};
+    }
+
+    public String toString() {
+        return String.format("%d vertices, %d edges", numVerts(), numEdges());
+    }
+}
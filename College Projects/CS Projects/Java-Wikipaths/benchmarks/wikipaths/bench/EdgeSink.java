@@ -0,0 +1,17 @@
+package wikipaths.bench;
+
+/**
+ * Collects edges for one implementation.  Mutable graphs take them straight
+ * through addEdge; the immutable ones collect them in a
+ * CompactUnweightedGraph.Builder and are built from it by finish().
+ */
+public interface EdgeSink {
+    /** Adds an edge.
+     * @return false if the implementation reports that the edge was already
+     * in the graph; a builder always returns true.
+     */
+    public boolean addEdge(int begin, int end);
+
+    /** Returns the finished graph.  The sink must not be used afterwards. */
+    public BenchGraph finish();
+}
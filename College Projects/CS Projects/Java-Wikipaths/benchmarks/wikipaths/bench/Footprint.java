@@ -0,0 +1,46 @@
+package wikipaths.bench;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Prints the heap each UnweightedGraph implementation retains for the same
+ * graph: the total size of every object reachable from the built graph, as
+ * JOL's GraphLayout.parseInstance(graph).totalSize() reports it.  JMH's gc
+ * profiler reports what a build allocates; this reports what stays.  Mapped
+ * keeps its adjacency in the page cache, outside the heap, so only its small
+ * heap share shows.
+ *   The size is not read off the used heap across a build: what the
+ * collector leaves behind swamps the graph, and such readings come out
+ * negative or zero as easily as right.
+ * Usage: java wikipaths.bench.Footprint articles.tsv links.tsv [scale [implementation...]]
+ */
+public class Footprint {
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.err.println("Usage: java wikipaths.bench.Footprint articles.tsv links.tsv"
+                    + " [scale [implementation...]]");
+            System.exit(1);
+        }
+        int scale = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        String[] implementations = Subjects.IMPLEMENTATIONS;
+        if(args.length > 3) {
+            implementations = Arrays.copyOfRange(args, 3, args.length);
+        }
+        Subjects subjects = Subjects.get();
+        EdgeList edges = subjects.read(args[0], args[1]).scaleUp(scale, 0.1, 1);
+        System.out.printf("Graph: %s%n", edges);
+        System.out.printf("%-16s %14s %12s%n", "implementation", "heap bytes", "bytes/edge");
+        for(String implementation : implementations) {
+            try {
+                BenchGraph graph = edges.build(subjects, implementation);
+                long bytes = GraphLayout.parseInstance(graph).totalSize();
+                System.out.printf("%-16s %,14d %12.1f%n", implementation, bytes,
+                        (double) bytes / edges.numEdges());
+            } catch(IllegalArgumentException e) {
+                System.out.printf("%-16s %s%n", implementation, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package wikipaths.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of building each UnweightedGraph implementation.  addEdgeLoop
+ * adds every edge of an in-memory edge list with one addEdge call each (for
+ * the immutable graphs, through CompactUnweightedGraph.Builder, followed by
+ * the conversion); fullLoad reads the articles and links files, with
+ * PathFinder's own loaders for the immutable graphs (see Subjects.load).
+ * Each operation is one whole graph, so divide by the edge count printed at
+ * setup for the cost per edge.
+ *   With scale above 1 the scaled-up graph is written to a temporary
+ * directory first, so that fullLoad parses files of the same size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class GraphLoadBenchmark {
+    @Param({"AdjacencyList", "AdjacencyMatrix", "Mystery", "MysteryInIndex", "Compact",
+            "Compressed", "Hybrid", "Mapped"})
+    public String implementation;
+
+    @Param("articles.tsv")
+    public String articles;
+
+    @Param("links.tsv")
+    public String links;
+
+    /** Copies of the graph to lay down; see EdgeList.scaleUp(). */
+    @Param("1")
+    public int scale;
+
+    private Subjects subjects;
+    private EdgeList edges;
+    private String articleFile;
+    private String linkFile;
+    private Path scratch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        subjects = Subjects.get();
+        edges = subjects.read(articles, links).scaleUp(scale, 0.1, 1);
+        articleFile = articles;
+        linkFile = links;
+        if(scale > 1) {
+            scratch = Files.createTempDirectory("wikipaths-bench");
+            Path[] files = edges.writeTsv(scratch);
+            articleFile = files[0].toString();
+            linkFile = files[1].toString();
+        }
+        System.out.println("Graph: " + edges);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if(scratch != null) {
+            Files.deleteIfExists(scratch.resolve("articles.tsv"));
+            Files.deleteIfExists(scratch.resolve("links.tsv"));
+            Files.deleteIfExists(scratch);
+        }
+    }
+
+    @Benchmark
+    public BenchGraph addEdgeLoop() {
+        return edges.build(subjects, implementation);
+    }
+
+    @Benchmark
+    public BenchGraph fullLoad() throws IOException {
+        return subjects.load(implementation, articleFile, linkFile);
+    }
+}
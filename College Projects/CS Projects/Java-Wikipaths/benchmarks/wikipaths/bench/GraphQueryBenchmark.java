@@ -0,0 +1,153 @@
+package wikipaths.bench;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Read-side throughput of every UnweightedGraph implementation on the same
+ * graph: hasEdge on a mix of links and random pairs, a full walk of
+ * getNeighbors, getInDegree, and shortest-path queries.
+ *   Two kinds of query are timed.  bfsPath is the breadth-first search that
+ * PathFinder originally ran, driven through getNeighbors, so it shows what
+ * each implementation's iteration costs a search.  enginePath goes through
+ * BidirectionalSearch, which PathFinder uses now; it copies any graph other
+ * than Compact and Mapped into arrays once, so beyond that copy its speed
+ * should not depend on the implementation.
+ *   Queries cycle through PROBES precomputed arguments so that every
+ * implementation answers exactly the same ones.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class GraphQueryBenchmark {
+    private static final int PROBES = 1 << 12;
+
+    @Param({"AdjacencyList", "AdjacencyMatrix", "Mystery", "MysteryInIndex", "Compact",
+            "Compressed", "Hybrid", "Mapped"})
+    public String implementation;
+
+    @Param("articles.tsv")
+    public String articles;
+
+    @Param("links.tsv")
+    public String links;
+
+    /** Copies of the graph to lay down; see EdgeList.scaleUp(). */
+    @Param("1")
+    public int scale;
+
+    private BenchGraph graph;
+    private int[] begins;
+    private int[] ends;
+    private int[] vertices;
+    private int[] sources;
+    private int[] targets;
+    private int next;
+    // Scratch for bfsPath.
+    private int[] parent;
+    private int[] queue;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Subjects subjects = Subjects.get();
+        EdgeList edges = subjects.read(articles, links).scaleUp(scale, 0.1, 1);
+        graph = edges.build(subjects, implementation);
+        int[][] probes = edges.probes(PROBES, 2);
+        begins = probes[0];
+        ends = probes[1];
+        vertices = edges.randomVertices(PROBES, 3);
+        sources = edges.randomVertices(PROBES, 4);
+        targets = edges.randomVertices(PROBES, 5);
+        parent = new int[graph.numVerts()];
+        queue = new int[graph.numVerts()];
+        Arrays.fill(parent, -1);
+        // Build the search engine now rather than in the first timed call.
+        graph.findPath(0, 0);
+    }
+
+    private int nextProbe() {
+        next = (next + 1) & (PROBES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public boolean hasEdge() {
+        int i = nextProbe();
+        return graph.hasEdge(begins[i], ends[i]);
+    }
+
+    @Benchmark
+    public int neighbors() {
+        int sum = 0;
+        for(int u : graph.getNeighbors(vertices[nextProbe()])) {
+            sum += u;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int inDegree() {
+        return graph.getInDegree(vertices[nextProbe()]);
+    }
+
+    @Benchmark
+    public int bfsPath() {
+        int i = nextProbe();
+        return bfs(sources[i], targets[i]);
+    }
+
+    @Benchmark
+    public int[] enginePath() {
+        int i = nextProbe();
+        return graph.findPath(sources[i], targets[i]);
+    }
+
+    // Returns the number of links on a shortest path, or -1.  Only the
+    // parent entries the search set are reset afterwards.
+    private int bfs(int source, int target) {
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        parent[source] = source;
+        int length = -1;
+        search:
+        while(head < tail) {
+            int v = queue[head++];
+            for(int u : graph.getNeighbors(v)) {
+                if(parent[u] < 0) {
+                    parent[u] = v;
+                    queue[tail++] = u;
+                    if(u == target) {
+                        break search;
+                    }
+                }
+            }
+        }
+        if(parent[target] >= 0) {
+            length = 0;
+            for(int v = target; v != source; v = parent[v]) {
+                length++;
+            }
+        }
+        for(int j = 0; j < tail; j++) {
+            parent[queue[j]] = -1;
+        }
+        return length;
+    }
+}
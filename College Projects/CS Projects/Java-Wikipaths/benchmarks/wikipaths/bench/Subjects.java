@@ -0,0 +1,53 @@
+package wikipaths.bench;
+
+import java.io.IOException;
+
+/**
+ * The bridge from the benchmarks to the Wikipaths classes, implemented by
+ * WikipathsSubjects in the unnamed package and found by name at run time.
+ *   Implementations are named by the strings in IMPLEMENTATIONS:
+ * AdjacencyList and AdjacencyMatrix are the compiled-only classes shipped
+ * with the project, Mystery is MysteryUnweightedGraphImplementation without
+ * and MysteryInIndex with its reverse adjacency index, and Compact,
+ * Compressed, Hybrid and Mapped are the immutable graphs (Mapped is served
+ * from a snapshot file written to the temporary directory).
+ *   The compiled classes only implement undirected graphs, so they hold
+ * every link as an undirected edge, and their graphs have more edges and
+ * shorter paths than the others.  The compiled AdjacencyMatrix's getInDegree
+ * also reads past the end of its matrix and throws, so JMH reports that one
+ * combination as failed.
+ */
+public interface Subjects {
+    public static final String[] IMPLEMENTATIONS = {"AdjacencyList", "AdjacencyMatrix",
+            "Mystery", "MysteryInIndex", "Compact", "Compressed", "Hybrid", "Mapped"};
+
+    /** Returns the implementation in the unnamed package. */
+    public static Subjects get() {
+        try {
+            return (Subjects) Class.forName("WikipathsSubjects").getConstructor().newInstance();
+        } catch(ReflectiveOperationException e) {
+            throw new IllegalStateException("WikipathsSubjects is not on the class path", e);
+        }
+    }
+
+    /** Reads an articles file and a links file in the PathFinder TSV format,
+     * gzipped or not.
+     */
+    public EdgeList read(String articleFile, String linkFile) throws IOException;
+
+    /** Returns an empty sink for a directed graph of the specified
+     * implementation with numVerts vertices.
+     * @throws IllegalArgumentException if the implementation is unknown, or
+     * the graph would be too large for it.
+     */
+    public EdgeSink create(String implementation, int numVerts);
+
+    /** Loads a graph of the specified implementation from the files.  The
+     * immutable graphs are loaded the way PathFinder does, by
+     * ParallelEdgeLoader or, for a gzipped pair, StreamingDumpLoader, and
+     * then converted; the mutable ones get every link line resolved and
+     * added as it is read.
+     */
+    public BenchGraph load(String implementation, String articleFile, String linkFile)
+            throws IOException;
+}